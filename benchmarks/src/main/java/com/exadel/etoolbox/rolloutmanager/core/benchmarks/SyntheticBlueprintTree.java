@@ -0,0 +1,200 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.benchmarks;
+
+import com.day.cq.wcm.msm.api.MSMNameConstants;
+import com.exadel.etoolbox.rolloutmanager.core.models.LiveCopyRelationship;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipIndexService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Generates a blueprint tree of the given width, depth and number of live copy exclusions. Each live copy of
+ * the blueprint has the given number of nested live copies, up to the given depth. The live relationships are served
+ * by a synthetic {@link RelationshipIndexService}, so the benchmarks don't depend on the MSM implementation.
+ */
+public final class SyntheticBlueprintTree {
+    public static final String BLUEPRINT_PATH = "/content/benchmark/blueprint";
+    public static final String SYNC_PATH = "/section/page";
+
+    private static final String ROOT_PATH = "/content/benchmark";
+    private static final String LIVE_COPY_NAME_PREFIX = "/live-copy";
+    private static final String EXCLUSION_NAME_PREFIX = "excluded-page-";
+    private static final String NAME_SEPARATOR = "-";
+    private static final String JCR_CONTENT_NODE = "/" + JcrConstants.JCR_CONTENT;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Map<String, List<LiveCopyRelationship>> relationships = new HashMap<>();
+    private final List<String> liveCopyPaths = new ArrayList<>();
+    private final Set<String> exclusions;
+
+    private SyntheticBlueprintTree(int width, int depth, int exclusionsCount) {
+        exclusions = createExclusions(exclusionsCount);
+        addLiveCopies(BLUEPRINT_PATH, ROOT_PATH + LIVE_COPY_NAME_PREFIX, width, depth);
+    }
+
+    /**
+     * Generates the tree without creating the pages
+     *
+     * @param width           - the number of live copies of the blueprint and of each live copy
+     * @param depth           - the number of live copies levels
+     * @param exclusionsCount - the number of exclusions of each live copy
+     * @return the generated tree
+     */
+    public static SyntheticBlueprintTree generate(int width, int depth, int exclusionsCount) {
+        return new SyntheticBlueprintTree(width, depth, exclusionsCount);
+    }
+
+    /**
+     * Generates the tree and creates the pages of the blueprint and the live copies with the given resolver
+     *
+     * @param resourceResolver - {@link ResourceResolver} of the mocked repository
+     * @param width            - the number of live copies of the blueprint and of each live copy
+     * @param depth            - the number of live copies levels
+     * @param exclusionsCount  - the number of exclusions of each live copy
+     * @return the generated tree
+     */
+    public static SyntheticBlueprintTree create(ResourceResolver resourceResolver,
+                                                int width,
+                                                int depth,
+                                                int exclusionsCount) {
+        SyntheticBlueprintTree tree = generate(width, depth, exclusionsCount);
+        try {
+            createPage(resourceResolver, BLUEPRINT_PATH + SYNC_PATH);
+            for (String liveCopyPath : tree.liveCopyPaths) {
+                createPage(resourceResolver, liveCopyPath + SYNC_PATH);
+            }
+            resourceResolver.commit();
+        } catch (PersistenceException e) {
+            throw new UncheckedIOException(e);
+        }
+        return tree;
+    }
+
+    private static void createPage(ResourceResolver resourceResolver, String path) throws PersistenceException {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(MSMNameConstants.PN_LAST_ROLLEDOUT, Calendar.getInstance());
+        ResourceUtil.getOrCreateResource(resourceResolver, path + JCR_CONTENT_NODE, properties, null, false);
+    }
+
+    private static Set<String> createExclusions(int exclusionsCount) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < exclusionsCount; i++) {
+            result.add(EXCLUSION_NAME_PREFIX + i);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    private void addLiveCopies(String masterPath, String namePrefix, int width, int depth) {
+        if (depth <= 0) {
+            return;
+        }
+        List<LiveCopyRelationship> masterRelationships = new ArrayList<>();
+        for (int i = 0; i < width; i++) {
+            String liveCopyPath = namePrefix + NAME_SEPARATOR + i;
+            liveCopyPaths.add(liveCopyPath);
+            masterRelationships.add(new LiveCopyRelationship(liveCopyPath, StringUtils.EMPTY, liveCopyPath,
+                    true, exclusions, false));
+            addLiveCopies(liveCopyPath, liveCopyPath, width, depth - 1);
+        }
+        relationships.put(masterPath, masterRelationships);
+    }
+
+    /**
+     * Gets the paths of all live copies in the tree, in the depth-first order
+     */
+    public List<String> getLiveCopyPaths() {
+        return Collections.unmodifiableList(liveCopyPaths);
+    }
+
+    /**
+     * Gets the exclusions shared by all live copies in the tree
+     */
+    public Set<String> getExclusions() {
+        return exclusions;
+    }
+
+    /**
+     * Gets the relationship index serving the live relationships of the tree
+     */
+    public RelationshipIndexService getIndex() {
+        return new RelationshipIndexService() {
+            @Override
+            public Optional<List<LiveCopyRelationship>> getRelationships(String sourcePath,
+                                                                         ResourceResolver resourceResolver) {
+                return Optional.of(relationships.getOrDefault(sourcePath, Collections.emptyList()));
+            }
+
+            @Override
+            public int rebuild() {
+                return liveCopyPaths.size();
+            }
+        };
+    }
+
+    /**
+     * Gets the rollout items of the tree as they are sent by the rollout dialog, the nested live copies have
+     * the greater depth
+     */
+    public RolloutItem[] getRolloutItems() {
+        return OBJECT_MAPPER.convertValue(collectRolloutItems(), RolloutItem[].class);
+    }
+
+    /**
+     * Gets the rollout items of the tree serialized to the JSON array, as it is sent by the rollout dialog
+     */
+    public String getRolloutItemsJson() {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(collectRolloutItems());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<Map<String, Object>> collectRolloutItems() {
+        List<Map<String, Object>> items = new ArrayList<>();
+        addRolloutItems(items, BLUEPRINT_PATH, 0);
+        return items;
+    }
+
+    private void addRolloutItems(List<Map<String, Object>> items, String masterPath, int depth) {
+        for (LiveCopyRelationship relationship : relationships.getOrDefault(masterPath, Collections.emptyList())) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("master", masterPath + SYNC_PATH);
+            item.put("target", relationship.getLiveCopyPath() + SYNC_PATH);
+            item.put("depth", depth);
+            item.put("autoRolloutTrigger", relationship.isAutoRolloutTrigger());
+            items.add(item);
+            addRolloutItems(items, relationship.getLiveCopyPath(), depth + 1);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.day.cq.replication.AgentManager;
+import com.day.cq.replication.Replicator;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.WCMException;
+import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.exadel.etoolbox.rolloutmanager.core.benchmarks.SyntheticBlueprintTree;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+
+import javax.jcr.RangeIterator;
+import javax.jcr.Session;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures grouping of the rolled out items by depth and submitting their replication level by level.
+ * The replication itself is mocked, so the result reflects the overhead of the rollout manager around it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageReplicationServiceImplBenchmark {
+
+    @Param({"5", "20"})
+    public int width;
+
+    @Param({"1", "3"})
+    public int depth;
+
+    private BundleContext bundleContext;
+    private ResourceResolver resourceResolver;
+    private PageManager pageManager;
+    private PageReplicationServiceImpl replicationService;
+    private RolloutItem[] items;
+
+    @Setup
+    public void setup() throws WCMException {
+        RangeIterator noRelationships = Mockito.mock(RangeIterator.class);
+        LiveRelationshipManager liveRelationshipManager = Mockito.mock(LiveRelationshipManager.class);
+        when(liveRelationshipManager.getLiveRelationships(any(), any(), any())).thenReturn(noRelationships);
+
+        bundleContext = MockOsgi.newBundleContext();
+        bundleContext.registerService(LiveRelationshipManager.class, liveRelationshipManager, null);
+        bundleContext.registerService(JobManager.class, Mockito.mock(JobManager.class), null);
+        bundleContext.registerService(Replicator.class, Mockito.mock(Replicator.class), null);
+        bundleContext.registerService(AgentManager.class, Mockito.mock(AgentManager.class), null);
+        bundleContext.registerService(RolloutMetrics.class, new RolloutMetricsImpl(), null);
+        replicationService = new PageReplicationServiceImpl();
+        MockOsgi.injectServices(replicationService, bundleContext);
+        MockOsgi.activate(replicationService, bundleContext);
+
+        pageManager = Mockito.mock(PageManager.class);
+        when(pageManager.getPage(anyString())).thenReturn(Mockito.mock(Page.class));
+        resourceResolver = Mockito.mock(ResourceResolver.class);
+        when(resourceResolver.getResource(anyString())).thenReturn(Mockito.mock(Resource.class));
+        when(resourceResolver.adaptTo(Session.class)).thenReturn(Mockito.mock(Session.class));
+        items = SyntheticBlueprintTree.generate(width, depth, 0).getRolloutItems();
+    }
+
+    @TearDown
+    public void tearDown() {
+        MockOsgi.deactivate(replicationService, bundleContext);
+        MockOsgi.shutdown(bundleContext);
+    }
+
+    @Benchmark
+    public List<RolloutStatus> replicateItems() {
+        return replicationService.replicateItems(resourceResolver, items, pageManager, false);
+    }
+}
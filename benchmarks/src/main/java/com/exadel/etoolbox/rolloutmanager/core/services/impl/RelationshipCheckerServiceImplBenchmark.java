@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.exadel.etoolbox.rolloutmanager.core.benchmarks.SyntheticBlueprintTree;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.apache.sling.testing.mock.sling.MockSling;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.osgi.framework.BundleContext;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the check of all live relationships of a synthetic blueprint tree, with the exclusions matched one by one
+ * and with the exclusions compiled per live copy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RelationshipCheckerServiceImplBenchmark {
+
+    @Param({"10"})
+    public int width;
+
+    @Param({"2"})
+    public int depth;
+
+    @Param({"0", "100", "1000"})
+    public int exclusions;
+
+    private BundleContext bundleContext;
+    private ResourceResolver resourceResolver;
+    private RelationshipCheckerServiceImpl checker;
+    private List<String> liveCopyPaths;
+    private Set<String> liveCopyExclusions;
+
+    @Setup
+    public void setup() {
+        bundleContext = MockOsgi.newBundleContext();
+        resourceResolver = MockSling.newResourceResolver(ResourceResolverType.RESOURCERESOLVER_MOCK, bundleContext);
+        SyntheticBlueprintTree tree = SyntheticBlueprintTree.create(resourceResolver, width, depth, exclusions);
+        checker = new RelationshipCheckerServiceImpl();
+        liveCopyPaths = tree.getLiveCopyPaths();
+        liveCopyExclusions = tree.getExclusions();
+    }
+
+    @TearDown
+    public void tearDown() {
+        resourceResolver.close();
+        MockOsgi.shutdown(bundleContext);
+    }
+
+    @Benchmark
+    public void isAvailableForSync(Blackhole blackhole) {
+        for (String liveCopyPath : liveCopyPaths) {
+            blackhole.consume(checker.isAvailableForSync(SyntheticBlueprintTree.SYNC_PATH,
+                    liveCopyPath + SyntheticBlueprintTree.SYNC_PATH, liveCopyExclusions, resourceResolver));
+        }
+    }
+
+    @Benchmark
+    public void isAvailableForSyncCompiledExclusions(Blackhole blackhole) {
+        for (String liveCopyPath : liveCopyPaths) {
+            blackhole.consume(checker.isAvailableForSync(liveCopyPath, SyntheticBlueprintTree.SYNC_PATH,
+                    liveCopyPath + SyntheticBlueprintTree.SYNC_PATH, liveCopyExclusions, resourceResolver));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.day.cq.wcm.msm.api.RolloutManager;
+import com.exadel.etoolbox.rolloutmanager.core.benchmarks.SyntheticBlueprintTree;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures grouping of the rollout items by depth and rolling them out level by level. The MSM rollout itself is
+ * mocked, so the result reflects the overhead of the rollout manager around it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RolloutServiceImplBenchmark {
+
+    @Param({"5", "20"})
+    public int width;
+
+    @Param({"1", "3"})
+    public int depth;
+
+    @Param({"false", "true"})
+    public boolean parallelRollout;
+
+    private BundleContext bundleContext;
+    private ResourceResolver resourceResolver;
+    private RolloutServiceImpl rolloutService;
+    private RolloutItem[] items;
+
+    @Setup
+    public void setup() throws LoginException {
+        bundleContext = MockOsgi.newBundleContext();
+        bundleContext.registerService(RolloutManager.class, Mockito.mock(RolloutManager.class), null);
+        bundleContext.registerService(LiveRelationshipManager.class, Mockito.mock(LiveRelationshipManager.class), null);
+        bundleContext.registerService(RolloutMetrics.class, new RolloutMetricsImpl(), null);
+        rolloutService = new RolloutServiceImpl();
+        MockOsgi.injectServices(rolloutService, bundleContext);
+        MockOsgi.activate(rolloutService, bundleContext, "parallelRollout", parallelRollout);
+
+        PageManager pageManager = Mockito.mock(PageManager.class);
+        when(pageManager.getPage(anyString())).thenReturn(Mockito.mock(Page.class));
+        resourceResolver = Mockito.mock(ResourceResolver.class);
+        when(resourceResolver.adaptTo(PageManager.class)).thenReturn(pageManager);
+        when(resourceResolver.clone(null)).thenReturn(resourceResolver);
+        items = SyntheticBlueprintTree.generate(width, depth, 0).getRolloutItems();
+    }
+
+    @TearDown
+    public void tearDown() {
+        MockOsgi.deactivate(rolloutService, bundleContext);
+        MockOsgi.shutdown(bundleContext);
+    }
+
+    @Benchmark
+    public List<RolloutStatus> rolloutItems() {
+        return rolloutService.rolloutItems(items, resourceResolver, false);
+    }
+}
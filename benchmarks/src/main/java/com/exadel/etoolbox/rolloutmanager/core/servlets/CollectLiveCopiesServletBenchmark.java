@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.servlets;
+
+import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.exadel.etoolbox.rolloutmanager.core.benchmarks.SyntheticBlueprintTree;
+import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipCheckerService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipIndexService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import com.exadel.etoolbox.rolloutmanager.core.services.impl.RelationshipCheckerServiceImpl;
+import com.exadel.etoolbox.rolloutmanager.core.services.impl.RolloutMetricsImpl;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.apache.sling.testing.mock.sling.MockSling;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building of the live copies tree of a synthetic blueprint, from the request to the serialized response
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollectLiveCopiesServletBenchmark {
+    private static final String PATH_REQUEST_PARAM = "path";
+    private static final String SYNC_PATH_REQUEST_PARAM = "syncPath";
+
+    @Param({"5", "20"})
+    public int width;
+
+    @Param({"1", "3"})
+    public int depth;
+
+    @Param({"0", "100"})
+    public int exclusions;
+
+    private BundleContext bundleContext;
+    private ResourceResolver resourceResolver;
+    private CollectLiveCopiesServlet servlet;
+    private Map<String, Object> requestParameters;
+
+    @Setup
+    public void setup() {
+        bundleContext = MockOsgi.newBundleContext();
+        resourceResolver = MockSling.newResourceResolver(ResourceResolverType.RESOURCERESOLVER_MOCK, bundleContext);
+        SyntheticBlueprintTree tree = SyntheticBlueprintTree.create(resourceResolver, width, depth, exclusions);
+
+        // The MSM API is not used, since the live relationships are served by the synthetic index
+        bundleContext.registerService(LiveRelationshipManager.class, Mockito.mock(LiveRelationshipManager.class), null);
+        bundleContext.registerService(RelationshipCheckerService.class, new RelationshipCheckerServiceImpl(), null);
+        bundleContext.registerService(RelationshipIndexService.class, tree.getIndex(), null);
+        bundleContext.registerService(RolloutMetrics.class, new RolloutMetricsImpl(), null);
+        servlet = new CollectLiveCopiesServlet();
+        MockOsgi.injectServices(servlet, bundleContext);
+        MockOsgi.activate(servlet, bundleContext);
+
+        requestParameters = new HashMap<>();
+        requestParameters.put(PATH_REQUEST_PARAM, SyntheticBlueprintTree.BLUEPRINT_PATH + SyntheticBlueprintTree.SYNC_PATH);
+        requestParameters.put(SYNC_PATH_REQUEST_PARAM, SyntheticBlueprintTree.SYNC_PATH);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MockOsgi.deactivate(servlet, bundleContext);
+        resourceResolver.close();
+        MockOsgi.shutdown(bundleContext);
+    }
+
+    @Benchmark
+    public byte[] collectLiveCopies() throws ServletException, IOException {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(resourceResolver, bundleContext);
+        request.setMethod(HttpConstants.METHOD_POST);
+        request.setParameterMap(requestParameters);
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        servlet.service(request, response);
+        return response.getOutput();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.servlets;
+
+import com.exadel.etoolbox.rolloutmanager.core.benchmarks.SyntheticBlueprintTree;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures deserialization of the rollout items selected in the rollout dialog
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RolloutServletBenchmark {
+
+    @Param({"5", "20"})
+    public int width;
+
+    @Param({"1", "3"})
+    public int depth;
+
+    private String selectionJsonArray;
+
+    @Setup
+    public void setup() {
+        selectionJsonArray = SyntheticBlueprintTree.generate(width, depth, 0).getRolloutItemsJson();
+    }
+
+    @Benchmark
+    public RolloutItem[] jsonArrayToRolloutItems() {
+        return RolloutServlet.jsonArrayToRolloutItems(selectionJsonArray);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.jobs;
+
+import com.day.cq.wcm.api.PageManager;
+import com.exadel.etoolbox.rolloutmanager.core.models.ExecutionWindow;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutJobInfo;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
+import com.exadel.etoolbox.rolloutmanager.core.services.PageReplicationService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutJobTracker;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutScheduleService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutService;
+import com.exadel.etoolbox.rolloutmanager.core.services.util.ResolverUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobConsumer;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performs rollout of the items selected in the rollout dialog in scope of a Sling job, so that a rollout to a large
+ * number of live copies doesn't hold the HTTP request open. The per-target progress is stored using
+ * {@link RolloutJobTracker} and reported to the UI by
+ * {@link com.exadel.etoolbox.rolloutmanager.core.servlets.RolloutJobStatusServlet}.
+ * <p>
+ * The job is executed with the session of the requesting user, impersonated by the rollout manager service user, so
+ * the rollout and the activation are limited by the user's own permissions, including the subpages of a deep rollout.
+ * If the user can't be impersonated, the job fails. The permissions for the targets are also checked before the job
+ * is added, so that the user is informed right away.
+ * <p>
+ * The targets completed by the job are stored as a checkpoint. If the job is re-executed, e.g. after a restart, or
+ * resumed by {@link com.exadel.etoolbox.rolloutmanager.core.servlets.RolloutResumeServlet}, only the targets which
+ * are not completed yet are processed. A resumed job is tracked under the id of the job it resumes.
+ * <p>
+ * The jobs of the {@link #SCHEDULED_TOPIC} topic are added by {@link RolloutScheduleService}. If such a job starts
+ * after its execution window is closed, e.g. it waited in the job queue for too long, it is scheduled again for the
+ * next opening of the window.
+ */
+@Component(
+        service = JobConsumer.class,
+        property = {
+                JobConsumer.PROPERTY_TOPICS + "=" + RolloutJobConsumer.TOPIC,
+                JobConsumer.PROPERTY_TOPICS + "=" + RolloutJobConsumer.SCHEDULED_TOPIC
+        }
+)
+public class RolloutJobConsumer implements JobConsumer {
+    private static final Logger LOG = LoggerFactory.getLogger(RolloutJobConsumer.class);
+
+    public static final String TOPIC = "etoolbox/rollout-manager/rollout";
+    public static final String SCHEDULED_TOPIC = "etoolbox/rollout-manager/scheduled-rollout";
+
+    public static final String SELECTION_JSON_ARRAY_PROPERTY = "selectionJsonArray";
+    public static final String IS_DEEP_ROLLOUT_PROPERTY = "isDeepRollout";
+    public static final String SHOULD_ACTIVATE_PROPERTY = "shouldActivate";
+    public static final String USER_ID_PROPERTY = "userId";
+    public static final String RESUMED_JOB_ID_PROPERTY = "resumedJobId";
+
+    private static final String[] TRACKED_PROPERTIES = {
+            SELECTION_JSON_ARRAY_PROPERTY, IS_DEEP_ROLLOUT_PROPERTY, SHOULD_ACTIVATE_PROPERTY, USER_ID_PROPERTY
+    };
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference
+    private RolloutService rolloutService;
+
+    @Reference
+    private PageReplicationService pageReplicationService;
+
+    @Reference
+    private RolloutJobTracker rolloutJobTracker;
+
+    @Reference
+    private RolloutScheduleService rolloutScheduleService;
+
+    @Override
+    public JobResult process(Job job) {
+        StopWatch sw = StopWatch.createStarted();
+        String jobId = StringUtils.defaultIfBlank(job.getProperty(RESUMED_JOB_ID_PROPERTY, String.class), job.getId());
+        LOG.debug("Starting rollout job: {}", jobId);
+
+        RolloutItem[] rolloutItems = jsonArrayToRolloutItems(job.getProperty(SELECTION_JSON_ARRAY_PROPERTY, String.class));
+        if (ArrayUtils.isEmpty(rolloutItems)) {
+            LOG.warn("Rollout items array is empty, rollout job cancelled: {}", jobId);
+            return JobResult.CANCEL;
+        }
+        if (SCHEDULED_TOPIC.equals(job.getTopic()) && isOutsideExecutionWindow(job, rolloutItems)) {
+            return JobResult.OK;
+        }
+
+        Optional<RolloutJobInfo> checkpoint = rolloutJobTracker.getJobInfo(jobId);
+        rolloutJobTracker.started(jobId, job.getProperty(USER_ID_PROPERTY, String.class), getTrackedProperties(job));
+        boolean isDeepRollout = job.getProperty(IS_DEEP_ROLLOUT_PROPERTY, false);
+        boolean shouldActivate = job.getProperty(SHOULD_ACTIVATE_PROPERTY, false);
+
+        Set<String> rolledOutTargets = checkpoint.map(RolloutJobInfo::getRolledOutTargets).orElse(Collections.emptySet());
+        Set<String> activatedTargets = checkpoint.map(RolloutJobInfo::getActivatedTargets).orElse(Collections.emptySet());
+        RolloutItem[] pendingRolloutItems = Arrays.stream(rolloutItems)
+                .filter(item -> !rolledOutTargets.contains(item.getTarget()))
+                .toArray(RolloutItem[]::new);
+        if (pendingRolloutItems.length < rolloutItems.length) {
+            LOG.info("Rollout job {} is resumed, targets already rolled out: {}, remaining: {}",
+                    jobId, rolloutItems.length - pendingRolloutItems.length, pendingRolloutItems.length);
+        }
+
+        String userId = job.getProperty(USER_ID_PROPERTY, String.class);
+        try (ResourceResolver resourceResolver = ResolverUtil.getImpersonatedResolver(resolverFactory, userId)) {
+            List<RolloutStatus> rolloutStatuses = rolloutService.rolloutItems(pendingRolloutItems, resourceResolver,
+                    isDeepRollout, status -> rolloutJobTracker.statusChanged(jobId, status));
+
+            List<RolloutStatus> statuses = new ArrayList<>(rolloutStatuses);
+            if (shouldActivate) {
+                // The targets rolled out by this execution are activated anew
+                RolloutItem[] pendingActivationItems = Arrays.stream(rolloutItems)
+                        .filter(item -> !rolledOutTargets.contains(item.getTarget())
+                                || !activatedTargets.contains(item.getTarget()))
+                        .toArray(RolloutItem[]::new);
+                statuses.addAll(pageReplicationService.replicateItems(resourceResolver, pendingActivationItems,
+                        resourceResolver.adaptTo(PageManager.class), isDeepRollout,
+                        status -> rolloutJobTracker.activationStatusChanged(jobId, status)));
+            }
+            boolean hasFailures = statuses.stream().anyMatch(status -> !status.isSuccess());
+
+            rolloutJobTracker.finished(jobId, hasFailures ? RolloutJobInfo.State.FAILED : RolloutJobInfo.State.SUCCEEDED);
+        } catch (LoginException e) {
+            LOG.error("Failed to impersonate the user {}, rollout job failed: {}", userId, jobId, e);
+            rolloutJobTracker.finished(jobId, RolloutJobInfo.State.FAILED);
+        }
+        LOG.debug("Rollout job {} is completed in {} ms", jobId, sw.getTime(TimeUnit.MILLISECONDS));
+        // Failed targets are reported to the user and can be processed again by resuming the job
+        return JobResult.OK;
+    }
+
+    private boolean isOutsideExecutionWindow(Job job, RolloutItem[] rolloutItems) {
+        Optional<ExecutionWindow> window = rolloutScheduleService.getExecutionWindow(rolloutItems);
+        if (!window.isPresent() || rolloutScheduleService.isOpen(window.get())) {
+            // The window configuration has changed since the job was scheduled, the job is not postponed any more
+            return false;
+        }
+        Optional<Calendar> startTime = rolloutScheduleService.schedule(window.get(), getTrackedProperties(job));
+        LOG.info("Scheduled rollout job {} started outside the execution window {}, scheduled again at: {}",
+                job.getId(), window.get(), startTime.map(Calendar::getTime).orElse(null));
+        return true;
+    }
+
+    private static Map<String, Object> getTrackedProperties(Job job) {
+        Map<String, Object> properties = new HashMap<>();
+        for (String name : TRACKED_PROPERTIES) {
+            Optional.ofNullable(job.getProperty(name)).ifPresent(value -> properties.put(name, value));
+        }
+        return properties;
+    }
+
+    private RolloutItem[] jsonArrayToRolloutItems(String jsonArray) {
+        try {
+            return OBJECT_MAPPER.readValue(jsonArray, RolloutItem[].class);
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.error("Failed to map json to models", e);
+        }
+        return new RolloutItem[0];
+    }
+}
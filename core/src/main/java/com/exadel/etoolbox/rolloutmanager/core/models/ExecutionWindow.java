@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.exadel.etoolbox.rolloutmanager.core.models;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Defines the time of the day when the scheduled rollouts to the pages under the site root can be started. The window
+ * ending before it starts spans midnight, e.g. 22:00-06:00, the window starting and ending at the same time is always
+ * open.
+ */
+public class ExecutionWindow {
+    private final String siteRoot;
+    private final LocalTime start;
+    private final LocalTime end;
+
+    public ExecutionWindow(String siteRoot, LocalTime start, LocalTime end) {
+        this.siteRoot = siteRoot;
+        this.start = start;
+        this.end = end;
+    }
+
+    public String getSiteRoot() {
+        return siteRoot;
+    }
+
+    public LocalTime getStart() {
+        return start;
+    }
+
+    public LocalTime getEnd() {
+        return end;
+    }
+
+    /**
+     * Checks if the path belongs to the site root of the window
+     * @param path - the page path
+     * @return true, if the path is the site root or a descendant of it
+     */
+    public boolean includes(String path) {
+        return path.equals(siteRoot) || path.startsWith(siteRoot + "/");
+    }
+
+    /**
+     * Checks if the window opens and closes at the same time as the other one, regardless of the site root
+     * @param other - the other window
+     * @return true, if the start and the end of the windows are equal
+     */
+    public boolean hasSameHours(ExecutionWindow other) {
+        return start.equals(other.start) && end.equals(other.end);
+    }
+
+    /**
+     * Checks if the scheduled rollouts can be started at the given time
+     * @param time - the local time of the instance
+     * @return true, if the time is within the window
+     */
+    public boolean isOpen(LocalDateTime time) {
+        LocalTime timeOfDay = time.toLocalTime();
+        if (start.equals(end)) {
+            return true;
+        }
+        if (start.isBefore(end)) {
+            return !timeOfDay.isBefore(start) && timeOfDay.isBefore(end);
+        }
+        return !timeOfDay.isBefore(start) || timeOfDay.isBefore(end);
+    }
+
+    /**
+     * Gets the time when the window opens next
+     * @param time - the local time of the instance
+     * @return The given time if the window is open, the next start of the window otherwise
+     */
+    public LocalDateTime getNextStart(LocalDateTime time) {
+        if (isOpen(time)) {
+            return time;
+        }
+        LocalDateTime nextStart = time.toLocalDate().atTime(start);
+        return nextStart.isBefore(time) ? nextStart.plusDays(1) : nextStart;
+    }
+
+    @Override
+    public String toString() {
+        return siteRoot + "=" + start + "-" + end;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.models;
+
+import java.util.Set;
+
+/**
+ * Represents a live relationship between a blueprint resource and a live copy, with the live copy data needed by
+ * the rollout manager.
+ */
+public class LiveCopyRelationship {
+    private final String liveCopyPath;
+    private final String syncPath;
+    private final String targetPath;
+    private final boolean isDeep;
+    private final Set<String> exclusions;
+    private final boolean autoRolloutTrigger;
+
+    public LiveCopyRelationship(String liveCopyPath,
+                                String syncPath,
+                                String targetPath,
+                                boolean isDeep,
+                                Set<String> exclusions,
+                                boolean autoRolloutTrigger) {
+        this.liveCopyPath = liveCopyPath;
+        this.syncPath = syncPath;
+        this.targetPath = targetPath;
+        this.isDeep = isDeep;
+        this.exclusions = exclusions;
+        this.autoRolloutTrigger = autoRolloutTrigger;
+    }
+
+    public String getLiveCopyPath() {
+        return liveCopyPath;
+    }
+
+    public String getSyncPath() {
+        return syncPath;
+    }
+
+    public String getTargetPath() {
+        return targetPath;
+    }
+
+    public boolean isDeep() {
+        return isDeep;
+    }
+
+    public Set<String> getExclusions() {
+        return exclusions;
+    }
+
+    public boolean isAutoRolloutTrigger() {
+        return autoRolloutTrigger;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.models;
+
+/**
+ * The result of admitting a rollout by {@link com.exadel.etoolbox.rolloutmanager.core.services.RolloutAdmissionService}.
+ * An admitted rollout holds a slot until the admission is closed.
+ */
+public class RolloutAdmission implements AutoCloseable {
+    private final boolean isAdmitted;
+    private final int queuePosition;
+    private final long retryAfter;
+    private final Runnable release;
+
+    private RolloutAdmission(boolean isAdmitted, int queuePosition, long retryAfter, Runnable release) {
+        this.isAdmitted = isAdmitted;
+        this.queuePosition = queuePosition;
+        this.retryAfter = retryAfter;
+        this.release = release;
+    }
+
+    public static RolloutAdmission admitted(Runnable release) {
+        return new RolloutAdmission(true, 0, 0L, release);
+    }
+
+    public static RolloutAdmission rejected(int queuePosition, long retryAfter) {
+        return new RolloutAdmission(false, queuePosition, retryAfter, () -> {
+        });
+    }
+
+    public boolean isAdmitted() {
+        return isAdmitted;
+    }
+
+    /**
+     * Gets the position the rejected rollout would take in the waiting queue
+     * @return The 1-based queue position, or 0 if the rollout is admitted
+     */
+    public int getQueuePosition() {
+        return queuePosition;
+    }
+
+    /**
+     * Gets the hint when the rejected rollout can be requested again
+     * @return The delay in seconds, or 0 if the rollout is admitted
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+    @Override
+    public void close() {
+        release.run();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class RolloutJobInfo {
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String jobId;
+    private final String userId;
+    private State state;
+    private final List<RolloutStatus> statuses = new ArrayList<>();
+    private final Set<String> rolledOutTargets = new HashSet<>();
+    private final Set<String> activatedTargets = new HashSet<>();
+    private final Map<String, Object> jobProperties = new HashMap<>();
+
+    public RolloutJobInfo(String jobId, String userId, State state) {
+        this.jobId = jobId;
+        this.userId = userId;
+        this.state = state;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public List<RolloutStatus> getStatuses() {
+        return statuses;
+    }
+
+    /**
+     * Gets the checkpoint of the rollout phase
+     * @return The targets successfully rolled out by the job so far
+     */
+    public Set<String> getRolledOutTargets() {
+        return rolledOutTargets;
+    }
+
+    /**
+     * Gets the checkpoint of the activation phase
+     * @return The targets successfully activated by the job so far
+     */
+    public Set<String> getActivatedTargets() {
+        return activatedTargets;
+    }
+
+    /**
+     * Gets the properties the job was started with, used for resuming the job
+     * @return The job properties
+     */
+    public Map<String, Object> getJobProperties() {
+        return jobProperties;
+    }
+}
@@ -16,6 +16,14 @@ package com.exadel.etoolbox.rolloutmanager.core.models;
 
 public class RolloutStatus {
     private boolean isSuccess;
+    private boolean isSkipped;
+    private long duration;
+    private int activatedPages;
+    private int skippedPages;
+    private int failedPages;
+    private long throttleDelay;
+    private long queueWait;
+    private boolean isQueueWaitExceeded;
     private final String target;
 
     public RolloutStatus(String target) {
@@ -30,7 +38,93 @@ public class RolloutStatus {
         isSuccess = success;
     }
 
+    /**
+     * Checks if the target is skipped, since it's up to date. A skipped target is successful
+     * @return true, if the target is not processed
+     */
+    public boolean isSkipped() {
+        return isSkipped;
+    }
+
+    public void setSkipped(boolean skipped) {
+        isSkipped = skipped;
+    }
+
+    /**
+     * Gets the time spent on processing the target
+     * @return The duration in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
     public String getTarget() {
         return target;
     }
+
+    public int getActivatedPages() {
+        return activatedPages;
+    }
+
+    public void setActivatedPages(int activatedPages) {
+        this.activatedPages = activatedPages;
+    }
+
+    public int getSkippedPages() {
+        return skippedPages;
+    }
+
+    public void setSkippedPages(int skippedPages) {
+        this.skippedPages = skippedPages;
+    }
+
+    public int getFailedPages() {
+        return failedPages;
+    }
+
+    public void setFailedPages(int failedPages) {
+        this.failedPages = failedPages;
+    }
+
+    /**
+     * Gets the time spent waiting for the activation rate limit or for the replication queues to drain
+     * @return The delay in milliseconds
+     */
+    public long getThrottleDelay() {
+        return throttleDelay;
+    }
+
+    public void setThrottleDelay(long throttleDelay) {
+        this.throttleDelay = throttleDelay;
+    }
+
+    /**
+     * Gets the time spent waiting for the replication queues to drain, counted against the queue wait budget
+     * of the target
+     * @return The wait time in milliseconds
+     */
+    public long getQueueWait() {
+        return queueWait;
+    }
+
+    public void setQueueWait(long queueWait) {
+        this.queueWait = queueWait;
+    }
+
+    /**
+     * Checks if the queue wait budget of the target is spent, so the remaining pages are activated without waiting
+     * for the replication queues
+     * @return true, if the budget is spent
+     */
+    public boolean isQueueWaitExceeded() {
+        return isQueueWaitExceeded;
+    }
+
+    public void setQueueWaitExceeded(boolean queueWaitExceeded) {
+        isQueueWaitExceeded = queueWaitExceeded;
+    }
 }
@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Caches the results of checking if a page can be rolled out, see
+ * {@link com.exadel.etoolbox.rolloutmanager.core.servlets.BlueprintCheckServlet}. The check depends on the permissions
+ * of the user performing it, so the results are cached per user. The cached results are invalidated when live
+ * relationships, pages or access control policies are changed.
+ */
+public interface BlueprintCheckCache {
+
+    /**
+     * Gets the cached result of the rollout availability check for the given path and user, or performs the check and
+     * caches its result
+     * @param path   - path of the page
+     * @param userId - ID of the user the check is performed for
+     * @param check  - performs the rollout availability check if there is no cached result
+     * @return true, if the page can be rolled out
+     */
+    boolean isAvailableForRollout(String path, String userId, BooleanSupplier check);
+
+    /**
+     * Removes all cached results
+     */
+    void invalidate();
+
+    /**
+     * Gets the number of checks answered from the cache
+     * @return The number of cache hits
+     */
+    long getHitCount();
+
+    /**
+     * Gets the number of checks performed because there was no cached result
+     * @return The number of cache misses
+     */
+    long getMissCount();
+}
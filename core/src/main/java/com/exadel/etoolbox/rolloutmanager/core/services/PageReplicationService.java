@@ -20,6 +20,7 @@ import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
 import org.apache.sling.api.resource.ResourceResolver;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Provides methods for checking if a live relationship can be synchronized with a blueprint in scope of usage
@@ -27,4 +28,43 @@ import java.util.List;
  */
 public interface PageReplicationService {
     List<RolloutStatus> replicateItems(ResourceResolver resourceResolver, RolloutItem[] items, PageManager pageManager, boolean isDeep);
+
+    /**
+     * Replicates the given items the same way as
+     * {@link #replicateItems(ResourceResolver, RolloutItem[], PageManager, boolean)} and notifies the status listener
+     * as soon as the replication of a single target is completed.
+     *
+     * @param resourceResolver - {@link ResourceResolver} used for the replication
+     * @param items            - {@link RolloutItem}s to replicate
+     * @param pageManager      - {@link PageManager} used for getting the target pages
+     * @param isDeep           - true if child pages should be replicated as well
+     * @param statusListener   - {@link Consumer} accepting the {@link RolloutStatus} of each processed target
+     * @return {@link List} of {@link RolloutStatus} of the processed targets
+     */
+    List<RolloutStatus> replicateItems(ResourceResolver resourceResolver,
+                                       RolloutItem[] items,
+                                       PageManager pageManager,
+                                       boolean isDeep,
+                                       Consumer<RolloutStatus> statusListener);
+
+    /**
+     * Gets the number of replication actions performed for a target with the given number of pages, according to
+     * the current configuration
+     * @param pageCount - the number of pages of the target, including the subpages if the replication is deep
+     * @param isDeep    - true if child pages should be replicated as well
+     * @return The number of replication actions
+     */
+    int getReplicationActionCount(int pageCount, boolean isDeep);
+
+    /**
+     * Gets the number of threads which are currently replicating the items
+     * @return The approximate number of active replication threads
+     */
+    int getActiveThreadCount();
+
+    /**
+     * Gets the number of replication tasks waiting for a free thread
+     * @return The number of queued replication tasks
+     */
+    int getQueuedTaskCount();
 }
\ No newline at end of file
@@ -26,7 +26,7 @@ import java.util.Set;
 public interface RelationshipCheckerService {
     /**
      * Checks if a live relationship can be synchronized. Gets the live relationship parameters and performs a check
-     * using {@link #isAvailableForSync(String, String, Set, ResourceResolver)}
+     * using {@link #isAvailableForSync(String, String, String, Set, ResourceResolver)}
      *
      * @param relationship     - {@link LiveRelationship} to check
      * @param resourceResolver - {@link ResourceResolver}
@@ -57,4 +57,24 @@ public interface RelationshipCheckerService {
      * resource of the target path exists.
      */
     boolean isAvailableForSync(String syncPath, String targetPath, Set<String> exclusions, ResourceResolver resourceResolver);
-}
\ No newline at end of file
+
+    /**
+     * Checks if a live relationship of the given live copy can be synchronized based on its parameters. Works
+     * the same way as {@link #isAvailableForSync(String, String, Set, ResourceResolver)}, but the exclusions are
+     * compiled once per live copy and reused by the subsequent checks.
+     *
+     * @param liveCopyPath     - path of the live copy (sync root) the exclusions belong to. In the example above
+     *                         the live copy path is '/content/we-retail/ca/en'.
+     * @param syncPath         - the relative path of a relationship from the sync root to the actual resource
+     * @param targetPath       - the absolute path of the live sync resource
+     * @param exclusions       - relative paths that have been set to be excluded from the LiveCopy configuration
+     * @param resourceResolver - {@link ResourceResolver}
+     * @return true, if syncPath is empty, or syncPath with all its parents is not in live copy exclusions and a parent
+     * resource of the target path exists.
+     */
+    boolean isAvailableForSync(String liveCopyPath,
+                               String syncPath,
+                               String targetPath,
+                               Set<String> exclusions,
+                               ResourceResolver resourceResolver);
+}
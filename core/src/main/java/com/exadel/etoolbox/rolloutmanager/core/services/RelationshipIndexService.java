@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.LiveCopyRelationship;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Provides the live relationships of blueprint resources from the persistent index, which maps blueprint paths to
+ * their live copies. The index is used instead of the MSM API lookups, since they are the main cost of collecting
+ * the live copies tree.
+ */
+public interface RelationshipIndexService {
+
+    /**
+     * Gets the live relationships of the given source resource from the index. Only the live copies readable by
+     * the given resource resolver are returned
+     * @param sourcePath       - path of the blueprint resource
+     * @param resourceResolver - {@link ResourceResolver} of the current user
+     * @return List of the live relationships, or an empty optional if the index is disabled, not built or has no entries
+     * for the source and its ancestors, in which case the MSM API should be used
+     */
+    Optional<List<LiveCopyRelationship>> getRelationships(String sourcePath, ResourceResolver resourceResolver);
+
+    /**
+     * Rebuilds the index from scratch based on all live copies in the repository
+     * @return The number of indexed live copies, or -1 if the index failed to be rebuilt
+     */
+    int rebuild();
+}
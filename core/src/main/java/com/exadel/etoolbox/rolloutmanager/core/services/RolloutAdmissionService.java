@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutAdmission;
+
+/**
+ * Limits the number of rollouts running on the instance at the same time, see
+ * {@link com.exadel.etoolbox.rolloutmanager.core.servlets.RolloutServlet}. The rollouts over the limit wait in a queue
+ * in the order of arrival.
+ */
+public interface RolloutAdmissionService {
+
+    /**
+     * Admits a rollout if the number of running rollouts is below the limit. Otherwise, waits until a running rollout
+     * completes, unless the waiting queue is full or the maximum wait is exceeded
+     * @return The admission, which must be closed when the rollout completes
+     */
+    RolloutAdmission admit();
+
+    /**
+     * Gets the number of rollouts holding a slot
+     * @return The number of running rollouts
+     */
+    int getRunningCount();
+
+    /**
+     * Gets the number of rollouts waiting for a slot
+     * @return The number of queued rollouts
+     */
+    int getWaitingCount();
+}
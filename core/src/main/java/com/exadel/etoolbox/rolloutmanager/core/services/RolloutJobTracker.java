@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutJobInfo;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Persists the progress of rollout jobs so that the per-target {@link RolloutStatus} can be reported while a job
+ * is running and after it is finished.
+ */
+public interface RolloutJobTracker {
+    /**
+     * Registers the start of the rollout job. If the job was started before, e.g. it is resumed or re-executed after
+     * a restart, the statuses stored earlier are kept.
+     *
+     * @param jobId         - id of the Sling job
+     * @param userId        - id of the user who requested the rollout
+     * @param jobProperties - properties of the job, stored so that the job can be resumed
+     */
+    void started(String jobId, String userId, Map<String, Object> jobProperties);
+
+    /**
+     * Registers that the finished rollout job is queued again to be resumed.
+     *
+     * @param jobId - id of the Sling job
+     */
+    void queued(String jobId);
+
+    /**
+     * Stores the {@link RolloutStatus} of a single target rolled out by the rollout job. A status stored for the same
+     * target earlier is overwritten. A successfully rolled out target is added to the checkpoint of the job.
+     *
+     * @param jobId  - id of the Sling job
+     * @param status - {@link RolloutStatus} of the processed target
+     */
+    void statusChanged(String jobId, RolloutStatus status);
+
+    /**
+     * Stores the {@link RolloutStatus} of a single target activated by the rollout job. A failed activation marks
+     * the target as failed, and a successfully activated target is added to the checkpoint of the job.
+     *
+     * @param jobId  - id of the Sling job
+     * @param status - {@link RolloutStatus} of the activated target
+     */
+    void activationStatusChanged(String jobId, RolloutStatus status);
+
+    /**
+     * Registers the completion of the rollout job.
+     *
+     * @param jobId - id of the Sling job
+     * @param state - the final {@link RolloutJobInfo.State} of the job
+     */
+    void finished(String jobId, RolloutJobInfo.State state);
+
+    /**
+     * Gets the progress of the rollout job.
+     *
+     * @param jobId - id of the Sling job
+     * @return {@link RolloutJobInfo} of the job, or empty {@link Optional} if the job has not been started yet
+     */
+    Optional<RolloutJobInfo> getJobInfo(String jobId);
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Collects the timers, histograms, counters and gauges of the rollout manager. The collected metrics are exposed
+ * via JMX, see {@link RolloutMetricsMXBean}.
+ */
+public interface RolloutMetrics {
+    String BLUEPRINT_CHECK_REQUEST = "blueprintCheckRequest";
+    String COLLECT_LIVE_COPIES_REQUEST = "collectLiveCopiesRequest";
+    String ROLLOUT_REQUEST = "rolloutRequest";
+    String ROLLOUT_ADMISSION = "rolloutAdmission";
+    String ROLLOUT_REJECTED = "rolloutRejected";
+    String RUNNING_ROLLOUTS = "runningRollouts";
+    String WAITING_ROLLOUTS = "waitingRollouts";
+    String TARGET_ROLLOUT = "targetRollout";
+    String PAGE_ROLLOUT = "pageRollout";
+    String TARGET_ROLLOUT_SUCCEEDED = "targetRolloutSucceeded";
+    String TARGET_ROLLOUT_FAILED = "targetRolloutFailed";
+    String TARGET_ROLLOUT_SKIPPED = "targetRolloutSkipped";
+    String BATCH_ROLLOUT = "batchRollout";
+    String BATCH_ROLLOUT_FALLBACK = "batchRolloutFallback";
+    String TARGET_REPLICATION = "targetReplication";
+    String TARGET_REPLICATION_SUCCEEDED = "targetReplicationSucceeded";
+    String TARGET_REPLICATION_FAILED = "targetReplicationFailed";
+    String REPLICATION_QUEUE_DEPTH = "replicationQueueDepth";
+    String REPLICATION_ACTIVE_THREADS = "replicationActiveThreads";
+    String REPLICATION_AGENT_QUEUE_DEPTH = "replicationAgentQueueDepth";
+    String REPLICATION_BACKPRESSURE = "replicationBackpressure";
+    String COLLECTED_LIVE_COPIES = "collectedLiveCopies";
+    String REPLICATED_PAGES = "replicatedPages";
+
+    /**
+     * Records the duration of an operation to the timer with the given name
+     * @param name          - name of the timer
+     * @param durationNanos - duration of the operation in nanoseconds
+     */
+    void recordTime(String name, long durationNanos);
+
+    /**
+     * Records the value to the histogram with the given name, e.g. the number of nodes traversed by an operation
+     * @param name  - name of the histogram
+     * @param value - the recorded value
+     */
+    void recordValue(String name, long value);
+
+    /**
+     * Increments the counter with the given name
+     * @param name - name of the counter
+     */
+    void increment(String name);
+
+    /**
+     * Registers the gauge reporting the current value of the given name, e.g. the size of a queue
+     * @param name  - name of the gauge
+     * @param gauge - supplies the current value
+     */
+    void registerGauge(String name, LongSupplier gauge);
+
+    /**
+     * Removes the gauge with the given name
+     * @param name - name of the gauge
+     */
+    void unregisterGauge(String name);
+}
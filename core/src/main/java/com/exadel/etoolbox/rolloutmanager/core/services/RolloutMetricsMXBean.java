@@ -0,0 +1,55 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.MetricStatistics;
+
+import java.util.Map;
+
+/**
+ * Exposes the metrics collected by {@link RolloutMetrics} via JMX. Each attribute is a table of metrics keyed by
+ * the metric name.
+ */
+public interface RolloutMetricsMXBean {
+
+    /**
+     * Gets the statistics of the timers, the durations are in milliseconds
+     * @return Map of timer names to the statistics
+     */
+    Map<String, MetricStatistics> getTimers();
+
+    /**
+     * Gets the statistics of the histograms
+     * @return Map of histogram names to the statistics
+     */
+    Map<String, MetricStatistics> getHistograms();
+
+    /**
+     * Gets the counters
+     * @return Map of counter names to the values
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Gets the current values of the gauges
+     * @return Map of gauge names to the values
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * Resets the timers, histograms and counters. The gauges are not affected
+     */
+    void resetMetrics();
+}
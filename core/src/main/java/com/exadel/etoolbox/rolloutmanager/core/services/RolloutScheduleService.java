@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.exadel.etoolbox.rolloutmanager.core.services;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.ExecutionWindow;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+
+import java.util.Calendar;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Schedules the rollouts requested with the 'schedule' option of the rollout dialog, so that they are performed by
+ * {@link com.exadel.etoolbox.rolloutmanager.core.jobs.RolloutJobConsumer} within the execution window configured for
+ * the site root of the targets.
+ */
+public interface RolloutScheduleService {
+
+    /**
+     * Gets the execution window of the rollout items based on their target paths
+     * @param items - the array of {@link RolloutItem}
+     * @return The execution window, or empty optional if a target has no window or the targets have different ones
+     */
+    Optional<ExecutionWindow> getExecutionWindow(RolloutItem[] items);
+
+    /**
+     * Checks if the scheduled rollouts can be started within the window right now
+     * @param window - the {@link ExecutionWindow}
+     * @return true, if the window is open
+     */
+    boolean isOpen(ExecutionWindow window);
+
+    /**
+     * Adds the scheduled rollout job, which is started right away if the window is open, or when the window opens next
+     * @param window - the {@link ExecutionWindow} of the rolled out items
+     * @param jobProperties - the properties of the rollout job
+     * @return The time when the job is started, or empty optional if the job is not added
+     */
+    Optional<Calendar> schedule(ExecutionWindow window, Map<String, Object> jobProperties);
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Performs rollout of the {@link RolloutItem}s selected in the rollout dialog. Used both for the synchronous rollout
+ * done in scope of a servlet request and for the rollout done in scope of a Sling job.
+ */
+public interface RolloutService {
+    /**
+     * Rolls out the given items. The items are grouped by depth which defines a level of nesting for live
+     * relationships, and the items with a lower depth are rolled out first.
+     *
+     * @param items            - {@link RolloutItem}s to roll out
+     * @param resourceResolver - {@link ResourceResolver} used for the rollout
+     * @param isDeep           - true if child pages should be included in the rollout process
+     * @return {@link List} of {@link RolloutStatus} of the processed targets
+     */
+    List<RolloutStatus> rolloutItems(RolloutItem[] items, ResourceResolver resourceResolver, boolean isDeep);
+
+    /**
+     * Rolls out the given items the same way as {@link #rolloutItems(RolloutItem[], ResourceResolver, boolean)}
+     * and notifies the status listener as soon as the rollout of a single target is completed.
+     *
+     * @param items            - {@link RolloutItem}s to roll out
+     * @param resourceResolver - {@link ResourceResolver} used for the rollout
+     * @param isDeep           - true if child pages should be included in the rollout process
+     * @param statusListener   - {@link Consumer} accepting the {@link RolloutStatus} of each processed target
+     * @return {@link List} of {@link RolloutStatus} of the processed targets
+     */
+    List<RolloutStatus> rolloutItems(RolloutItem[] items,
+                                     ResourceResolver resourceResolver,
+                                     boolean isDeep,
+                                     Consumer<RolloutStatus> statusListener);
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.day.cq.wcm.msm.api.MSMNameConstants;
+import com.exadel.etoolbox.rolloutmanager.core.services.BlueprintCheckCache;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Implements the size-bounded LRU cache of rollout availability checks. The results are keyed by the page path and
+ * the user ID, since the check only sees the live copies readable by the user. The cache is invalidated on changes of
+ * live sync configs, live relationship mixins, access control policies and on adding or removing pages, since any of
+ * them may change the result of the check for a blueprint page. The changes made on other cluster nodes are observed
+ * as well, since each node holds its own cache.
+ */
+@Component(
+        service = {BlueprintCheckCache.class, ResourceChangeListener.class},
+        property = {
+                ResourceChangeListener.PATHS + "=/content",
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=REMOVED",
+                ResourceChangeListener.CHANGES + "=CHANGED",
+                ResourceChangeListener.PROPERTY_NAMES_HINT + "=" + JcrConstants.JCR_MIXINTYPES,
+                ResourceChangeListener.PROPERTY_NAMES_HINT + "=" + MSMNameConstants.PN_MASTER,
+                ResourceChangeListener.PROPERTY_NAMES_HINT + "=" + MSMNameConstants.PN_IS_DEEP,
+                ResourceChangeListener.PROPERTY_NAMES_HINT + "=" + MSMNameConstants.PN_EXCLUDED_PATHS,
+                ResourceChangeListener.PROPERTY_NAMES_HINT + "=rep:privileges"
+        }
+)
+@Designate(ocd = BlueprintCheckCacheImpl.Configuration.class)
+public class BlueprintCheckCacheImpl implements BlueprintCheckCache, ExternalResourceChangeListener {
+    private static final Logger LOG = LoggerFactory.getLogger(BlueprintCheckCacheImpl.class);
+
+    private static final String LIVE_SYNC_CONFIG_NODE = MSMNameConstants.NT_LIVE_SYNC_CONFIG;
+    private static final String POLICY_NODE = "rep:policy";
+    // Not allowed in JCR names, so the key can't be ambiguous
+    private static final char KEY_SEPARATOR = '|';
+    private static final String JCR_CONTENT_NODE = "/" + JcrConstants.JCR_CONTENT;
+    private static final String JCR_CONTENT_PATH_PART = JCR_CONTENT_NODE + "/";
+
+    @ObjectClassDefinition(name = "EToolbox Blueprint Check Cache Configuration")
+    @interface Configuration {
+
+        @AttributeDefinition(
+                name = "Cache size",
+                description = "The maximum number of cached rollout availability checks. 0 disables the cache")
+        int cacheSize() default 1000;
+    }
+
+    private final Object lock = new Object();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private Map<String, Boolean> cache = new LinkedHashMap<>();
+    private int cacheSize;
+    // Incremented on invalidation, so that a check started before the invalidation is not cached
+    private long generation;
+
+    @Activate
+    @Modified
+    private void activate(Configuration config) {
+        synchronized (lock) {
+            cacheSize = Math.max(0, config.cacheSize());
+            cache = createCache(cacheSize);
+            generation++;
+        }
+        LOG.debug("Blueprint check cache is configured, size: {}", cacheSize);
+    }
+
+    private static Map<String, Boolean> createCache(int maxSize) {
+        return new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAvailableForRollout(String path, String userId, BooleanSupplier check) {
+        String key = path + KEY_SEPARATOR + userId;
+        long checkGeneration;
+        synchronized (lock) {
+            Boolean cached = cache.get(key);
+            if (cached != null) {
+                hitCount.incrementAndGet();
+                return cached;
+            }
+            checkGeneration = generation;
+        }
+        missCount.incrementAndGet();
+        // The check is performed outside the lock, since it is an expensive MSM lookup
+        boolean result = check.getAsBoolean();
+        synchronized (lock) {
+            if (checkGeneration == generation && cacheSize > 0) {
+                cache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidate() {
+        synchronized (lock) {
+            cache.clear();
+            generation++;
+        }
+        LOG.debug("Blueprint check cache is invalidated");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        changes.stream()
+                .filter(BlueprintCheckCacheImpl::affectsRelationships)
+                .findFirst()
+                .ifPresent(change -> {
+                    LOG.debug("Relationship related change: {} {}", change.getType(), change.getPath());
+                    invalidate();
+                });
+    }
+
+    private static boolean affectsRelationships(ResourceChange change) {
+        String path = change.getPath();
+        if (path.contains(LIVE_SYNC_CONFIG_NODE) || path.contains(POLICY_NODE)) {
+            return true;
+        }
+        if (path.endsWith(JCR_CONTENT_NODE)) {
+            // cq:LiveRelationship is a mixin of the page content node
+            return change.getType() != ResourceChange.ChangeType.CHANGED || isMixinChanged(change);
+        }
+        // A page is added or removed
+        return change.getType() != ResourceChange.ChangeType.CHANGED && !path.contains(JCR_CONTENT_PATH_PART);
+    }
+
+    private static boolean isMixinChanged(ResourceChange change) {
+        // Missing property names are treated as an ordinary content change, the live sync configs are checked above
+        return containsMixinTypes(change.getAddedPropertyNames())
+                || containsMixinTypes(change.getChangedPropertyNames())
+                || containsMixinTypes(change.getRemovedPropertyNames());
+    }
+
+    private static boolean containsMixinTypes(Collection<String> propertyNames) {
+        return Optional.ofNullable(propertyNames)
+                .map(names -> names.contains(JcrConstants.JCR_MIXINTYPES))
+                .orElse(false);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Matches sync paths against the exclusions of a live copy. The exclusions are compiled into a trie of path segments,
+ * so a sync path is matched in a single pass over its characters without creating substrings.
+ */
+final class ExclusionTrie {
+    private static final char SLASH = '/';
+    private static final String[] NO_SEGMENTS = new String[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root;
+
+    private ExclusionTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles the given exclusions into a trie
+     * @param exclusions - relative paths excluded from a live copy, e.g. 'experience' or 'experience/arctic-surfing'
+     * @return {@link ExclusionTrie} instance
+     */
+    static ExclusionTrie compile(Set<String> exclusions) {
+        BuilderNode builderRoot = new BuilderNode();
+        for (String exclusion : exclusions) {
+            BuilderNode node = builderRoot;
+            for (String segment : exclusion.split(String.valueOf(SLASH), -1)) {
+                node = node.children.computeIfAbsent(segment, key -> new BuilderNode());
+            }
+            node.isExcluded = true;
+        }
+        return new ExclusionTrie(builderRoot.build());
+    }
+
+    /**
+     * Checks if the sync path or any of its parents is excluded
+     * @param syncPath - the relative path of a live relationship, with or without the leading slash
+     * @return true if the sync path is excluded
+     */
+    boolean matches(String syncPath) {
+        int length = syncPath.length();
+        int start = length > 0 && syncPath.charAt(0) == SLASH ? 1 : 0;
+        Node node = root;
+        while (true) {
+            int end = syncPath.indexOf(SLASH, start);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.getChild(syncPath, start, end);
+            if (node == null) {
+                return false;
+            }
+            if (node.isExcluded) {
+                return true;
+            }
+            if (end == length) {
+                return false;
+            }
+            start = end + 1;
+        }
+    }
+
+    private static final class Node {
+        // Sorted to allow the binary search
+        private final String[] segments;
+        private final Node[] children;
+        private final boolean isExcluded;
+
+        private Node(String[] segments, Node[] children, boolean isExcluded) {
+            this.segments = segments;
+            this.children = children;
+            this.isExcluded = isExcluded;
+        }
+
+        private Node getChild(String path, int start, int end) {
+            int low = 0;
+            int high = segments.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = compare(segments[middle], path, start, end);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return children[middle];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Compares the segment with the region of the path in the same way as {@link String#compareTo(String)}
+         */
+        private static int compare(String segment, String path, int start, int end) {
+            int regionLength = end - start;
+            int minLength = Math.min(segment.length(), regionLength);
+            for (int i = 0; i < minLength; i++) {
+                char segmentChar = segment.charAt(i);
+                char pathChar = path.charAt(start + i);
+                if (segmentChar != pathChar) {
+                    return segmentChar - pathChar;
+                }
+            }
+            return segment.length() - regionLength;
+        }
+    }
+
+    private static final class BuilderNode {
+        private final Map<String, BuilderNode> children = new TreeMap<>();
+        private boolean isExcluded;
+
+        private Node build() {
+            if (children.isEmpty()) {
+                return new Node(NO_SEGMENTS, NO_CHILDREN, isExcluded);
+            }
+            String[] segments = new String[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<String, BuilderNode> entry : children.entrySet()) {
+                segments[i] = entry.getKey();
+                nodes[i] = entry.getValue().build();
+                i++;
+            }
+            return new Node(segments, nodes, isExcluded);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.MetricStatistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values. The values are counted in buckets with the 1-2-5 series of upper bounds,
+ * so a percentile is reported as the upper bound of the bucket it falls into, capped by the max recorded value.
+ */
+final class Histogram {
+    private static final long[] BUCKET_BOUNDS = createBucketBounds();
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    private static long[] createBucketBounds() {
+        // 1, 2, 5, 10, 20, 50, ... up to 5 * 10^12
+        long[] bounds = new long[39];
+        long magnitude = 1L;
+        for (int i = 0; i < bounds.length; i += 3) {
+            bounds[i] = magnitude;
+            bounds[i + 1] = 2 * magnitude;
+            bounds[i + 2] = 5 * magnitude;
+            magnitude *= 10;
+        }
+        return bounds;
+    }
+
+    void update(long value) {
+        long normalized = Math.max(0L, value);
+        buckets.incrementAndGet(bucketIndex(normalized));
+        count.increment();
+        sum.add(normalized);
+        max.accumulate(normalized);
+    }
+
+    private static int bucketIndex(long value) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (value <= BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length;
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    double getMean() {
+        long currentCount = count.sum();
+        return currentCount == 0 ? 0d : (double) sum.sum() / currentCount;
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the approximate value below which the given fraction of the recorded values falls
+     * @param quantile - the fraction of values, from 0 to 1
+     * @return The upper bound of the bucket containing the quantile, or 0 if no values are recorded
+     */
+    long getPercentile(double quantile) {
+        long total = 0;
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long currentMax = max.get();
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                return Math.min(BUCKET_BOUNDS[i], currentMax);
+            }
+        }
+        return currentMax;
+    }
+
+    /**
+     * Gets the snapshot of the histogram statistics
+     * @param unit - the recorded values are divided by the unit, e.g. to report microseconds in milliseconds
+     * @return The statistics of the recorded values
+     */
+    MetricStatistics getStatistics(double unit) {
+        return new MetricStatistics(getCount(), getMean() / unit, getMax() / unit,
+                getPercentile(0.5) / unit, getPercentile(0.95) / unit, getPercentile(0.99) / unit);
+    }
+}
@@ -14,8 +14,11 @@
 
 package com.exadel.etoolbox.rolloutmanager.core.services.impl;
 
+import com.day.cq.replication.Agent;
+import com.day.cq.replication.AgentManager;
 import com.day.cq.replication.ReplicationActionType;
 import com.day.cq.replication.ReplicationException;
+import com.day.cq.replication.ReplicationOptions;
 import com.day.cq.replication.Replicator;
 import com.day.cq.wcm.api.Page;
 import com.day.cq.wcm.api.PageManager;
@@ -24,12 +27,18 @@ import com.day.cq.wcm.msm.api.LiveRelationshipManager;
 import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
 import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
 import com.exadel.etoolbox.rolloutmanager.core.services.PageReplicationService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import com.exadel.etoolbox.rolloutmanager.core.services.util.PageFreshnessUtil;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.time.StopWatch;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.event.jobs.JobManager;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
@@ -38,22 +47,44 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.Session;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * Replicates the rolled out pages. The items of the same depth are replicated in parallel by the thread pool which is
+ * shared between requests and lives as long as the component does.
+ * <p>
+ * The pool has a bounded queue. If the queue is full, the replication task is executed by the requesting thread,
+ * which slows down the producer instead of failing the replication.
+ * <p>
+ * The activations can be limited by a rate shared by all the threads, so a deep rollout of a large tree doesn't flood
+ * the replication queues. Besides, the activations can be paused while the replication agents have more pending
+ * items than the configured high-water mark, so the authors' own activations are not stuck behind a large rollout.
+ */
 @Component(service = PageReplicationService.class)
 @Designate(ocd = PageReplicationServiceImpl.Configuration.class)
 public class PageReplicationServiceImpl implements PageReplicationService {
     private static final Logger LOG = LoggerFactory.getLogger(PageReplicationServiceImpl.class);
 
+    private static final String THREAD_NAME_PATTERN = "etoolbox-replication-worker-%d";
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+    private static final long TERMINATION_TIMEOUT_SECONDS = 30L;
+
     @ObjectClassDefinition(name = "EToolbox Page Replication Service Configuration")
     @interface Configuration {
 
@@ -61,10 +92,62 @@ public class PageReplicationServiceImpl implements PageReplicationService {
                 name = "Pool size",
                 description = "The number of Threads in the pool")
         int poolSize() default 5;
-    }
 
-    @Activate
-    private PageReplicationServiceImpl.Configuration config;
+        @AttributeDefinition(
+                name = "Queue capacity",
+                description = "The number of replication tasks waiting for a free Thread. If the queue is full, "
+                        + "the task is executed by the requesting Thread")
+        int queueCapacity() default 100;
+
+        @AttributeDefinition(
+                name = "Batch replication",
+                description = "Replicate the pages of a deep rollout in batches instead of one replication action per page")
+        boolean batchReplication() default false;
+
+        @AttributeDefinition(
+                name = "Batch size",
+                description = "The maximum number of pages replicated by a single replication action")
+        int batchSize() default 100;
+
+        @AttributeDefinition(
+                name = "Synchronous batch replication",
+                description = "Wait until the batch is delivered to the replication agents")
+        boolean synchronousReplication() default false;
+
+        @AttributeDefinition(
+                name = "Suppress versions",
+                description = "Don't create page versions on batch replication")
+        boolean suppressVersions() default false;
+
+        @AttributeDefinition(
+                name = "Max activations per second",
+                description = "The maximum number of pages activated per second by all the replication Threads. "
+                        + "Zero or a negative value means no limit")
+        int maxActivationsPerSecond() default 0;
+
+        @AttributeDefinition(
+                name = "Replication queue high-water mark",
+                description = "The activations are paused while the queues of the enabled replication agents have "
+                        + "more pending items in total. Zero or a negative value disables the check")
+        int queueHighWaterMark() default 0;
+
+        @AttributeDefinition(
+                name = "Replication queue check interval",
+                description = "The interval in milliseconds between checks of the replication queues")
+        long queueCheckInterval() default 1000L;
+
+        @AttributeDefinition(
+                name = "Max replication queue wait",
+                description = "The maximum total time in seconds the activations of one target wait for "
+                        + "the replication queues to drain. The remaining pages of the target are activated "
+                        + "without waiting after that")
+        long maxQueueWait() default 300L;
+
+        @AttributeDefinition(
+                name = "Incremental replication",
+                description = "Skip the pages activated after their last modification and rollout")
+        boolean incrementalReplication() default false;
+    }
 
     @Reference
     private LiveRelationshipManager liveRelationshipManager;
@@ -75,7 +158,147 @@ public class PageReplicationServiceImpl implements PageReplicationService {
     @Reference
     private Replicator replicator;
 
+    @Reference
+    private AgentManager agentManager;
+
+    @Reference
+    private RolloutMetrics rolloutMetrics;
+
+    private volatile ThreadPoolExecutor executor;
+    private volatile Configuration config;
+    private int queueCapacity;
+    private final AtomicLong nextPermitNanos = new AtomicLong(System.nanoTime());
+    private final AtomicLong queueCheckedNanos = new AtomicLong();
+    private volatile int pendingReplications;
+
+    @Activate
+    private void activate(Configuration config) {
+        this.config = config;
+        executor = createExecutor(config);
+        queueCapacity = config.queueCapacity();
+        // The replication queues are checked on the first activation
+        queueCheckedNanos.set(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(config.queueCheckInterval()));
+        rolloutMetrics.registerGauge(RolloutMetrics.REPLICATION_QUEUE_DEPTH, this::getQueuedTaskCount);
+        rolloutMetrics.registerGauge(RolloutMetrics.REPLICATION_ACTIVE_THREADS, this::getActiveThreadCount);
+        rolloutMetrics.registerGauge(RolloutMetrics.REPLICATION_AGENT_QUEUE_DEPTH, () -> pendingReplications);
+        LOG.debug("Replication executor is created, pool size: {}, queue capacity: {}",
+                config.poolSize(), config.queueCapacity());
+    }
+
+    @Modified
+    private void modified(Configuration config) {
+        this.config = config;
+        ThreadPoolExecutor current = executor;
+        if (current == null || queueCapacity != config.queueCapacity()) {
+            // The queue capacity can't be changed on the fly, the queued tasks are completed by the previous executor
+            executor = createExecutor(config);
+            queueCapacity = config.queueCapacity();
+            if (current != null) {
+                current.shutdown();
+            }
+        } else if (config.poolSize() > current.getMaximumPoolSize()) {
+            current.setMaximumPoolSize(config.poolSize());
+            current.setCorePoolSize(config.poolSize());
+        } else {
+            current.setCorePoolSize(config.poolSize());
+            current.setMaximumPoolSize(config.poolSize());
+        }
+        LOG.debug("Replication executor is reconfigured, pool size: {}, queue capacity: {}",
+                config.poolSize(), config.queueCapacity());
+    }
+
+    @Deactivate
+    private void deactivate() {
+        rolloutMetrics.unregisterGauge(RolloutMetrics.REPLICATION_QUEUE_DEPTH);
+        rolloutMetrics.unregisterGauge(RolloutMetrics.REPLICATION_ACTIVE_THREADS);
+        rolloutMetrics.unregisterGauge(RolloutMetrics.REPLICATION_AGENT_QUEUE_DEPTH);
+        shutdown(executor);
+        executor = null;
+    }
+
+    private static ThreadPoolExecutor createExecutor(Configuration config) {
+        return new ThreadPoolExecutor(
+                config.poolSize(),
+                config.poolSize(),
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.queueCapacity())),
+                new BasicThreadFactory.Builder().namingPattern(THREAD_NAME_PATTERN).daemon(true).build(),
+                PageReplicationServiceImpl::runInCaller
+        );
+    }
+
+    private static void runInCaller(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Replication executor is shut down");
+        }
+        LOG.debug("Replication queue is full, the task is executed by the requesting thread");
+        task.run();
+    }
+
+    private static void shutdown(ThreadPoolExecutor executor) {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Replication tasks are not completed in {} seconds, interrupting", TERMINATION_TIMEOUT_SECONDS);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getActiveThreadCount() {
+        return Optional.ofNullable(executor).map(ThreadPoolExecutor::getActiveCount).orElse(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getQueuedTaskCount() {
+        return Optional.ofNullable(executor).map(pool -> pool.getQueue().size()).orElse(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getReplicationActionCount(int pageCount, boolean isDeep) {
+        Configuration currentConfig = config;
+        if (!isDeep) {
+            return Math.min(1, pageCount);
+        }
+        if (currentConfig.batchReplication()) {
+            int batchSize = Math.max(1, currentConfig.batchSize());
+            return (pageCount + batchSize - 1) / batchSize;
+        }
+        return pageCount;
+    }
+
     public List<RolloutStatus> replicateItems(ResourceResolver resourceResolver, RolloutItem[] items, PageManager pageManager, boolean isDeep) {
+        return replicateItems(resourceResolver, items, pageManager, isDeep, status -> {
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<RolloutStatus> replicateItems(ResourceResolver resourceResolver,
+                                              RolloutItem[] items,
+                                              PageManager pageManager,
+                                              boolean isDeep,
+                                              Consumer<RolloutStatus> statusListener) {
+        LOG.debug("Replication requested, active threads: {}, queued tasks: {}", getActiveThreadCount(), getQueuedTaskCount());
         return Arrays.stream(items)
                 .collect(Collectors.groupingBy(RolloutItem::getDepth))
                 .entrySet()
@@ -83,20 +306,37 @@ public class PageReplicationServiceImpl implements PageReplicationService {
                 .sorted(Map.Entry.comparingByKey())
                 .map(Map.Entry::getValue)
                 .flatMap(sortedByDepthItems -> replicateSortedByDepthItems(resourceResolver, sortedByDepthItems, pageManager, isDeep))
+                .peek(statusListener)
                 .collect(Collectors.toList());
     }
 
     private Stream<RolloutStatus> replicateSortedByDepthItems(ResourceResolver resourceResolver, List<RolloutItem> items, PageManager pageManager, boolean isDeep) {
-        ExecutorService executorService = Executors.newFixedThreadPool(config.poolSize());
         return items.stream()
                 .filter(item -> StringUtils.isNotBlank(item.getTarget()))
                 .filter(item -> !isBluePrintPage(item, resourceResolver))
-                .map(item -> CompletableFuture.supplyAsync(() -> replicate(resourceResolver, item, pageManager, isDeep), executorService))
+                .map(item -> submit(resourceResolver, item, pageManager, isDeep))
                 .collect(Collectors.toList())
                 .stream()
                 .map(CompletableFuture::join);
     }
 
+    private CompletableFuture<RolloutStatus> submit(ResourceResolver resourceResolver, RolloutItem item, PageManager pageManager, boolean isDeep) {
+        ThreadPoolExecutor pool = executor;
+        if (pool != null) {
+            rolloutMetrics.recordValue(RolloutMetrics.REPLICATION_QUEUE_DEPTH, pool.getQueue().size());
+            try {
+                return CompletableFuture.supplyAsync(() -> replicate(resourceResolver, item, pageManager, isDeep), pool);
+            } catch (RejectedExecutionException e) {
+                LOG.error("Replication task is rejected, target: {}", item.getTarget(), e);
+            }
+        } else {
+            LOG.error("Replication executor is not available, target: {}", item.getTarget());
+        }
+        RolloutStatus status = new RolloutStatus(item.getTarget());
+        status.setSuccess(false);
+        return CompletableFuture.completedFuture(status);
+    }
+
     private boolean isBluePrintPage(RolloutItem item, ResourceResolver resourceResolver) {
         boolean hasRelationships = true;
         try {
@@ -112,6 +352,17 @@ public class PageReplicationServiceImpl implements PageReplicationService {
     }
 
     private RolloutStatus replicate(ResourceResolver resourceResolver, RolloutItem targetItem, PageManager pageManager, boolean isDeep) {
+        StopWatch sw = StopWatch.createStarted();
+        RolloutStatus status = replicateTarget(resourceResolver, targetItem, pageManager, isDeep);
+        rolloutMetrics.recordTime(RolloutMetrics.TARGET_REPLICATION, sw.getNanoTime());
+        status.setDuration(sw.getTime(TimeUnit.MILLISECONDS));
+        rolloutMetrics.increment(status.isSuccess()
+                ? RolloutMetrics.TARGET_REPLICATION_SUCCEEDED
+                : RolloutMetrics.TARGET_REPLICATION_FAILED);
+        return status;
+    }
+
+    private RolloutStatus replicateTarget(ResourceResolver resourceResolver, RolloutItem targetItem, PageManager pageManager, boolean isDeep) {
 
         String targetPath = targetItem.getTarget();
         RolloutStatus status = new RolloutStatus(targetPath);
@@ -123,29 +374,178 @@ public class PageReplicationServiceImpl implements PageReplicationService {
             LOG.warn("Replication failed - target page is null, page path: {}", targetPath);
             return status;
         }
-        try {
-            if (isDeep) {
-                replicatePageAndChildren(session, targetPage.get());
-            } else {
+        Configuration currentConfig = config;
+        if (isDeep && currentConfig.batchReplication()) {
+            replicateInBatches(session, targetPage.get(), currentConfig, status);
+        } else if (isDeep) {
+            replicatePageAndChildren(session, targetPage.get(), currentConfig, status);
+        } else if (isUpToDate(targetPage.get(), currentConfig)) {
+            status.setSkippedPages(1);
+            LOG.debug("Page replication skipped, page is up to date: {}", targetPath);
+        } else if (throttle(1, status)) {
+            try {
                 replicator.replicate(session, ReplicationActionType.ACTIVATE, targetPath);
+                status.setActivatedPages(1);
+            } catch (ReplicationException ex) {
+                status.setFailedPages(1);
+                LOG.error("Exception during page replication: {}", targetPath, ex);
             }
-            status.setSuccess(true);
-        } catch (ReplicationException ex) {
-            status.setSuccess(false);
-            LOG.error("Exception during page replication: {}", targetPath, ex);
         }
+        rolloutMetrics.recordValue(RolloutMetrics.REPLICATED_PAGES, status.getActivatedPages());
+        status.setSuccess(status.getFailedPages() == 0 && !Thread.currentThread().isInterrupted());
         return status;
     }
 
-    private void replicatePageAndChildren(Session session, Page page) {
+    private void replicateInBatches(Session session, Page page, Configuration config, RolloutStatus status) {
+        List<String> paths = collectPagePaths(page, config, status);
+        ReplicationOptions options = new ReplicationOptions();
+        options.setSynchronous(config.synchronousReplication());
+        options.setSuppressVersions(config.suppressVersions());
+
+        int batchSize = Math.max(1, config.batchSize());
+        for (int from = 0; from < paths.size() && throttle(Math.min(batchSize, paths.size() - from), status); from += batchSize) {
+            String[] batch = paths.subList(from, Math.min(from + batchSize, paths.size())).toArray(new String[0]);
+            try {
+                replicator.replicate(session, ReplicationActionType.ACTIVATE, batch, options);
+                status.setActivatedPages(status.getActivatedPages() + batch.length);
+                LOG.debug("Replicated batch of {} pages, first page: {}", batch.length, batch[0]);
+            } catch (ReplicationException ex) {
+                status.setFailedPages(status.getFailedPages() + batch.length);
+                LOG.error("Exception during batch replication, first page: {}, pages in batch: {}", batch[0], batch.length, ex);
+            }
+        }
+    }
+
+    private static List<String> collectPagePaths(Page root, Configuration config, RolloutStatus status) {
+        List<String> paths = new ArrayList<>();
+        Deque<Page> queue = new ArrayDeque<>();
+        queue.offer(root);
+        while (!queue.isEmpty()) {
+            Page page = queue.poll();
+            if (isReplicable(page) && !isUpToDate(page, config)) {
+                paths.add(page.getPath());
+            } else {
+                status.setSkippedPages(status.getSkippedPages() + 1);
+            }
+            page.listChildren().forEachRemaining(queue::offer);
+        }
+        return paths;
+    }
+
+    /**
+     * Activates the page and its subtree level by level. The pages are read from the repository as the traversal goes,
+     * so only the pages of the current and the next level are kept in the queue. A failed page is counted and the
+     * traversal continues with its children.
+     */
+    private void replicatePageAndChildren(Session session, Page root, Configuration config, RolloutStatus status) {
+        Deque<Page> queue = new ArrayDeque<>();
+        queue.offer(root);
+        while (!queue.isEmpty()) {
+            Page page = queue.poll();
+            if (!isReplicable(page) || isUpToDate(page, config)) {
+                status.setSkippedPages(status.getSkippedPages() + 1);
+                LOG.debug("Page replication skipped, page has no content or is up to date: {}", page.getPath());
+            } else if (!throttle(1, status)) {
+                LOG.warn("Replication is interrupted, page path: {}", page.getPath());
+                return;
+            } else {
+                try {
+                    replicator.replicate(session, ReplicationActionType.ACTIVATE, page.getPath());
+                    status.setActivatedPages(status.getActivatedPages() + 1);
+                } catch (ReplicationException ex) {
+                    status.setFailedPages(status.getFailedPages() + 1);
+                    LOG.error("Exception during page replication: {}", page.getPath(), ex);
+                }
+            }
+            page.listChildren().forEachRemaining(queue::offer);
+        }
+    }
+
+    private static boolean isReplicable(Page page) {
+        return page.getContentResource() != null;
+    }
+
+    private static boolean isUpToDate(Page page, Configuration config) {
+        return config.incrementalReplication() && PageFreshnessUtil.isActivated(page);
+    }
+
+    /**
+     * Waits until the replication queues are below the high-water mark and the given number of activations fits into
+     * the configured rate. The permits are reserved atomically, so the rate is shared by all the replication threads
+     * @param permits - the number of pages about to be activated
+     * @param status  - the status the waiting time is added to
+     * @return False if the thread is interrupted while waiting, true otherwise
+     */
+    private boolean throttle(int permits, RolloutStatus status) {
+        Configuration currentConfig = config;
+        StopWatch sw = StopWatch.createStarted();
+        try {
+            awaitReplicationQueues(currentConfig, status);
+            int maxActivationsPerSecond = currentConfig.maxActivationsPerSecond();
+            if (maxActivationsPerSecond > 0) {
+                long interval = TimeUnit.SECONDS.toNanos(1) / maxActivationsPerSecond * permits;
+                long now = System.nanoTime();
+                long permitNanos = Math.max(nextPermitNanos.getAndAccumulate(interval, (next, x) -> Math.max(next, now) + x), now);
+                TimeUnit.NANOSECONDS.sleep(permitNanos - now);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            status.setThrottleDelay(status.getThrottleDelay() + sw.getTime(TimeUnit.MILLISECONDS));
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Waits until the replication queues are below the high-water mark. The wait time is a budget of the whole target,
+     * once it is spent the remaining pages of the target are activated without waiting
+     */
+    private void awaitReplicationQueues(Configuration config, RolloutStatus status) throws InterruptedException {
+        int highWaterMark = config.queueHighWaterMark();
+        if (highWaterMark <= 0 || status.isQueueWaitExceeded() || getPendingReplications(config) <= highWaterMark) {
+            return;
+        }
+        LOG.debug("Replication queues are above the high-water mark, pending items: {}, high-water mark: {}",
+                pendingReplications, highWaterMark);
+        StopWatch sw = StopWatch.createStarted();
+        long remainingWaitMillis = TimeUnit.SECONDS.toMillis(config.maxQueueWait()) - status.getQueueWait();
         try {
-            replicator.replicate(session, ReplicationActionType.ACTIVATE, page.getPath());
-            for (Iterator<Page> children = page.listChildren(); children.hasNext(); ) {
-                Page childPage = children.next();
-                replicatePageAndChildren(session, childPage);
+            while (getPendingReplications(config) > highWaterMark) {
+                if (sw.getTime(TimeUnit.MILLISECONDS) >= remainingWaitMillis) {
+                    status.setQueueWaitExceeded(true);
+                    LOG.warn("Replication queues are not drained in {} seconds for {}, pending items: {}, "
+                            + "the remaining pages are activated without waiting", config.maxQueueWait(),
+                            status.getTarget(), pendingReplications);
+                    return;
+                }
+                TimeUnit.MILLISECONDS.sleep(Math.max(1L, config.queueCheckInterval()));
             }
-        } catch (Exception ex) {
-            LOG.error("Exception during page replication: {}", page.getPath(), ex);
+        } finally {
+            status.setQueueWait(status.getQueueWait() + sw.getTime(TimeUnit.MILLISECONDS));
+            rolloutMetrics.recordTime(RolloutMetrics.REPLICATION_BACKPRESSURE, sw.getNanoTime());
+        }
+    }
+
+    /**
+     * Gets the number of items pending in the queues of the enabled replication agents. The queues are read at most
+     * once per the check interval, other threads get the last counted value in the meantime
+     */
+    private int getPendingReplications(Configuration config) {
+        long now = System.nanoTime();
+        long checked = queueCheckedNanos.get();
+        if (now - checked >= TimeUnit.MILLISECONDS.toNanos(config.queueCheckInterval())
+                && queueCheckedNanos.compareAndSet(checked, now)) {
+            pendingReplications = agentManager.getAgents().values().stream()
+                    .filter(PageReplicationServiceImpl::isPublishingAgent)
+                    .map(Agent::getQueue)
+                    .filter(Objects::nonNull)
+                    .mapToInt(queue -> queue.entries().size())
+                    .sum();
         }
+        return pendingReplications;
+    }
+
+    private static boolean isPublishingAgent(Agent agent) {
+        return agent.isEnabled() && agent.isValid() && !agent.getConfiguration().usedForReverseReplication();
     }
-}
\ No newline at end of file
+}
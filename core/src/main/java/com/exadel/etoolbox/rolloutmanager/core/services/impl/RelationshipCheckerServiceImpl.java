@@ -16,24 +16,47 @@ package com.exadel.etoolbox.rolloutmanager.core.services.impl;
 
 import com.day.cq.wcm.msm.api.LiveCopy;
 import com.day.cq.wcm.msm.api.LiveRelationship;
+import com.day.cq.wcm.msm.api.MSMNameConstants;
 import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipCheckerService;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.JcrConstants;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.osgi.service.component.annotations.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implements methods for checking if a live relationship can be synchronized with a blueprint in scope of usage
  * the rollout manager tool.
+ * <p>
+ * The exclusions of each live copy are compiled into {@link ExclusionTrie} once and cached by the live copy path.
+ * A cached entry is removed when the live sync config of the live copy is added, changed or removed on any cluster node.
  */
-@Component(service = RelationshipCheckerService.class)
-public class RelationshipCheckerServiceImpl implements RelationshipCheckerService {
+@Component(
+        service = {RelationshipCheckerService.class, ResourceChangeListener.class},
+        property = {
+                ResourceChangeListener.PATHS + "=glob:/content/**/jcr:content/cq:LiveSyncConfig",
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=REMOVED",
+                ResourceChangeListener.CHANGES + "=CHANGED"
+        }
+)
+public class RelationshipCheckerServiceImpl implements RelationshipCheckerService, ExternalResourceChangeListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(RelationshipCheckerServiceImpl.class);
     private static final String SLASH = "/";
+    private static final String JCR_CONTENT_PATH_PART = SLASH + JcrConstants.JCR_CONTENT + SLASH;
+    private static final String LIVE_SYNC_CONFIG_PATH_PART = JCR_CONTENT_PATH_PART + MSMNameConstants.NT_LIVE_SYNC_CONFIG;
+
+    private final Map<String, ExclusionTrie> exclusionTries = new ConcurrentHashMap<>();
 
     /**
      * {@inheritDoc}
@@ -46,6 +69,7 @@ public class RelationshipCheckerServiceImpl implements RelationshipCheckerServic
             return false;
         }
         return isAvailableForSync(
+                liveCopy.getPath(),
                 relationship.getSyncPath(),
                 relationship.getTargetPath(),
                 liveCopy.getExclusions(),
@@ -64,6 +88,48 @@ public class RelationshipCheckerServiceImpl implements RelationshipCheckerServic
         if (isInExclusions(StringUtils.removeStart(syncPath, SLASH), exclusions)) {
             return false;
         }
+        return isSyncParentAvailable(targetPath, resourceResolver);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAvailableForSync(String liveCopyPath,
+                                      String syncPath,
+                                      String targetPath,
+                                      Set<String> exclusions,
+                                      ResourceResolver resourceResolver) {
+        if (liveCopyPath == null) {
+            return isAvailableForSync(syncPath, targetPath, exclusions, resourceResolver);
+        }
+        if (StringUtils.isEmpty(syncPath)) {
+            return true;
+        }
+        if (getExclusionTrie(liveCopyPath, exclusions).matches(syncPath)) {
+            return false;
+        }
+        return isSyncParentAvailable(targetPath, resourceResolver);
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        for (ResourceChange change : changes) {
+            String path = change.getPath();
+            if (path.contains(LIVE_SYNC_CONFIG_PATH_PART)) {
+                exclusionTries.remove(StringUtils.substringBefore(path, LIVE_SYNC_CONFIG_PATH_PART));
+            }
+        }
+    }
+
+    private ExclusionTrie getExclusionTrie(String liveCopyPath, Set<String> exclusions) {
+        return exclusionTries.computeIfAbsent(liveCopyPath, path -> {
+            LOG.debug("Exclusions of {} are compiled, exclusions: {}", path, exclusions.size());
+            return ExclusionTrie.compile(exclusions);
+        });
+    }
+
+    private boolean isSyncParentAvailable(String targetPath, ResourceResolver resourceResolver) {
         String syncParent = StringUtils.substringBeforeLast(targetPath, SLASH);
         if (StringUtils.isEmpty(syncParent)) {
             return true;
@@ -81,4 +147,4 @@ public class RelationshipCheckerServiceImpl implements RelationshipCheckerServic
         }
         return isInExclusions(parent, exclusions);
     }
-}
\ No newline at end of file
+}
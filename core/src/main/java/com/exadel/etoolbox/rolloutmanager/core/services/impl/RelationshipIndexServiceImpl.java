@@ -0,0 +1,456 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.day.cq.wcm.api.WCMException;
+import com.day.cq.wcm.msm.api.LiveCopy;
+import com.day.cq.wcm.msm.api.LiveRelationship;
+import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.day.cq.wcm.msm.api.MSMNameConstants;
+import com.day.cq.wcm.msm.api.RolloutConfig;
+import com.day.cq.wcm.msm.api.RolloutManager;
+import com.exadel.etoolbox.rolloutmanager.core.models.LiveCopyRelationship;
+import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipIndexService;
+import com.exadel.etoolbox.rolloutmanager.core.services.util.ResolverUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.query.Query;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maintains the persistent blueprint to live copy index under {@value #INDEX_PATH}. The index mirrors the content
+ * tree: each live copy is stored at the index path followed by the live copy path, and holds the blueprint path,
+ * the deep flag, the exclusions and the auto rollout trigger flag. So a live copy, or all the live copies under
+ * a removed page, are looked up directly by path.
+ * <p>
+ * The index is updated incrementally on changes of live sync configs, on adding pages that contain live copies and
+ * on removing pages. The full rebuild is required once after the index is enabled, and can be used for recovery.
+ * The index is read into memory on the first lookup after it is changed on any cluster node.
+ */
+@Component(
+        service = {RelationshipIndexService.class, ResourceChangeListener.class},
+        property = {
+                ResourceChangeListener.PATHS + "=/content",
+                ResourceChangeListener.PATHS + "=" + RelationshipIndexServiceImpl.INDEX_PATH,
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=REMOVED",
+                ResourceChangeListener.CHANGES + "=CHANGED"
+        }
+)
+@Designate(ocd = RelationshipIndexServiceImpl.Configuration.class)
+public class RelationshipIndexServiceImpl implements RelationshipIndexService, ExternalResourceChangeListener {
+    private static final Logger LOG = LoggerFactory.getLogger(RelationshipIndexServiceImpl.class);
+
+    static final String INDEX_PATH = ResolverUtil.VAR_ROOT_PATH + "/relationship-index";
+
+    private static final String SLASH = "/";
+    private static final String CONTENT_ROOT = "/content";
+    private static final String JCR_CONTENT_PATH_PART = SLASH + JcrConstants.JCR_CONTENT + SLASH;
+    private static final String LIVE_SYNC_CONFIG_PATH_PART = JCR_CONTENT_PATH_PART + MSMNameConstants.NT_LIVE_SYNC_CONFIG;
+    private static final String LIVE_SYNC_CONFIGS_QUERY = "SELECT * FROM [" + MSMNameConstants.NT_LIVE_SYNC_CONFIG
+            + "] AS config WHERE ISDESCENDANTNODE(config, '%s')";
+
+    private static final String FOLDER_TYPE = "sling:Folder";
+    private static final String BUILT_PROPERTY = "built";
+    private static final String BLUEPRINT_PATH_PROPERTY = "blueprintPath";
+    private static final String LIVE_COPY_PATH_PROPERTY = "liveCopyPath";
+    private static final String IS_DEEP_PROPERTY = "deep";
+    private static final String EXCLUSIONS_PROPERTY = "exclusions";
+    private static final String AUTO_ROLLOUT_TRIGGER_PROPERTY = "autoRolloutTrigger";
+    private static final List<String> ENTRY_PROPERTIES = Arrays.asList(BLUEPRINT_PATH_PROPERTY, LIVE_COPY_PATH_PROPERTY,
+            IS_DEEP_PROPERTY, EXCLUSIONS_PROPERTY, AUTO_ROLLOUT_TRIGGER_PROPERTY);
+
+    @ObjectClassDefinition(name = "EToolbox Relationship Index Configuration")
+    @interface Configuration {
+
+        @AttributeDefinition(
+                name = "Enabled",
+                description = "Read live relationships from the index instead of the MSM API. The index must be "
+                        + "rebuilt once after it is enabled")
+        boolean enabled() default false;
+    }
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference
+    private LiveRelationshipManager liveRelationshipManager;
+
+    private volatile boolean enabled;
+
+    // Blueprint paths mapped to the indexed live copies, null if the index should be read from the repository
+    private volatile Map<String, List<IndexEntry>> snapshot;
+
+    @Activate
+    @Modified
+    private void activate(Configuration config) {
+        enabled = config.enabled();
+        snapshot = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<List<LiveCopyRelationship>> getRelationships(String sourcePath, ResourceResolver resourceResolver) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(getSnapshot()).flatMap(index -> {
+            List<LiveCopyRelationship> relationships = new ArrayList<>();
+            boolean isIndexed = false;
+            // The blueprint is either the source itself or one of its ancestors
+            for (String blueprintPath = sourcePath;
+                 StringUtils.isNotEmpty(blueprintPath);
+                 blueprintPath = StringUtils.substringBeforeLast(blueprintPath, SLASH)) {
+                List<IndexEntry> entries = index.get(blueprintPath);
+                if (entries == null) {
+                    continue;
+                }
+                isIndexed = true;
+                String syncPath = StringUtils.removeStart(sourcePath, blueprintPath);
+                entries.stream()
+                        .filter(entry -> syncPath.isEmpty() || entry.isDeep)
+                        .filter(entry -> resourceResolver.getResource(entry.liveCopyPath) != null)
+                        .map(entry -> entry.toRelationship(syncPath))
+                        .forEach(relationships::add);
+            }
+            // The paths without indexed blueprints are left to the MSM API
+            return isIndexed ? Optional.of(relationships) : Optional.empty();
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int rebuild() {
+        try (ResourceResolver resourceResolver = ResolverUtil.getServiceResolver(resolverFactory)) {
+            Resource indexResource = resourceResolver.getResource(INDEX_PATH);
+            if (indexResource != null) {
+                resourceResolver.delete(indexResource);
+            }
+            indexResource = getOrCreateIndex(resourceResolver);
+            int count = 0;
+            for (String liveCopyPath : findLiveCopies(resourceResolver, CONTENT_ROOT)) {
+                if (addEntry(resourceResolver, liveCopyPath)) {
+                    count++;
+                }
+            }
+            setBuilt(indexResource);
+            resourceResolver.commit();
+            snapshot = null;
+            LOG.info("Relationship index is rebuilt, live copies: {}", count);
+            return count;
+        } catch (LoginException | PersistenceException e) {
+            LOG.error("Failed to rebuild the relationship index", e);
+        }
+        return -1;
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        if (!enabled) {
+            return;
+        }
+        Set<String> changedLiveCopies = new LinkedHashSet<>();
+        Set<String> addedPages = new TreeSet<>();
+        Set<String> removedPaths = new LinkedHashSet<>();
+        for (ResourceChange change : changes) {
+            String path = change.getPath();
+            if (path.startsWith(INDEX_PATH)) {
+                // The index is changed either by this or by another cluster node
+                snapshot = null;
+            } else if (change.isExternal()) {
+                // The index is updated by the cluster node where the content is changed
+                continue;
+            } else if (path.contains(LIVE_SYNC_CONFIG_PATH_PART)) {
+                changedLiveCopies.add(StringUtils.substringBefore(path, LIVE_SYNC_CONFIG_PATH_PART));
+            } else if (!path.contains(JCR_CONTENT_PATH_PART) && change.getType() == ResourceChange.ChangeType.REMOVED) {
+                removedPaths.add(path);
+            } else if (!path.contains(JCR_CONTENT_PATH_PART) && change.getType() == ResourceChange.ChangeType.ADDED) {
+                // A moved or copied page may contain live copies at any level
+                addedPages.add(path);
+            }
+        }
+        if (!changedLiveCopies.isEmpty() || !addedPages.isEmpty() || !removedPaths.isEmpty()) {
+            update(changedLiveCopies, addedPages, removedPaths);
+        }
+    }
+
+    private void update(Set<String> changedLiveCopies, Set<String> addedPages, Set<String> removedPaths) {
+        try (ResourceResolver resourceResolver = ResolverUtil.getServiceResolver(resolverFactory)) {
+            Resource indexResource = resourceResolver.getResource(INDEX_PATH);
+            if (indexResource == null || !isBuilt(indexResource)) {
+                return;
+            }
+            boolean isChanged = false;
+            for (String removedPath : removedPaths) {
+                isChanged |= removeEntries(resourceResolver, removedPath);
+            }
+            for (String liveCopyPath : changedLiveCopies) {
+                if (!isLiveCopy(resourceResolver, liveCopyPath) && !isIndexed(resourceResolver, liveCopyPath)) {
+                    continue;
+                }
+                isChanged |= removeEntry(resourceResolver, liveCopyPath);
+                isChanged |= addEntry(resourceResolver, liveCopyPath);
+            }
+            for (String pagePath : getTopmostPaths(addedPages)) {
+                for (String liveCopyPath : findLiveCopies(resourceResolver, pagePath)) {
+                    if (!changedLiveCopies.contains(liveCopyPath)) {
+                        isChanged |= removeEntry(resourceResolver, liveCopyPath);
+                        isChanged |= addEntry(resourceResolver, liveCopyPath);
+                    }
+                }
+            }
+            if (isChanged) {
+                resourceResolver.commit();
+                snapshot = null;
+                LOG.debug("Relationship index is updated, live copies: {}, removed paths: {}", changedLiveCopies, removedPaths);
+            }
+        } catch (LoginException | PersistenceException e) {
+            LOG.error("Failed to update the relationship index, the index should be rebuilt", e);
+        }
+    }
+
+    private boolean addEntry(ResourceResolver resourceResolver, String liveCopyPath) throws PersistenceException {
+        Resource liveCopyResource = resourceResolver.getResource(liveCopyPath);
+        if (liveCopyResource == null || !isLiveCopy(resourceResolver, liveCopyPath)) {
+            return false;
+        }
+        LiveCopy liveCopy;
+        try {
+            liveCopy = Optional.ofNullable(liveRelationshipManager.getLiveRelationship(liveCopyResource, false))
+                    .map(LiveRelationship::getLiveCopy)
+                    .filter(lc -> StringUtils.equals(liveCopyPath, lc.getPath()))
+                    .orElse(null);
+        } catch (WCMException e) {
+            LOG.error("Failed to get the live copy: {}", liveCopyPath, e);
+            return false;
+        }
+        if (liveCopy == null || StringUtils.isBlank(liveCopy.getBlueprintPath())) {
+            return false;
+        }
+        ModifiableValueMap properties = Optional.ofNullable(ResourceUtil.getOrCreateResource(resourceResolver,
+                        toEntryPath(liveCopyPath), unstructuredProperties(), JcrConstants.NT_UNSTRUCTURED, false))
+                .map(entryResource -> entryResource.adaptTo(ModifiableValueMap.class))
+                .orElseThrow(() -> new PersistenceException("Failed to create the index entry: " + liveCopyPath));
+        properties.put(BLUEPRINT_PATH_PROPERTY, liveCopy.getBlueprintPath());
+        properties.put(LIVE_COPY_PATH_PROPERTY, liveCopyPath);
+        properties.put(IS_DEEP_PROPERTY, liveCopy.isDeep());
+        properties.put(EXCLUSIONS_PROPERTY, liveCopy.getExclusions().toArray(new String[0]));
+        properties.put(AUTO_ROLLOUT_TRIGGER_PROPERTY, hasAutoTrigger(liveCopy));
+        return true;
+    }
+
+    /**
+     * Removes the index entry of the given live copy. The entry node is kept if it holds the entries of nested
+     * live copies
+     */
+    private static boolean removeEntry(ResourceResolver resourceResolver, String liveCopyPath)
+            throws PersistenceException {
+        Resource entryResource = resourceResolver.getResource(toEntryPath(liveCopyPath));
+        if (entryResource == null || !isEntry(entryResource)) {
+            return false;
+        }
+        if (!entryResource.hasChildren()) {
+            resourceResolver.delete(entryResource);
+            return true;
+        }
+        ModifiableValueMap properties = entryResource.adaptTo(ModifiableValueMap.class);
+        if (properties != null) {
+            ENTRY_PROPERTIES.forEach(properties::remove);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the index entries of all live copies under the removed path
+     */
+    private static boolean removeEntries(ResourceResolver resourceResolver, String path) throws PersistenceException {
+        Resource entriesResource = resourceResolver.getResource(toEntryPath(path));
+        if (entriesResource == null) {
+            return false;
+        }
+        resourceResolver.delete(entriesResource);
+        return true;
+    }
+
+    private static boolean isIndexed(ResourceResolver resourceResolver, String liveCopyPath) {
+        return Optional.ofNullable(resourceResolver.getResource(toEntryPath(liveCopyPath)))
+                .filter(RelationshipIndexServiceImpl::isEntry)
+                .isPresent();
+    }
+
+    /**
+     * Finds the live copies at the given path or under it
+     */
+    private static List<String> findLiveCopies(ResourceResolver resourceResolver, String path) {
+        List<String> liveCopyPaths = new ArrayList<>();
+        String query = String.format(LIVE_SYNC_CONFIGS_QUERY, path.replace("'", "''"));
+        Iterator<Resource> configs = resourceResolver.findResources(query, Query.JCR_SQL2);
+        while (configs.hasNext()) {
+            liveCopyPaths.add(StringUtils.substringBefore(configs.next().getPath(), LIVE_SYNC_CONFIG_PATH_PART));
+        }
+        return liveCopyPaths;
+    }
+
+    /**
+     * Gets the paths which are not under any other of the given sorted paths
+     */
+    private static List<String> getTopmostPaths(Set<String> sortedPaths) {
+        List<String> topmostPaths = new ArrayList<>();
+        for (String path : sortedPaths) {
+            if (topmostPaths.isEmpty() || !path.startsWith(topmostPaths.get(topmostPaths.size() - 1) + SLASH)) {
+                topmostPaths.add(path);
+            }
+        }
+        return topmostPaths;
+    }
+
+    private static boolean isLiveCopy(ResourceResolver resourceResolver, String path) {
+        return resourceResolver.getResource(path + LIVE_SYNC_CONFIG_PATH_PART) != null;
+    }
+
+    private Map<String, List<IndexEntry>> getSnapshot() {
+        Map<String, List<IndexEntry>> current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        try (ResourceResolver resourceResolver = ResolverUtil.getServiceResolver(resolverFactory)) {
+            Resource indexResource = resourceResolver.getResource(INDEX_PATH);
+            if (indexResource == null || !isBuilt(indexResource)) {
+                LOG.debug("Relationship index is enabled but not built, the MSM API is used");
+                return null;
+            }
+            current = readIndex(indexResource);
+            snapshot = current;
+            return current;
+        } catch (LoginException e) {
+            LOG.error("Failed to read the relationship index", e);
+        }
+        return null;
+    }
+
+    private static Map<String, List<IndexEntry>> readIndex(Resource indexResource) {
+        Map<String, List<IndexEntry>> index = new HashMap<>();
+        Deque<Resource> stack = new ArrayDeque<>();
+        stack.push(indexResource);
+        while (!stack.isEmpty()) {
+            Resource resource = stack.pop();
+            resource.getChildren().forEach(stack::push);
+            if (!isEntry(resource)) {
+                continue;
+            }
+            ValueMap properties = resource.getValueMap();
+            index.computeIfAbsent(properties.get(BLUEPRINT_PATH_PROPERTY, String.class), path -> new ArrayList<>())
+                    .add(new IndexEntry(
+                            properties.get(LIVE_COPY_PATH_PROPERTY, String.class),
+                            properties.get(IS_DEEP_PROPERTY, false),
+                            new HashSet<>(Arrays.asList(properties.get(EXCLUSIONS_PROPERTY, new String[0]))),
+                            properties.get(AUTO_ROLLOUT_TRIGGER_PROPERTY, false)
+                    ));
+        }
+        return index;
+    }
+
+    private static boolean isEntry(Resource resource) {
+        return resource.getValueMap().containsKey(LIVE_COPY_PATH_PROPERTY);
+    }
+
+    private static Resource getOrCreateIndex(ResourceResolver resourceResolver) throws PersistenceException {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(JcrConstants.JCR_PRIMARYTYPE, FOLDER_TYPE);
+        return ResourceUtil.getOrCreateResource(resourceResolver, INDEX_PATH, properties, FOLDER_TYPE, false);
+    }
+
+    private static boolean isBuilt(Resource indexResource) {
+        return indexResource.getValueMap().containsKey(BUILT_PROPERTY);
+    }
+
+    private static void setBuilt(Resource indexResource) {
+        Optional.ofNullable(indexResource.adaptTo(ModifiableValueMap.class))
+                .ifPresent(properties -> properties.put(BUILT_PROPERTY, Calendar.getInstance()));
+    }
+
+    private static boolean hasAutoTrigger(LiveCopy liveCopy) {
+        return liveCopy.getRolloutConfigs().stream()
+                .map(RolloutConfig::getTrigger)
+                .anyMatch(trigger -> trigger == RolloutManager.Trigger.MODIFICATION);
+    }
+
+    private static Map<String, Object> unstructuredProperties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+        return properties;
+    }
+
+    private static String toEntryPath(String path) {
+        return INDEX_PATH + path;
+    }
+
+    private static class IndexEntry {
+        private final String liveCopyPath;
+        private final boolean isDeep;
+        private final Set<String> exclusions;
+        private final boolean autoRolloutTrigger;
+
+        IndexEntry(String liveCopyPath, boolean isDeep, Set<String> exclusions, boolean autoRolloutTrigger) {
+            this.liveCopyPath = liveCopyPath;
+            this.isDeep = isDeep;
+            this.exclusions = exclusions;
+            this.autoRolloutTrigger = autoRolloutTrigger;
+        }
+
+        LiveCopyRelationship toRelationship(String syncPath) {
+            return new LiveCopyRelationship(liveCopyPath, syncPath, liveCopyPath + syncPath, isDeep, exclusions,
+                    autoRolloutTrigger);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutAdmission;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutAdmissionService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import org.apache.commons.lang3.time.StopWatch;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implements the admission of rollouts with a fair semaphore, so the waiting rollouts are admitted in the order of
+ * arrival. On reconfiguration, the rollouts admitted before release their slots to the previous semaphore, so the new
+ * limit applies to the rollouts admitted after the change.
+ */
+@Component(service = RolloutAdmissionService.class)
+@Designate(ocd = RolloutAdmissionServiceImpl.Configuration.class)
+public class RolloutAdmissionServiceImpl implements RolloutAdmissionService {
+    private static final Logger LOG = LoggerFactory.getLogger(RolloutAdmissionServiceImpl.class);
+
+    @ObjectClassDefinition(name = "EToolbox Rollout Admission Service Configuration")
+    @interface Configuration {
+
+        @AttributeDefinition(
+                name = "Max concurrent rollouts",
+                description = "The maximum number of rollouts running at the same time. "
+                        + "Zero or a negative value means no limit")
+        int maxConcurrentRollouts() default 0;
+
+        @AttributeDefinition(
+                name = "Queue size",
+                description = "The maximum number of rollouts waiting for a running rollout to complete. "
+                        + "The rollouts over the queue size are rejected right away")
+        int queueSize() default 10;
+
+        @AttributeDefinition(
+                name = "Max wait",
+                description = "The maximum time in seconds a rollout waits in the queue before it is rejected")
+        long maxWait() default 60L;
+
+        @AttributeDefinition(
+                name = "Retry after",
+                description = "The time in seconds after which a rejected rollout can be requested again")
+        long retryAfter() default 30L;
+    }
+
+    @Reference
+    private RolloutMetrics rolloutMetrics;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private volatile Configuration config;
+    private volatile Semaphore slots;
+
+    @Activate
+    @Modified
+    private void activate(Configuration config) {
+        this.config = config;
+        slots = config.maxConcurrentRollouts() > 0 ? new Semaphore(config.maxConcurrentRollouts(), true) : null;
+        rolloutMetrics.registerGauge(RolloutMetrics.RUNNING_ROLLOUTS, running::get);
+        rolloutMetrics.registerGauge(RolloutMetrics.WAITING_ROLLOUTS, waiting::get);
+        LOG.debug("Rollout admission is configured, max concurrent rollouts: {}, queue size: {}",
+                config.maxConcurrentRollouts(), config.queueSize());
+    }
+
+    @Deactivate
+    private void deactivate() {
+        rolloutMetrics.unregisterGauge(RolloutMetrics.RUNNING_ROLLOUTS);
+        rolloutMetrics.unregisterGauge(RolloutMetrics.WAITING_ROLLOUTS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RolloutAdmission admit() {
+        Configuration currentConfig = config;
+        Semaphore currentSlots = slots;
+        if (currentSlots == null) {
+            return admitted(null);
+        }
+        StopWatch sw = StopWatch.createStarted();
+        try {
+            // Unlike tryAcquire(), the timed version respects the fairness, so the rollout doesn't overtake the queue
+            if (currentSlots.tryAcquire(0L, TimeUnit.SECONDS)) {
+                return admitted(currentSlots);
+            }
+            return await(currentSlots, currentConfig);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return rejected(waiting.get() + 1, currentConfig);
+        } finally {
+            rolloutMetrics.recordTime(RolloutMetrics.ROLLOUT_ADMISSION, sw.getNanoTime());
+        }
+    }
+
+    private RolloutAdmission await(Semaphore currentSlots, Configuration config) throws InterruptedException {
+        int position = waiting.incrementAndGet();
+        try {
+            if (position > config.queueSize()) {
+                return rejected(position, config);
+            }
+            LOG.debug("Rollout is queued, running rollouts: {}, queue position: {}", running.get(), position);
+            if (currentSlots.tryAcquire(Math.max(0L, config.maxWait()), TimeUnit.SECONDS)) {
+                return admitted(currentSlots);
+            }
+            return rejected(waiting.get(), config);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private RolloutAdmission admitted(Semaphore admittedSlots) {
+        running.incrementAndGet();
+        AtomicBoolean released = new AtomicBoolean();
+        return RolloutAdmission.admitted(() -> {
+            if (released.compareAndSet(false, true)) {
+                running.decrementAndGet();
+                if (admittedSlots != null) {
+                    admittedSlots.release();
+                }
+            }
+        });
+    }
+
+    private RolloutAdmission rejected(int position, Configuration config) {
+        rolloutMetrics.increment(RolloutMetrics.ROLLOUT_REJECTED);
+        LOG.warn("Rollout is rejected, running rollouts: {}, queue position: {}", running.get(), position);
+        return RolloutAdmission.rejected(position, Math.max(1L, config.retryAfter()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutJobInfo;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutJobTracker;
+import com.exadel.etoolbox.rolloutmanager.core.services.util.ResolverUtil;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.util.Text;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Stores the progress of rollout jobs under {@value #JOBS_PATH}. Each job is stored as a node holding the job
+ * state, and each processed target is stored as a child node of the job's 'statuses' node. The status nodes also
+ * serve as a checkpoint: the targets marked as rolled out or activated are skipped when the job is resumed.
+ */
+@Component(service = RolloutJobTracker.class)
+@Designate(ocd = RolloutJobTrackerImpl.Configuration.class)
+public class RolloutJobTrackerImpl implements RolloutJobTracker {
+    private static final Logger LOG = LoggerFactory.getLogger(RolloutJobTrackerImpl.class);
+
+    static final String JOBS_PATH = ResolverUtil.VAR_ROOT_PATH + "/jobs";
+
+    private static final String STATUSES_NODE = "statuses";
+    private static final String JOB_PROPERTIES_NODE = "jobProperties";
+    private static final String JOB_ID_PROPERTY = "jobId";
+    private static final String USER_ID_PROPERTY = "userId";
+    private static final String STATE_PROPERTY = "state";
+    private static final String STARTED_PROPERTY = "started";
+    private static final String FINISHED_PROPERTY = "finished";
+    private static final String TARGET_PROPERTY = "target";
+    private static final String SUCCESS_PROPERTY = "success";
+    private static final String ROLLED_OUT_PROPERTY = "rolledOut";
+    private static final String ACTIVATED_PROPERTY = "activated";
+
+    @ObjectClassDefinition(name = "EToolbox Rollout Job Tracker Configuration")
+    @interface Configuration {
+
+        @AttributeDefinition(
+                name = "Max job records",
+                description = "The number of the most recent rollout jobs which progress is kept in the repository")
+        int maxJobRecords() default 100;
+    }
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    private int maxJobRecords;
+
+    @Activate
+    private void activate(Configuration config) {
+        maxJobRecords = config.maxJobRecords();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void started(String jobId, String userId, Map<String, Object> jobProperties) {
+        try (ResourceResolver resourceResolver = ResolverUtil.getServiceResolver(resolverFactory)) {
+            Resource jobsResource = resourceResolver.getResource(JOBS_PATH);
+            if (jobsResource == null) {
+                LOG.warn("Rollout job tracking is not available, the path is missing: {}", JOBS_PATH);
+                return;
+            }
+            Resource jobResource = jobsResource.getChild(toNodeName(jobId));
+            if (jobResource == null) {
+                removeObsoleteRecords(jobsResource);
+                Map<String, Object> properties = new HashMap<>();
+                properties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+                properties.put(JOB_ID_PROPERTY, jobId);
+                properties.put(USER_ID_PROPERTY, userId);
+                properties.put(STARTED_PROPERTY, Calendar.getInstance());
+                jobResource = resourceResolver.create(jobsResource, toNodeName(jobId), properties);
+                resourceResolver.create(jobResource, STATUSES_NODE, unstructuredProperties());
+            }
+            if (jobResource.getChild(JOB_PROPERTIES_NODE) == null) {
+                Map<String, Object> properties = unstructuredProperties();
+                properties.putAll(jobProperties);
+                resourceResolver.create(jobResource, JOB_PROPERTIES_NODE, properties);
+            }
+            jobResource.adaptTo(ModifiableValueMap.class).put(STATE_PROPERTY, RolloutJobInfo.State.RUNNING.name());
+            resourceResolver.commit();
+        } catch (LoginException | PersistenceException e) {
+            LOG.error("Failed to register the start of the rollout job: {}", jobId, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void queued(String jobId) {
+        try (ResourceResolver resourceResolver = ResolverUtil.getServiceResolver(resolverFactory)) {
+            Optional.ofNullable(resourceResolver.getResource(getJobPath(jobId)))
+                    .map(resource -> resource.adaptTo(ModifiableValueMap.class))
+                    .ifPresent(properties -> {
+                        properties.put(STATE_PROPERTY, RolloutJobInfo.State.QUEUED.name());
+                        properties.remove(FINISHED_PROPERTY);
+                    });
+            resourceResolver.commit();
+        } catch (LoginException | PersistenceException e) {
+            LOG.error("Failed to register the resumption of the rollout job: {}", jobId, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void statusChanged(String jobId, RolloutStatus status) {
+        storeStatus(jobId, status, properties -> {
+            properties.put(SUCCESS_PROPERTY, status.isSuccess());
+            properties.put(ROLLED_OUT_PROPERTY, status.isSuccess());
+            // The target is rolled out anew, so it should be activated anew as well
+            properties.remove(ACTIVATED_PROPERTY);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void activationStatusChanged(String jobId, RolloutStatus status) {
+        storeStatus(jobId, status, properties -> {
+            if (status.isSuccess()) {
+                properties.put(ACTIVATED_PROPERTY, true);
+                // Clears the failure of an earlier activation attempt unless the rollout itself failed
+                properties.put(SUCCESS_PROPERTY, properties.get(ROLLED_OUT_PROPERTY, false));
+            } else {
+                properties.put(SUCCESS_PROPERTY, false);
+            }
+        });
+    }
+
+    private void storeStatus(String jobId, RolloutStatus status, Consumer<ModifiableValueMap> propertiesWriter) {
+        try (ResourceResolver resourceResolver = ResolverUtil.getServiceResolver(resolverFactory)) {
+            Resource statusesResource = resourceResolver.getResource(getJobPath(jobId) + "/" + STATUSES_NODE);
+            if (statusesResource == null) {
+                LOG.warn("Rollout job is not registered, status of the target {} is not stored", status.getTarget());
+                return;
+            }
+            String statusNodeName = toNodeName(status.getTarget());
+            Resource statusResource = statusesResource.getChild(statusNodeName);
+            if (statusResource == null) {
+                statusResource = resourceResolver.create(statusesResource, statusNodeName, unstructuredProperties());
+            }
+            ModifiableValueMap properties = statusResource.adaptTo(ModifiableValueMap.class);
+            properties.put(TARGET_PROPERTY, status.getTarget());
+            propertiesWriter.accept(properties);
+            resourceResolver.commit();
+        } catch (LoginException | PersistenceException e) {
+            LOG.error("Failed to store status of the target {}, rollout job: {}", status.getTarget(), jobId, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void finished(String jobId, RolloutJobInfo.State state) {
+        try (ResourceResolver resourceResolver = ResolverUtil.getServiceResolver(resolverFactory)) {
+            Optional.ofNullable(resourceResolver.getResource(getJobPath(jobId)))
+                    .map(resource -> resource.adaptTo(ModifiableValueMap.class))
+                    .ifPresent(properties -> {
+                        properties.put(STATE_PROPERTY, state.name());
+                        properties.put(FINISHED_PROPERTY, Calendar.getInstance());
+                    });
+            resourceResolver.commit();
+        } catch (LoginException | PersistenceException e) {
+            LOG.error("Failed to register the completion of the rollout job: {}", jobId, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<RolloutJobInfo> getJobInfo(String jobId) {
+        try (ResourceResolver resourceResolver = ResolverUtil.getServiceResolver(resolverFactory)) {
+            return Optional.ofNullable(resourceResolver.getResource(getJobPath(jobId)))
+                    .map(RolloutJobTrackerImpl::toJobInfo);
+        } catch (LoginException e) {
+            LOG.error("Failed to get progress of the rollout job: {}", jobId, e);
+        }
+        return Optional.empty();
+    }
+
+    private static RolloutJobInfo toJobInfo(Resource jobResource) {
+        ValueMap properties = jobResource.getValueMap();
+        RolloutJobInfo jobInfo = new RolloutJobInfo(
+                properties.get(JOB_ID_PROPERTY, String.class),
+                properties.get(USER_ID_PROPERTY, String.class),
+                RolloutJobInfo.State.valueOf(properties.get(STATE_PROPERTY, RolloutJobInfo.State.RUNNING.name()))
+        );
+        Optional.ofNullable(jobResource.getChild(STATUSES_NODE))
+                .map(Resource::getChildren)
+                .ifPresent(children -> children.forEach(child -> {
+                    ValueMap statusProperties = child.getValueMap();
+                    RolloutStatus status = new RolloutStatus(statusProperties.get(TARGET_PROPERTY, String.class));
+                    status.setSuccess(statusProperties.get(SUCCESS_PROPERTY, false));
+                    jobInfo.getStatuses().add(status);
+                    if (statusProperties.get(ROLLED_OUT_PROPERTY, false)) {
+                        jobInfo.getRolledOutTargets().add(status.getTarget());
+                    }
+                    if (statusProperties.get(ACTIVATED_PROPERTY, false)) {
+                        jobInfo.getActivatedTargets().add(status.getTarget());
+                    }
+                }));
+        Optional.ofNullable(jobResource.getChild(JOB_PROPERTIES_NODE))
+                .map(Resource::getValueMap)
+                .ifPresent(jobProperties -> jobProperties.forEach((name, value) -> {
+                    if (!JcrConstants.JCR_PRIMARYTYPE.equals(name)) {
+                        jobInfo.getJobProperties().put(name, value);
+                    }
+                }));
+        return jobInfo;
+    }
+
+    /**
+     * Removes the oldest records of the finished jobs, so that the number of records stays within the limit.
+     * The records of the queued and running jobs are kept, since their progress is still tracked and may be resumed
+     */
+    private void removeObsoleteRecords(Resource jobsResource) throws PersistenceException {
+        List<Resource> jobResources = StreamSupport.stream(jobsResource.getChildren().spliterator(), false)
+                .collect(Collectors.toList());
+        int obsoleteCount = jobResources.size() - maxJobRecords + 1;
+        if (obsoleteCount <= 0) {
+            return;
+        }
+        List<Resource> finishedJobResources = jobResources.stream()
+                .filter(RolloutJobTrackerImpl::isFinished)
+                .sorted(Comparator.comparing(resource -> resource.getValueMap().get(STARTED_PROPERTY, 0L)))
+                .limit(obsoleteCount)
+                .collect(Collectors.toList());
+        if (finishedJobResources.size() < obsoleteCount) {
+            LOG.warn("Rollout job records exceed the limit of {}, the records of unfinished jobs are kept",
+                    maxJobRecords);
+        }
+        for (Resource jobResource : finishedJobResources) {
+            LOG.debug("Removing obsolete rollout job record: {}", jobResource.getPath());
+            jobsResource.getResourceResolver().delete(jobResource);
+        }
+    }
+
+    private static boolean isFinished(Resource jobResource) {
+        String state = jobResource.getValueMap().get(STATE_PROPERTY, RolloutJobInfo.State.RUNNING.name());
+        return !RolloutJobInfo.State.RUNNING.name().equals(state) && !RolloutJobInfo.State.QUEUED.name().equals(state);
+    }
+
+    private static Map<String, Object> unstructuredProperties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+        return properties;
+    }
+
+    private static String getJobPath(String jobId) {
+        return JOBS_PATH + "/" + toNodeName(jobId);
+    }
+
+    private static String toNodeName(String value) {
+        return Text.escapeIllegalJcrChars(value);
+    }
+}
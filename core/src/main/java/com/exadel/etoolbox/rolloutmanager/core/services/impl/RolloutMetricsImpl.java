@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.MetricStatistics;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetricsMXBean;
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Implements the in-memory metrics registry of the rollout manager. The registry is registered as an MXBean via
+ * the JMX whiteboard, so the metrics can be collected by JMX tools without enabling debug logging. The durations are
+ * recorded in microseconds and reported in milliseconds.
+ */
+@Component(
+        service = {RolloutMetrics.class, RolloutMetricsMXBean.class},
+        property = "jmx.objectname=com.exadel.etoolbox.rolloutmanager:type=RolloutMetrics"
+)
+public class RolloutMetricsImpl implements RolloutMetrics, RolloutMetricsMXBean {
+    private static final Logger LOG = LoggerFactory.getLogger(RolloutMetricsImpl.class);
+
+    private static final double MICROS_IN_MILLI = 1000d;
+
+    private final Map<String, Histogram> timers = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordTime(String name, long durationNanos) {
+        timers.computeIfAbsent(name, key -> new Histogram()).update(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordValue(String name, long value) {
+        histograms.computeIfAbsent(name, key -> new Histogram()).update(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void increment(String name) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void unregisterGauge(String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, MetricStatistics> getTimers() {
+        return toStatistics(timers, MICROS_IN_MILLI);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, MetricStatistics> getHistograms() {
+        return toStatistics(histograms, 1d);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> result = new TreeMap<>();
+        counters.forEach((name, counter) -> result.put(name, counter.sum()));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> result = new TreeMap<>();
+        gauges.forEach((name, gauge) -> result.put(name, gauge.getAsLong()));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetMetrics() {
+        timers.clear();
+        histograms.clear();
+        counters.clear();
+        LOG.debug("Rollout manager metrics are reset");
+    }
+
+    private static Map<String, MetricStatistics> toStatistics(Map<String, Histogram> histograms, double unit) {
+        Map<String, MetricStatistics> result = new TreeMap<>();
+        histograms.forEach((name, histogram) -> result.put(name, histogram.getStatistics(unit)));
+        return result;
+    }
+}
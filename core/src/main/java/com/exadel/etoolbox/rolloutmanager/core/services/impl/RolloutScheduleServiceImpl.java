@@ -0,0 +1,160 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.exadel.etoolbox.rolloutmanager.core.jobs.RolloutJobConsumer;
+import com.exadel.etoolbox.rolloutmanager.core.models.ExecutionWindow;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutScheduleService;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.ScheduledJobInfo;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Implements the scheduling of rollouts with Sling scheduled jobs. The window of the longest site root matching a
+ * target path applies to the target. The number of scheduled rollouts running at the same time is limited by the
+ * Sling job queue of the {@link RolloutJobConsumer#SCHEDULED_TOPIC} topic.
+ */
+@Component(service = RolloutScheduleService.class)
+@Designate(ocd = RolloutScheduleServiceImpl.Configuration.class)
+public class RolloutScheduleServiceImpl implements RolloutScheduleService {
+    private static final Logger LOG = LoggerFactory.getLogger(RolloutScheduleServiceImpl.class);
+
+    private static final Pattern EXECUTION_WINDOW_PATTERN = Pattern.compile("^(/[^=]*?)/?=(\\d{2}:\\d{2})-(\\d{2}:\\d{2})$");
+
+    @ObjectClassDefinition(name = "EToolbox Rollout Schedule Service Configuration")
+    @interface Configuration {
+
+        @AttributeDefinition(
+                name = "Execution windows",
+                description = "The time of the day when the scheduled rollouts to the pages under the site root are "
+                        + "started, in the format <site root>=<HH:mm>-<HH:mm> of the instance time zone")
+        String[] executionWindows() default {"/content=22:00-06:00"};
+    }
+
+    @Reference
+    private JobManager jobManager;
+
+    Clock clock = Clock.systemDefaultZone();
+
+    private volatile List<ExecutionWindow> executionWindows;
+
+    @Activate
+    @Modified
+    private void activate(Configuration config) {
+        List<ExecutionWindow> windows = new ArrayList<>();
+        for (String value : config.executionWindows()) {
+            parseExecutionWindow(value).ifPresent(windows::add);
+        }
+        // The most specific site root is matched first
+        windows.sort(Comparator.comparingInt((ExecutionWindow window) -> window.getSiteRoot().length()).reversed());
+        executionWindows = windows;
+        LOG.debug("Rollout execution windows are configured: {}", windows);
+    }
+
+    @Override
+    public Optional<ExecutionWindow> getExecutionWindow(RolloutItem[] items) {
+        // The windows of different site roots are shared if they have the same hours
+        ExecutionWindow sharedWindow = null;
+        for (RolloutItem item : items) {
+            Optional<ExecutionWindow> window = executionWindows.stream()
+                    .filter(executionWindow -> executionWindow.includes(item.getTarget()))
+                    .findFirst();
+            if (!window.isPresent()) {
+                LOG.warn("No execution window is configured for the target: {}", item.getTarget());
+                return Optional.empty();
+            }
+            if (sharedWindow == null) {
+                sharedWindow = window.get();
+            } else if (!sharedWindow.hasSameHours(window.get())) {
+                LOG.warn("The targets belong to site roots with different execution windows: {}, {}",
+                        sharedWindow, window.get());
+                return Optional.empty();
+            }
+        }
+        return Optional.ofNullable(sharedWindow);
+    }
+
+    @Override
+    public boolean isOpen(ExecutionWindow window) {
+        return window.isOpen(LocalDateTime.now(clock));
+    }
+
+    @Override
+    public Optional<Calendar> schedule(ExecutionWindow window, Map<String, Object> jobProperties) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime start = window.getNextStart(now);
+        Calendar startTime = GregorianCalendar.from(start.atZone(clock.getZone()));
+        if (start.equals(now)) {
+            Job job = jobManager.addJob(RolloutJobConsumer.SCHEDULED_TOPIC, jobProperties);
+            if (job == null) {
+                LOG.error("Failed to add scheduled rollout job, topic: {}", RolloutJobConsumer.SCHEDULED_TOPIC);
+                return Optional.empty();
+            }
+            LOG.debug("Scheduled rollout job is added within the open execution window {}: {}", window, job.getId());
+            return Optional.of(startTime);
+        }
+        ScheduledJobInfo scheduledJob = jobManager.createJob(RolloutJobConsumer.SCHEDULED_TOPIC)
+                .properties(jobProperties)
+                .schedule()
+                .at(startTime.getTime())
+                .add();
+        if (scheduledJob == null) {
+            LOG.error("Failed to schedule rollout job, topic: {}", RolloutJobConsumer.SCHEDULED_TOPIC);
+            return Optional.empty();
+        }
+        LOG.debug("Rollout job is scheduled at {}, execution window: {}", start, window);
+        return Optional.of(startTime);
+    }
+
+    private static Optional<ExecutionWindow> parseExecutionWindow(String value) {
+        Matcher matcher = EXECUTION_WINDOW_PATTERN.matcher(value.trim());
+        if (!matcher.matches()) {
+            LOG.warn("Execution window is ignored, the format is invalid: {}", value);
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new ExecutionWindow(matcher.group(1),
+                    LocalTime.parse(matcher.group(2)), LocalTime.parse(matcher.group(3))));
+        } catch (DateTimeParseException e) {
+            LOG.warn("Execution window is ignored, the time is invalid: {}", value, e);
+            return Optional.empty();
+        }
+    }
+}
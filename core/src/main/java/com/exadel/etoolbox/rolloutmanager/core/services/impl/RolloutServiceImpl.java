@@ -0,0 +1,608 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.WCMException;
+import com.day.cq.wcm.msm.api.LiveRelationship;
+import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.day.cq.wcm.msm.api.RolloutManager;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutService;
+import com.exadel.etoolbox.rolloutmanager.core.services.util.PageFreshnessUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RangeIterator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Implements rollout of the {@link RolloutItem}s selected in the rollout dialog. The items are grouped by depth
+ * which defines a level of nesting for live relationships, and the items with a lower depth are rolled out first.
+ * <p>
+ * If parallel rollout is enabled, the items of the same depth are rolled out concurrently, since they belong to
+ * different live copies and don't depend on each other. Each item is then rolled out with its own clone of the
+ * given resource resolver, and the changes are committed by the worker once the item rollout is completed. The number
+ * of waiting items is bounded; if the queue is full or the pool is not available, the item is rolled out the same way
+ * by the requesting thread.
+ * <p>
+ * If batch rollout is enabled, the items of the same depth and master are rolled out with a single
+ * {@link RolloutManager#rollout(RolloutManager.RolloutParams)} call, so that the master page and its rollout configs
+ * are loaded once for all the targets. If the batch call fails, the items are rolled out one by one, so that
+ * the failure is mapped to the particular targets.
+ * <p>
+ * If chunked deep rollout is enabled, a rollout including subpages walks the master subtree and rolls out the live
+ * relationships page by page, committing the changes after each chunk of pages. The transient space of the session
+ * stays bounded, and a failure discards the changes of the current chunk only. Pages without a live relationship
+ * to the target, e.g. excluded from the live copy, are skipped along with their subpages.
+ */
+@Component(service = RolloutService.class)
+@Designate(ocd = RolloutServiceImpl.Configuration.class)
+public class RolloutServiceImpl implements RolloutService {
+    private static final Logger LOG = LoggerFactory.getLogger(RolloutServiceImpl.class);
+
+    private static final String THREAD_NAME_PATTERN = "etoolbox-rollout-worker-%d";
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    @ObjectClassDefinition(name = "EToolbox Rollout Service Configuration")
+    @interface Configuration {
+
+        @AttributeDefinition(
+                name = "Parallel rollout",
+                description = "Roll out the targets of the same depth level in parallel")
+        boolean parallelRollout() default false;
+
+        @AttributeDefinition(
+                name = "Pool size",
+                description = "The number of Threads rolling out the targets in parallel")
+        int poolSize() default 4;
+
+        @AttributeDefinition(
+                name = "Queue capacity",
+                description = "The number of rollout tasks waiting for a free Thread. If the queue is full, "
+                        + "the task is executed by the requesting Thread")
+        int queueCapacity() default 100;
+
+        @AttributeDefinition(
+                name = "Batch rollout",
+                description = "Roll out the targets of the same master and depth level with a single rollout call. "
+                        + "If the call fails, the targets are rolled out one by one")
+        boolean batchRollout() default false;
+
+        @AttributeDefinition(
+                name = "Chunked deep rollout",
+                description = "Roll out the subpages page by page and commit the changes after each chunk of pages "
+                        + "when the rollout includes subpages")
+        boolean chunkedDeepRollout() default false;
+
+        @AttributeDefinition(
+                name = "Chunk size",
+                description = "The number of pages rolled out before the changes are committed, "
+                        + "used if chunked deep rollout is enabled")
+        int chunkSize() default 100;
+
+        @AttributeDefinition(
+                name = "Incremental rollout",
+                description = "Skip the targets rolled out after the last modification of the master page. "
+                        + "For a rollout including subpages, each subpage is checked")
+        boolean incrementalRollout() default false;
+    }
+
+    @Reference
+    private RolloutManager rolloutManager;
+
+    @Reference
+    private LiveRelationshipManager liveRelationshipManager;
+
+    @Reference
+    private RolloutMetrics rolloutMetrics;
+
+    private volatile ThreadPoolExecutor executor;
+
+    private int queueCapacity;
+
+    private volatile boolean batchRollout;
+
+    private volatile boolean chunkedDeepRollout;
+
+    private volatile int chunkSize;
+
+    private volatile boolean incrementalRollout;
+
+    @Activate
+    @Modified
+    private void activate(Configuration config) {
+        batchRollout = config.batchRollout();
+        chunkedDeepRollout = config.chunkedDeepRollout();
+        chunkSize = Math.max(1, config.chunkSize());
+        incrementalRollout = config.incrementalRollout();
+        ThreadPoolExecutor current = executor;
+        if (!config.parallelRollout()) {
+            executor = null;
+            shutdown(current);
+        } else if (current == null || queueCapacity != config.queueCapacity()) {
+            // The queue capacity can't be changed on the fly, the queued tasks are completed by the previous executor
+            executor = createExecutor(config);
+            queueCapacity = config.queueCapacity();
+            shutdown(current);
+        } else if (config.poolSize() > current.getMaximumPoolSize()) {
+            current.setMaximumPoolSize(config.poolSize());
+            current.setCorePoolSize(config.poolSize());
+        } else {
+            current.setCorePoolSize(config.poolSize());
+            current.setMaximumPoolSize(config.poolSize());
+        }
+        LOG.debug("Parallel rollout: {}, pool size: {}, queue capacity: {}",
+                config.parallelRollout(), config.poolSize(), config.queueCapacity());
+    }
+
+    @Deactivate
+    private void deactivate() {
+        shutdown(executor);
+        executor = null;
+    }
+
+    private static ThreadPoolExecutor createExecutor(Configuration config) {
+        int poolSize = Math.max(1, config.poolSize());
+        return new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.queueCapacity())),
+                new BasicThreadFactory.Builder().namingPattern(THREAD_NAME_PATTERN).daemon(true).build(),
+                RolloutServiceImpl::runInCaller
+        );
+    }
+
+    private static void runInCaller(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Rollout executor is shut down");
+        }
+        LOG.debug("Rollout queue is full, the task is executed by the requesting thread");
+        task.run();
+    }
+
+    private static void shutdown(ThreadPoolExecutor executor) {
+        if (executor != null) {
+            // The running and queued tasks are completed, the requests waiting for them are not failed
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<RolloutStatus> rolloutItems(RolloutItem[] items, ResourceResolver resourceResolver, boolean isDeep) {
+        return rolloutItems(items, resourceResolver, isDeep, status -> {
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<RolloutStatus> rolloutItems(RolloutItem[] items,
+                                            ResourceResolver resourceResolver,
+                                            boolean isDeep,
+                                            Consumer<RolloutStatus> statusListener) {
+        PageManager pageManager = resourceResolver.adaptTo(PageManager.class);
+        if (pageManager == null) {
+            LOG.warn("Page Manager is null, rollout failed");
+            return Arrays.stream(items)
+                    .filter(item -> StringUtils.isNotBlank(item.getTarget()))
+                    .map(item -> failedStatus(item.getTarget()))
+                    .peek(statusListener)
+                    .collect(Collectors.toList());
+        }
+        ThreadPoolExecutor currentExecutor = executor;
+        // The live copies rolled out by this call are changed masters for the nested levels
+        Set<String> rolledOutTargets = ConcurrentHashMap.newKeySet();
+        List<RolloutStatus> statuses = Arrays.stream(items)
+                .collect(Collectors.groupingBy(RolloutItem::getDepth))
+                .entrySet()
+                .stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(Map.Entry::getValue)
+                .flatMap(sortedByDepthItems -> rolloutSortedByDepthItems(sortedByDepthItems, resourceResolver,
+                        pageManager, isDeep, currentExecutor, rolledOutTargets))
+                .peek(status -> {
+                    if (status.isSuccess() && !status.isSkipped()) {
+                        rolledOutTargets.add(status.getTarget());
+                    }
+                })
+                .peek(statusListener)
+                .collect(Collectors.toList());
+        if (currentExecutor != null) {
+            // The changes are committed by the workers, the caller's resolver should see them
+            resourceResolver.refresh();
+        }
+        return statuses;
+    }
+
+    private Stream<RolloutStatus> rolloutSortedByDepthItems(List<RolloutItem> items,
+                                                            ResourceResolver resourceResolver,
+                                                            PageManager pageManager,
+                                                            boolean isDeep,
+                                                            ThreadPoolExecutor executor,
+                                                            Set<String> rolledOutTargets) {
+        List<RolloutItem> filteredItems = items.stream()
+                .filter(item -> !skipAutoTriggered(item))
+                .filter(item -> StringUtils.isNotBlank(item.getTarget()))
+                .collect(Collectors.toList());
+        // The chunked deep rollout checks each page as it goes
+        Map<Boolean, List<RolloutItem>> upToDateItems = filteredItems.stream()
+                .collect(Collectors.partitioningBy(item -> incrementalRollout
+                        && !(isDeep && chunkedDeepRollout)
+                        && !rolledOutTargets.contains(item.getMaster())
+                        && isUpToDate(item, pageManager, isDeep)));
+        Stream<RolloutStatus> skippedStatuses = upToDateItems.get(true).stream()
+                .map(item -> skippedStatus(item.getTarget()));
+
+        List<List<RolloutItem>> batches = toBatches(upToDateItems.get(false), isDeep);
+        if (executor == null) {
+            return Stream.concat(skippedStatuses,
+                    batches.stream().flatMap(batch -> rolloutBatch(batch, pageManager, isDeep).stream()));
+        }
+        return Stream.concat(skippedStatuses, batches.stream()
+                .map(batch -> submit(batch, resourceResolver, isDeep, executor))
+                .collect(Collectors.toList())
+                .stream()
+                .map(CompletableFuture::join)
+                .flatMap(List::stream));
+    }
+
+    /**
+     * Submits the batch to the pool. If the pool is shut down, e.g. while the component is reconfigured, the batch is
+     * rolled out by the requesting thread, so the request doesn't fail
+     */
+    private CompletableFuture<List<RolloutStatus>> submit(List<RolloutItem> batch,
+                                                          ResourceResolver resourceResolver,
+                                                          boolean isDeep,
+                                                          ThreadPoolExecutor executor) {
+        try {
+            return CompletableFuture.supplyAsync(() -> rolloutInWorker(batch, resourceResolver, isDeep), executor);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Rollout task is rejected, the targets are rolled out by the requesting thread: {}",
+                    getTargets(batch));
+            return CompletableFuture.completedFuture(rolloutInWorker(batch, resourceResolver, isDeep));
+        }
+    }
+
+    /**
+     * Checks if the target is rolled out after the last modification of the master page and, for a deep rollout,
+     * of each subpage. The subpages removed from the master, the ones added to it or excluded from the live copy are
+     * considered as changes
+     */
+    private static boolean isUpToDate(RolloutItem item, PageManager pageManager, boolean isDeep) {
+        Page masterPage = pageManager.getPage(item.getMaster());
+        if (masterPage == null) {
+            return false;
+        }
+        Deque<Page> pages = new ArrayDeque<>();
+        pages.offer(masterPage);
+        while (!pages.isEmpty()) {
+            Page page = pages.poll();
+            Page targetPage = pageManager.getPage(item.getTarget() + StringUtils.removeStart(page.getPath(), masterPage.getPath()));
+            if (!PageFreshnessUtil.isRolledOut(page, targetPage)) {
+                return false;
+            }
+            if (!isDeep) {
+                break;
+            }
+            for (Iterator<Page> targetChildren = targetPage.listChildren(); targetChildren.hasNext(); ) {
+                Page targetChild = targetChildren.next();
+                if (!page.hasChild(targetChild.getName()) && PageFreshnessUtil.isLiveCopyPage(targetChild)) {
+                    return false;
+                }
+            }
+            page.listChildren().forEachRemaining(pages::offer);
+        }
+        LOG.debug("Item rollout skipped, the target is up to date, master: {}, target: {}", item.getMaster(), item.getTarget());
+        return true;
+    }
+
+    private RolloutStatus skippedStatus(String targetPath) {
+        rolloutMetrics.increment(RolloutMetrics.TARGET_ROLLOUT_SKIPPED);
+        RolloutStatus status = new RolloutStatus(targetPath);
+        status.setSuccess(true);
+        status.setSkipped(true);
+        return status;
+    }
+
+    /**
+     * Splits the items into batches rolled out together. Without batch rollout each item is a separate batch, as well
+     * as for a chunked deep rollout, which walks the subtree of each target separately
+     */
+    private List<List<RolloutItem>> toBatches(List<RolloutItem> items, boolean isDeep) {
+        if (!batchRollout || (isDeep && chunkedDeepRollout)) {
+            return items.stream().map(Collections::singletonList).collect(Collectors.toList());
+        }
+        return new ArrayList<>(items.stream()
+                .collect(Collectors.groupingBy(item -> StringUtils.defaultString(item.getMaster()),
+                        LinkedHashMap::new,
+                        Collectors.toList()))
+                .values());
+    }
+
+    private List<RolloutStatus> rolloutInWorker(List<RolloutItem> batch, ResourceResolver resourceResolver, boolean isDeep) {
+        try (ResourceResolver workerResolver = resourceResolver.clone(null)) {
+            PageManager pageManager = workerResolver.adaptTo(PageManager.class);
+            if (pageManager == null) {
+                LOG.warn("Page Manager is null, rollout failed, targets: {}", getTargets(batch));
+                return failedStatuses(batch);
+            }
+            List<RolloutStatus> statuses = rolloutBatch(batch, pageManager, isDeep);
+            if (statuses.stream().anyMatch(RolloutStatus::isSuccess)) {
+                commit(workerResolver, statuses);
+            }
+            return statuses;
+        } catch (LoginException e) {
+            LOG.error("Failed to clone resource resolver, rollout failed, targets: {}", getTargets(batch), e);
+        }
+        return failedStatuses(batch);
+    }
+
+    private static void commit(ResourceResolver resourceResolver, List<RolloutStatus> statuses) {
+        if (!resourceResolver.hasChanges()) {
+            return;
+        }
+        try {
+            resourceResolver.commit();
+        } catch (PersistenceException e) {
+            statuses.forEach(status -> status.setSuccess(false));
+            LOG.error("Failed to commit rollout changes, targets: {}",
+                    statuses.stream().map(RolloutStatus::getTarget).collect(Collectors.toList()), e);
+            resourceResolver.revert();
+        }
+    }
+
+    private List<RolloutStatus> rolloutBatch(List<RolloutItem> batch, PageManager pageManager, boolean isDeep) {
+        if (batch.size() == 1) {
+            return Collections.singletonList(rollout(batch.get(0), pageManager, isDeep));
+        }
+        String masterPath = batch.get(0).getMaster();
+        Page masterPage = pageManager.getPage(masterPath);
+        if (masterPage != null) {
+            StopWatch sw = StopWatch.createStarted();
+            String[] targets = getTargets(batch).toArray(new String[0]);
+            try {
+                LOG.debug("Batch rollout started, master: {}, targets: {}", masterPath, targets.length);
+                rolloutManager.rollout(toRolloutParams(masterPage, isDeep, targets));
+                rolloutMetrics.recordTime(RolloutMetrics.BATCH_ROLLOUT, sw.getNanoTime());
+                if (!isDeep) {
+                    long targetNanos = sw.getNanoTime() / targets.length;
+                    for (int i = 0; i < targets.length; i++) {
+                        rolloutMetrics.recordTime(RolloutMetrics.PAGE_ROLLOUT, targetNanos);
+                    }
+                }
+                LOG.debug("Batch rollout completed, master: {}, targets: {}", masterPath, targets.length);
+                return batch.stream()
+                        .map(item -> succeededStatus(item.getTarget(), sw.getTime(TimeUnit.MILLISECONDS)))
+                        .collect(Collectors.toList());
+            } catch (WCMException e) {
+                LOG.warn("Batch rollout failed, the targets are rolled out one by one, master: {}", masterPath, e);
+                discardUnsavedChanges(masterPage);
+            }
+        }
+        rolloutMetrics.increment(RolloutMetrics.BATCH_ROLLOUT_FALLBACK);
+        return batch.stream()
+                .map(item -> rollout(item, pageManager, isDeep))
+                .collect(Collectors.toList());
+    }
+
+    private RolloutStatus succeededStatus(String targetPath, long duration) {
+        rolloutMetrics.increment(RolloutMetrics.TARGET_ROLLOUT_SUCCEEDED);
+        RolloutStatus status = new RolloutStatus(targetPath);
+        status.setSuccess(true);
+        status.setDuration(duration);
+        return status;
+    }
+
+    private static List<RolloutStatus> failedStatuses(List<RolloutItem> batch) {
+        return batch.stream()
+                .map(item -> failedStatus(item.getTarget()))
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> getTargets(List<RolloutItem> batch) {
+        return batch.stream()
+                .map(RolloutItem::getTarget)
+                .collect(Collectors.toList());
+    }
+
+    private boolean skipAutoTriggered(RolloutItem item) {
+        boolean skipAutoTriggered = item.getDepth() != 0 && item.isAutoRolloutTrigger();
+        if (skipAutoTriggered) {
+            LOG.debug("Item rollout skipped due to auto trigger, master: {}, target: {}", item.getMaster(), item.getTarget());
+        }
+        return skipAutoTriggered;
+    }
+
+    private RolloutStatus rollout(RolloutItem targetItem, PageManager pageManager, boolean isDeep) {
+        StopWatch sw = StopWatch.createStarted();
+        RolloutStatus status = rolloutTarget(targetItem, pageManager, isDeep);
+        rolloutMetrics.recordTime(RolloutMetrics.TARGET_ROLLOUT, sw.getNanoTime());
+        if (!isDeep) {
+            // The number of pages of a deep rollout is not known, so only the single page rollouts are measured
+            rolloutMetrics.recordTime(RolloutMetrics.PAGE_ROLLOUT, sw.getNanoTime());
+        }
+        status.setDuration(sw.getTime(TimeUnit.MILLISECONDS));
+        rolloutMetrics.increment(status.isSuccess()
+                ? RolloutMetrics.TARGET_ROLLOUT_SUCCEEDED
+                : RolloutMetrics.TARGET_ROLLOUT_FAILED);
+        return status;
+    }
+
+    private RolloutStatus rolloutTarget(RolloutItem targetItem, PageManager pageManager, boolean isDeep) {
+        String targetPath = targetItem.getTarget();
+        RolloutStatus status = new RolloutStatus(targetPath);
+
+        String masterPath = targetItem.getMaster();
+        Optional<Page> masterPage = Optional.ofNullable(pageManager.getPage(masterPath));
+        if (!masterPage.isPresent()) {
+            status.setSuccess(false);
+            LOG.warn("Rollout failed - master page is null, master page path: {}", masterPath);
+            return status;
+        }
+
+        if (isDeep && chunkedDeepRollout) {
+            status.setSuccess(rolloutInChunks(masterPage.get(), targetPath, status));
+            return status;
+        }
+
+        RolloutManager.RolloutParams params = toRolloutParams(masterPage.get(), isDeep, targetPath);
+        try {
+            LOG.debug("Item rollout started, master: {}, target: {}", masterPath, targetPath);
+            rolloutManager.rollout(params);
+            status.setSuccess(true);
+            LOG.debug("Item rollout completed, master: {}, target: {}", masterPath, targetPath);
+        } catch (WCMException e) {
+            status.setSuccess(false);
+            String message = String.format("Item rollout failed, master: %s, target: %s", masterPath, targetPath);
+            LOG.error(message, e);
+            discardUnsavedChanges(masterPage.get());
+        }
+        return status;
+    }
+
+    private boolean rolloutInChunks(Page masterPage, String targetPath, RolloutStatus status) {
+        Resource masterResource = masterPage.adaptTo(Resource.class);
+        if (masterResource == null) {
+            LOG.warn("Chunked rollout failed - master resource is null, master page path: {}", masterPage.getPath());
+            return false;
+        }
+        ResourceResolver resourceResolver = masterResource.getResourceResolver();
+        Deque<Page> pages = new ArrayDeque<>();
+        pages.push(masterPage);
+        int chunkPages = 0;
+        int rolledOutPages = 0;
+        int upToDatePages = 0;
+        try {
+            while (!pages.isEmpty()) {
+                Page page = pages.pop();
+                String pageTargetPath = targetPath + StringUtils.removeStart(page.getPath(), masterPage.getPath());
+                Optional<LiveRelationship> relationship = getLiveRelationship(page, pageTargetPath);
+                if (!relationship.isPresent()) {
+                    LOG.debug("Page rollout skipped, no live relationship, master: {}, target: {}", page.getPath(), pageTargetPath);
+                    continue;
+                }
+                if (incrementalRollout && PageFreshnessUtil.isRolledOut(page, page.getPageManager().getPage(pageTargetPath))) {
+                    LOG.debug("Page rollout skipped, the target is up to date, master: {}, target: {}", page.getPath(), pageTargetPath);
+                    upToDatePages++;
+                    page.listChildren().forEachRemaining(pages::push);
+                    continue;
+                }
+                StopWatch sw = StopWatch.createStarted();
+                rolloutManager.rollout(resourceResolver, relationship.get(), false, false);
+                rolloutMetrics.recordTime(RolloutMetrics.PAGE_ROLLOUT, sw.getNanoTime());
+                rolledOutPages++;
+                if (++chunkPages >= chunkSize) {
+                    resourceResolver.commit();
+                    chunkPages = 0;
+                }
+                page.listChildren().forEachRemaining(pages::push);
+            }
+            if (chunkPages > 0) {
+                resourceResolver.commit();
+            }
+            LOG.debug("Chunked rollout completed, master: {}, target: {}, pages: {}, up to date pages: {}",
+                    masterPage.getPath(), targetPath, rolledOutPages, upToDatePages);
+            status.setSkipped(rolledOutPages == 0 && upToDatePages > 0);
+            return true;
+        } catch (WCMException | PersistenceException e) {
+            // The chunks committed earlier are kept
+            LOG.error("Chunked rollout failed, master: {}, target: {}, pages rolled out: {}",
+                    masterPage.getPath(), targetPath, rolledOutPages - chunkPages, e);
+            resourceResolver.revert();
+        }
+        return false;
+    }
+
+    private Optional<LiveRelationship> getLiveRelationship(Page page, String targetPath) throws WCMException {
+        Resource resource = page.adaptTo(Resource.class);
+        if (resource == null) {
+            return Optional.empty();
+        }
+        RangeIterator relationships = liveRelationshipManager.getLiveRelationships(resource, targetPath, null);
+        while (relationships.hasNext()) {
+            LiveRelationship relationship = (LiveRelationship) relationships.next();
+            if (targetPath.equals(relationship.getTargetPath())) {
+                return Optional.of(relationship);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static RolloutStatus failedStatus(String targetPath) {
+        RolloutStatus status = new RolloutStatus(targetPath);
+        status.setSuccess(false);
+        return status;
+    }
+
+    private static void discardUnsavedChanges(Page masterPage) {
+        Optional.of(masterPage)
+                .map(page -> page.adaptTo(Resource.class))
+                .map(Resource::getResourceResolver)
+                .ifPresent(ResourceResolver::revert);
+    }
+
+    private RolloutManager.RolloutParams toRolloutParams(Page masterPage, boolean isDeep, String... targetPaths) {
+        RolloutManager.RolloutParams params = new RolloutManager.RolloutParams();
+        params.master = masterPage;
+        params.targets = targetPaths;
+        params.isDeep = isDeep;
+        params.trigger = RolloutManager.Trigger.ROLLOUT;
+        return params;
+    }
+}
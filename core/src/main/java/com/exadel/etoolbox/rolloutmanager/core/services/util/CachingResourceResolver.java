@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.util;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ResourceResolverWrapper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Wraps a {@link ResourceResolver} and memoizes the resources and their value maps by path, including the absent
+ * ones. Intended for a single request which reads the same paths repeatedly, e.g. the parents shared by sibling live
+ * copies. The resolver is not thread-safe, and changes made after a path is read are not visible through it.
+ */
+public class CachingResourceResolver extends ResourceResolverWrapper {
+    private final Map<String, Optional<Resource>> resources = new HashMap<>();
+    private final Map<String, ValueMap> valueMaps = new HashMap<>();
+
+    private int hitCount;
+    private int missCount;
+
+    public CachingResourceResolver(ResourceResolver resourceResolver) {
+        super(resourceResolver);
+    }
+
+    @Override
+    public Resource getResource(String path) {
+        Optional<Resource> resource = resources.get(path);
+        if (resource != null) {
+            hitCount++;
+            return resource.orElse(null);
+        }
+        missCount++;
+        resource = Optional.ofNullable(super.getResource(path));
+        resources.put(path, resource);
+        return resource.orElse(null);
+    }
+
+    /**
+     * Checks if the resource with the given path exists
+     * @param path - path of the resource
+     * @return true if the resource exists and is readable
+     */
+    public boolean exists(String path) {
+        return getResource(path) != null;
+    }
+
+    /**
+     * Gets the properties of the resource with the given path
+     * @param path - path of the resource
+     * @return {@link ValueMap} of the resource, or an empty value map if the resource does not exist
+     */
+    public ValueMap getValueMap(String path) {
+        ValueMap valueMap = valueMaps.get(path);
+        if (valueMap == null) {
+            valueMap = Optional.ofNullable(getResource(path))
+                    .map(Resource::getValueMap)
+                    .orElse(ValueMap.EMPTY);
+            valueMaps.put(path, valueMap);
+        }
+        return valueMap;
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+}
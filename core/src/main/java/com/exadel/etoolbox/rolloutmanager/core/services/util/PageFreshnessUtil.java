@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.util;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.msm.api.MSMNameConstants;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+
+import java.util.Calendar;
+import java.util.Optional;
+
+/**
+ * Contains common methods for checking if a page has changed since it was rolled out or activated, used for skipping
+ * the rollout and the replication of the pages which are up to date. A missing date is considered as a change.
+ */
+public class PageFreshnessUtil {
+    private static final String LAST_REPLICATED_PROPERTY = "cq:lastReplicated";
+    private static final String LAST_REPLICATION_ACTION_PROPERTY = "cq:lastReplicationAction";
+    private static final String ACTIVATE_REPLICATION_ACTION = "Activate";
+    private static final String MIXIN_TYPES_PROPERTY = "jcr:mixinTypes";
+
+    private PageFreshnessUtil() {
+    }
+
+    /**
+     * Checks if the live copy page is rolled out after the last modification of its master page. If the master page
+     * is a live copy itself, its own rollout is considered as a modification
+     * @param masterPage - the master {@link Page}
+     * @param targetPage - the live copy {@link Page}, may be null if it doesn't exist yet
+     * @return true, if the rollout of the master page to the target page would change nothing
+     */
+    public static boolean isRolledOut(Page masterPage, Page targetPage) {
+        if (targetPage == null) {
+            return false;
+        }
+        Calendar lastRolledOut = targetPage.getProperties().get(MSMNameConstants.PN_LAST_ROLLEDOUT, Calendar.class);
+        Calendar masterLastRolledOut = masterPage.getProperties().get(MSMNameConstants.PN_LAST_ROLLEDOUT, Calendar.class);
+        return isNotBefore(lastRolledOut, masterPage.getLastModified())
+                && (masterLastRolledOut == null || isNotBefore(lastRolledOut, masterLastRolledOut));
+    }
+
+    /**
+     * Checks if the page is activated after its last modification and rollout
+     * @param page - the {@link Page} to check
+     * @return true, if the activation of the page would publish nothing new
+     */
+    public static boolean isActivated(Page page) {
+        ValueMap properties = page.getProperties();
+        if (!ACTIVATE_REPLICATION_ACTION.equals(properties.get(LAST_REPLICATION_ACTION_PROPERTY, String.class))) {
+            return false;
+        }
+        Calendar lastReplicated = properties.get(LAST_REPLICATED_PROPERTY, Calendar.class);
+        Calendar lastRolledOut = properties.get(MSMNameConstants.PN_LAST_ROLLEDOUT, Calendar.class);
+        return isNotBefore(lastReplicated, page.getLastModified())
+                && (lastRolledOut == null || isNotBefore(lastReplicated, lastRolledOut));
+    }
+
+    /**
+     * Checks if the page is a live copy of a master page, as opposed to a page created in the live copy
+     * @param page - the {@link Page} to check
+     * @return true, if the content of the page has the live relationship mixin
+     */
+    public static boolean isLiveCopyPage(Page page) {
+        String[] mixinTypes = Optional.ofNullable(page.getContentResource())
+                .map(Resource::getValueMap)
+                .map(properties -> properties.get(MIXIN_TYPES_PROPERTY, String[].class))
+                .orElse(ArrayUtils.EMPTY_STRING_ARRAY);
+        return ArrayUtils.contains(mixinTypes, MSMNameConstants.NT_LIVE_RELATIONSHIP);
+    }
+
+    private static boolean isNotBefore(Calendar date, Calendar other) {
+        return date != null && other != null && !date.before(other);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+
+import java.util.Collections;
+
+/**
+ * Contains common methods for obtaining resource resolvers of the rollout manager service user.
+ */
+public class ResolverUtil {
+    /**
+     * The name of the sub-service mapped to the rollout manager service user
+     */
+    public static final String SUBSERVICE_NAME = "rollout-manager-service";
+
+    /**
+     * The root path of the data stored by the rollout manager
+     */
+    public static final String VAR_ROOT_PATH = "/var/etoolbox/rollout-manager";
+
+    private ResolverUtil() {
+    }
+
+    /**
+     * Gets a new {@link ResourceResolver} of the rollout manager service user. The resolver must be closed by the caller.
+     *
+     * @param resolverFactory - {@link ResourceResolverFactory}
+     * @return {@link ResourceResolver} of the service user
+     * @throws LoginException if the service user is not available
+     */
+    public static ResourceResolver getServiceResolver(ResourceResolverFactory resolverFactory) throws LoginException {
+        return resolverFactory.getServiceResourceResolver(
+                Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE_NAME));
+    }
+
+    /**
+     * Gets a new {@link ResourceResolver} of the given user, impersonated by the rollout manager service user, so that
+     * the work done on behalf of the user is limited by the user's own permissions. The service user must be allowed
+     * to impersonate the user. The resolver must be closed by the caller.
+     *
+     * @param resolverFactory - {@link ResourceResolverFactory}
+     * @param userId - the id of the impersonated user
+     * @return {@link ResourceResolver} of the impersonated user
+     * @throws LoginException if the user id is blank, or the service user is not available or can't impersonate the user
+     */
+    public static ResourceResolver getImpersonatedResolver(ResourceResolverFactory resolverFactory, String userId)
+            throws LoginException {
+        if (StringUtils.isBlank(userId)) {
+            throw new LoginException("User id is blank, the user can't be impersonated");
+        }
+        try (ResourceResolver serviceResolver = getServiceResolver(resolverFactory)) {
+            return serviceResolver.clone(
+                    Collections.<String, Object>singletonMap(ResourceResolverFactory.USER_IMPERSONATION, userId));
+        }
+    }
+}
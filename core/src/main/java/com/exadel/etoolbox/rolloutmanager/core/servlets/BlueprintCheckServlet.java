@@ -17,34 +17,58 @@ package com.exadel.etoolbox.rolloutmanager.core.servlets;
 import com.day.cq.wcm.api.WCMException;
 import com.day.cq.wcm.msm.api.LiveRelationship;
 import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.exadel.etoolbox.rolloutmanager.core.models.LiveCopyRelationship;
+import com.exadel.etoolbox.rolloutmanager.core.services.BlueprintCheckCache;
 import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipCheckerService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipIndexService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import com.exadel.etoolbox.rolloutmanager.core.services.util.CachingResourceResolver;
 import com.exadel.etoolbox.rolloutmanager.core.servlets.util.ServletUtil;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestParameter;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.RangeIterator;
 import javax.json.Json;
+import javax.json.JsonObjectBuilder;
 import javax.servlet.Servlet;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Checks if the given resource has live relationships eligible for synchronization and thus can be rolled out.
  * The 'Rollout' button is displayed in the Sites toolbar based on this condition. The actual check is done using
- * {@link RelationshipCheckerService}
+ * {@link RelationshipCheckerService} with the user's resource resolver, the results are cached per user by
+ * {@link BlueprintCheckCache}. The live relationships are
+ * read from {@link RelationshipIndexService} if the index is enabled and built
+ * <p>
+ * Several pages can be checked in one request with the multi-value 'paths' parameter. The response then contains
+ * a json object mapping each path to the check result. The pages of one request share the resources read during
+ * the checks, and the paths exceeding the configured maximum are left out of the response.
  */
 @Component(service = Servlet.class)
 @SlingServletResourceTypes(
@@ -52,23 +76,70 @@ import java.util.concurrent.TimeUnit;
         methods = HttpConstants.METHOD_POST
 )
 @ServiceDescription("The servlet for checking if page is blueprint")
+@Designate(ocd = BlueprintCheckServlet.Configuration.class)
 public class BlueprintCheckServlet extends SlingAllMethodsServlet {
     private static final Logger LOG = LoggerFactory.getLogger(BlueprintCheckServlet.class);
 
     private static final String PATH_REQUEST_PARAM = "path";
+    private static final String PATHS_REQUEST_PARAM = "paths";
     private static final String IS_AVAILABLE_FOR_ROLLOUT_PARAM = "isAvailableForRollout";
 
+    private static final int DEFAULT_MAX_BULK_PATHS = 100;
+
+    @ObjectClassDefinition(name = "EToolbox Blueprint Check Servlet Configuration")
+    @interface Configuration {
+
+        @AttributeDefinition(
+                name = "Max paths",
+                description = "The maximum number of pages checked in one bulk request. The exceeding paths are "
+                        + "left out of the response")
+        int maxBulkPaths() default DEFAULT_MAX_BULK_PATHS;
+    }
+
     @Reference
     private transient LiveRelationshipManager liveRelationshipManager;
 
     @Reference
     private transient RelationshipCheckerService relationshipCheckerService;
 
+    @Reference
+    private transient BlueprintCheckCache blueprintCheckCache;
+
+    @Reference
+    private transient RelationshipIndexService relationshipIndexService;
+
+    @Reference
+    private transient RolloutMetrics rolloutMetrics;
+
+    private int maxBulkPaths = DEFAULT_MAX_BULK_PATHS;
+
+    @Activate
+    @Modified
+    private void activate(Configuration config) {
+        maxBulkPaths = Math.max(1, config.maxBulkPaths());
+    }
+
     @Override
     protected void doPost(final SlingHttpServletRequest request, final SlingHttpServletResponse response) {
         StopWatch sw = StopWatch.createStarted();
+        try {
+            checkBlueprint(request, response, sw);
+        } finally {
+            rolloutMetrics.recordTime(RolloutMetrics.BLUEPRINT_CHECK_REQUEST, sw.getNanoTime());
+        }
+    }
+
+    private void checkBlueprint(SlingHttpServletRequest request, SlingHttpServletResponse response, StopWatch sw) {
         LOG.debug("Starting blue print check for the selected page");
 
+        RequestParameter[] pathParams = request.getRequestParameters(PATHS_REQUEST_PARAM);
+        if (ArrayUtils.isNotEmpty(pathParams)) {
+            doBulkCheck(pathParams, request.getResourceResolver(), response);
+            LOG.debug("Bulk blue print check is completed in {} ms, cache hits: {}, cache misses: {}",
+                    sw.getTime(TimeUnit.MILLISECONDS), blueprintCheckCache.getHitCount(), blueprintCheckCache.getMissCount());
+            return;
+        }
+
         String path = ServletUtil.getRequestParamString(request, PATH_REQUEST_PARAM);
         if (StringUtils.isBlank(path)) {
             response.setStatus(HttpStatus.SC_BAD_REQUEST);
@@ -85,17 +156,70 @@ public class BlueprintCheckServlet extends SlingAllMethodsServlet {
             return;
         }
 
+        boolean isAvailableForRollout = blueprintCheckCache.isAvailableForRollout(path, getUserId(resourceResolver),
+                () -> isAvailableForRollout(sourceResource.get(), resourceResolver));
         String jsonResponse = Json.createObjectBuilder()
-                .add(IS_AVAILABLE_FOR_ROLLOUT_PARAM, isAvailableForRollout(sourceResource.get(), resourceResolver))
+                .add(IS_AVAILABLE_FOR_ROLLOUT_PARAM, isAvailableForRollout)
                 .build()
                 .toString();
         LOG.debug("Json response: {}", jsonResponse);
 
         ServletUtil.writeJsonResponse(response, jsonResponse);
-        LOG.debug("Blue print check is completed in {} ms", sw.getTime(TimeUnit.MILLISECONDS));
+        LOG.debug("Blue print check is completed in {} ms, cache hits: {}, cache misses: {}",
+                sw.getTime(TimeUnit.MILLISECONDS), blueprintCheckCache.getHitCount(), blueprintCheckCache.getMissCount());
+    }
+
+    private void doBulkCheck(RequestParameter[] pathParams,
+                             ResourceResolver resourceResolver,
+                             SlingHttpServletResponse response) {
+        Set<String> paths = Arrays.stream(pathParams)
+                .map(RequestParameter::getString)
+                .filter(StringUtils::isNotBlank)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (paths.size() > maxBulkPaths) {
+            LOG.warn("Bulk blueprint check is limited to {} of {} paths", maxBulkPaths, paths.size());
+            paths = paths.stream()
+                    .limit(maxBulkPaths)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+        }
+        LOG.debug("Selected page paths: {}", paths);
+
+        // The sibling pages share the parents of their live copies, which are read once for the whole batch
+        CachingResourceResolver cachingResolver = new CachingResourceResolver(resourceResolver);
+        JsonObjectBuilder jsonBuilder = Json.createObjectBuilder();
+        paths.forEach(path -> jsonBuilder.add(path, isAvailableForRollout(path, cachingResolver)));
+        LOG.debug("Bulk blueprint check resource cache hits: {}, misses: {}",
+                cachingResolver.getHitCount(), cachingResolver.getMissCount());
+        String jsonResponse = jsonBuilder.build().toString();
+        LOG.debug("Json response: {}", jsonResponse);
+
+        ServletUtil.writeJsonResponse(response, jsonResponse);
+    }
+
+    private boolean isAvailableForRollout(String path, ResourceResolver resourceResolver) {
+        // The resource is resolved for each request, so that the cached result is not exposed to a user without access
+        Resource sourceResource = resourceResolver.getResource(path);
+        if (sourceResource == null) {
+            LOG.debug("Source resource is null, path: {}", path);
+            return false;
+        }
+        return blueprintCheckCache.isAvailableForRollout(path, getUserId(resourceResolver),
+                () -> isAvailableForRollout(sourceResource, resourceResolver));
+    }
+
+    private static String getUserId(ResourceResolver resourceResolver) {
+        return StringUtils.defaultString(resourceResolver.getUserID());
     }
 
     private boolean isAvailableForRollout(Resource sourceResource, ResourceResolver resourceResolver) {
+        Optional<List<LiveCopyRelationship>> indexedRelationships =
+                relationshipIndexService.getRelationships(sourceResource.getPath(), resourceResolver);
+        if (indexedRelationships.isPresent()) {
+            return indexedRelationships.get().stream()
+                    .anyMatch(relationship -> relationshipCheckerService.isAvailableForSync(
+                            relationship.getLiveCopyPath(), relationship.getSyncPath(), relationship.getTargetPath(),
+                            relationship.getExclusions(), resourceResolver));
+        }
         try {
             RangeIterator relationships =
                     liveRelationshipManager.getLiveRelationships(sourceResource, null, null);
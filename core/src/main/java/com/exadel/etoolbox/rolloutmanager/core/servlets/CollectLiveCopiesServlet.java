@@ -20,7 +20,11 @@ import com.day.cq.wcm.msm.api.LiveRelationship;
 import com.day.cq.wcm.msm.api.LiveRelationshipManager;
 import com.day.cq.wcm.msm.api.RolloutConfig;
 import com.day.cq.wcm.msm.api.RolloutManager;
+import com.exadel.etoolbox.rolloutmanager.core.models.LiveCopyRelationship;
 import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipCheckerService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipIndexService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import com.exadel.etoolbox.rolloutmanager.core.services.util.CachingResourceResolver;
 import com.exadel.etoolbox.rolloutmanager.core.servlets.util.ServletUtil;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.lang3.StringUtils;
@@ -28,33 +32,68 @@ import org.apache.commons.lang3.time.StopWatch;
 import org.apache.jackrabbit.JcrConstants;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
-import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.RangeIterator;
-import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonObject;
-import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.Servlet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static com.day.cq.wcm.msm.api.MSMNameConstants.PN_LAST_ROLLEDOUT;
 
 /**
  * Collects data related to eligible for synchronization live relationships for the given resource.
  * The data is necessary for building 'Targets' tree in the UI dialog and further rollout in {@link RolloutServlet}
+ * <p>
+ * The json is streamed to the response while the live relationships are traversed, so the memory consumption doesn't
+ * depend on the size of the tree. The json of each top-level live copy is flushed to the client once it's written, and
+ * the collection is stopped if the client can't receive the response anymore.
+ * <p>
+ * The tree can be loaded level by level. If the 'maxDepth' parameter is specified, the live copies deeper than
+ * the given depth are not collected, and the 'hasChildren' flag shows whether a live copy has nested live copies.
+ * The nested live copies are then collected by a separate request with the 'path', 'syncPath' and 'depth' parameters
+ * of the expanded live copy.
+ * <p>
+ * The number and the nesting depth of the collected live copies are limited, see {@link Configuration}. The live copies
+ * which have nested live copies exceeding the limits are marked with the 'truncated' flag.
+ * <p>
+ * If the parallel collection is enabled, the subtrees of the sibling live copies are collected in parallel into
+ * lightweight node models, which are streamed by the request thread in the original order. A live copy whose subtree
+ * fails to be collected is written without its nested live copies and marked with the 'truncated' flag.
+ * <p>
+ * The live relationships are read from {@link RelationshipIndexService} if the index is enabled and built.
+ * The resources are looked up through {@link CachingResourceResolver}, so each path is read once per request.
  */
 @Component(service = Servlet.class)
 @SlingServletResourceTypes(
@@ -62,16 +101,53 @@ import static com.day.cq.wcm.msm.api.MSMNameConstants.PN_LAST_ROLLEDOUT;
         methods = HttpConstants.METHOD_POST
 )
 @ServiceDescription("The servlet for collecting live copies")
+@Designate(ocd = CollectLiveCopiesServlet.Configuration.class)
 public class CollectLiveCopiesServlet extends SlingAllMethodsServlet {
     private static final Logger LOG = LoggerFactory.getLogger(CollectLiveCopiesServlet.class);
 
     private static final String JCR_CONTENT_NODE = "/" + JcrConstants.JCR_CONTENT;
     private static final String PATH_REQUEST_PARAM = "path";
+    private static final String SYNC_PATH_REQUEST_PARAM = "syncPath";
+    private static final String DEPTH_REQUEST_PARAM = "depth";
+    private static final String MAX_DEPTH_REQUEST_PARAM = "maxDepth";
+
+    private static final int UNLIMITED_DEPTH = -1;
+    private static final int DEFAULT_MAX_NODES = 10000;
+    private static final int DEFAULT_MAX_TREE_DEPTH = 20;
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    @ObjectClassDefinition(name = "EToolbox Collect Live Copies Servlet Configuration")
+    @interface Configuration {
+
+        @AttributeDefinition(
+                name = "Max live copies",
+                description = "The maximum number of live copies collected in one request. The nested live copies "
+                        + "exceeding the limit are not collected, and the parent live copy is marked as truncated")
+        int maxNodes() default DEFAULT_MAX_NODES;
+
+        @AttributeDefinition(
+                name = "Max depth",
+                description = "The maximum nesting depth of the collected live copies")
+        int maxTreeDepth() default DEFAULT_MAX_TREE_DEPTH;
+
+        @AttributeDefinition(
+                name = "Parallel collection",
+                description = "Collect the nested live copies of the sibling live copies in parallel")
+        boolean parallelCollection() default false;
+
+        @AttributeDefinition(
+                name = "Parallelism",
+                description = "The maximum number of threads collecting live copies in parallel")
+        int parallelism() default DEFAULT_PARALLELISM;
+    }
 
     private static final String MASTER_JSON_FIELD = "master";
     private static final String PATH_JSON_FIELD = "path";
+    private static final String SYNC_PATH_JSON_FIELD = "syncPath";
     private static final String DEPTH_JSON_FIELD = "depth";
     private static final String LIVE_COPIES_JSON_FIELD = "liveCopies";
+    private static final String HAS_CHILDREN_JSON_FIELD = "hasChildren";
+    private static final String IS_TRUNCATED_JSON_FIELD = "truncated";
     private static final String IS_NEW_JSON_FIELD = "isNew";
     private static final String HAS_ROLLOUT_TRIGGER_JSON_FIELD = "autoRolloutTrigger";
     private static final String LAST_ROLLED_OUT_JSON_FIELD = "lastRolledOut";
@@ -83,9 +159,50 @@ public class CollectLiveCopiesServlet extends SlingAllMethodsServlet {
     @Reference
     private transient RelationshipCheckerService relationshipCheckerService;
 
+    @Reference
+    private transient RelationshipIndexService relationshipIndexService;
+
+    @Reference
+    private transient RolloutMetrics rolloutMetrics;
+
+    private int maxNodes = DEFAULT_MAX_NODES;
+    private int maxTreeDepth = DEFAULT_MAX_TREE_DEPTH;
+
+    // The pool is created only if the parallel collection is enabled
+    private transient volatile ForkJoinPool pool;
+
+    @Activate
+    @Modified
+    private void activate(Configuration config) {
+        maxNodes = config.maxNodes();
+        maxTreeDepth = config.maxTreeDepth();
+        ForkJoinPool previousPool = pool;
+        pool = config.parallelCollection() ? new ForkJoinPool(Math.max(1, config.parallelism())) : null;
+        if (previousPool != null) {
+            previousPool.shutdown();
+        }
+    }
+
+    @Deactivate
+    private void deactivate() {
+        ForkJoinPool currentPool = pool;
+        pool = null;
+        if (currentPool != null) {
+            currentPool.shutdown();
+        }
+    }
+
     @Override
     protected void doPost(final SlingHttpServletRequest request, final SlingHttpServletResponse response) {
         StopWatch sw = StopWatch.createStarted();
+        try {
+            collectLiveCopies(request, response, sw);
+        } finally {
+            rolloutMetrics.recordTime(RolloutMetrics.COLLECT_LIVE_COPIES_REQUEST, sw.getNanoTime());
+        }
+    }
+
+    private void collectLiveCopies(SlingHttpServletRequest request, SlingHttpServletResponse response, StopWatch sw) {
         LOG.debug("Starting live copies data collection for the selected page");
 
         String path = ServletUtil.getRequestParamString(request, PATH_REQUEST_PARAM);
@@ -94,68 +211,334 @@ public class CollectLiveCopiesServlet extends SlingAllMethodsServlet {
             LOG.warn("Path is blank, live copies collection failed");
             return;
         }
-        LOG.debug("Selected page path: {}", path);
+        String syncPath = ServletUtil.getRequestParamString(request, SYNC_PATH_REQUEST_PARAM);
+        int depth = ServletUtil.getRequestParamInt(request, DEPTH_REQUEST_PARAM, 0);
+        int maxDepth = ServletUtil.getRequestParamInt(request, MAX_DEPTH_REQUEST_PARAM, UNLIMITED_DEPTH);
+        LOG.debug("Selected page path: {}, sync path: {}, depth: {}, max depth: {}", path, syncPath, depth, maxDepth);
+
+        // The nested live copies are collected relative to the live copy root, see writeLiveCopiesJsonArray
+        String source = StringUtils.removeEnd(path, syncPath);
+        CachingResourceResolver resourceResolver = new CachingResourceResolver(request.getResourceResolver());
+        ServletUtil.streamJsonResponse(response, generator ->
+                writeLiveCopiesJsonArray(generator, response, source, syncPath, resourceResolver, depth, maxDepth));
+        LOG.debug("Live copies data collection is completed in {} ms, resource lookups: {}, cached lookups: {}",
+                sw.getTime(TimeUnit.MILLISECONDS), resourceResolver.getMissCount(), resourceResolver.getHitCount());
+    }
+
+    private void writeLiveCopiesJsonArray(JsonGenerator generator,
+                                          SlingHttpServletResponse response,
+                                          String source,
+                                          String sourceSyncPath,
+                                          CachingResourceResolver resourceResolver,
+                                          int depth,
+                                          int maxDepth) {
+        List<LiveCopyRelationship> relationships = getRelationships(source, sourceSyncPath, resourceResolver);
+        TraversalState state = new TraversalState(source + sourceSyncPath, relationships.size(), maxDepth);
+        List<TreeNode> nodes = relationships.stream()
+                .map(relationship -> new TreeNode(relationship, source + sourceSyncPath, depth))
+                .collect(Collectors.toList());
+
+        generator.writeStartArray();
+        ForkJoinPool currentPool = pool;
+        if (currentPool != null && nodes.size() > 1) {
+            writeTreesInParallel(generator, response, nodes, state, resourceResolver, currentPool);
+        } else {
+            writeTrees(generator, response, nodes, state, resourceResolver);
+        }
+        generator.writeEnd();
+        rolloutMetrics.recordValue(RolloutMetrics.COLLECTED_LIVE_COPIES, state.visitedPaths.size());
+    }
+
+    private void writeTrees(JsonGenerator generator,
+                            SlingHttpServletResponse response,
+                            List<TreeNode> nodes,
+                            TraversalState state,
+                            CachingResourceResolver resourceResolver) {
+        for (TreeNode node : nodes) {
+            traverseTree(Collections.singletonList(node), state, resourceResolver, new StreamingVisitor(generator));
+            if (!flush(generator, response, state)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Flushes the written live copies to the client. If the client can't receive them anymore, e.g. the connection
+     * is closed, the traversals of the request are cancelled
+     */
+    private static boolean flush(JsonGenerator generator, SlingHttpServletResponse response, TraversalState state) {
+        generator.flush();
+        if (ServletUtil.isResponseFailed(response)) {
+            LOG.warn("Failed to write live copies to response, the collection is cancelled");
+            state.isCancelled = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Collects the subtree of each live copy in a separate task of the pool. Each task uses its own clone of the user's
+     * resource resolver, so the user's permissions apply. The clones are created on the request thread, since
+     * the resolver must not be used concurrently. The collected subtrees are written in the original order, and
+     * a subtree which can't be collected in parallel is collected on the request thread. A live copy whose subtree
+     * fails to be collected is written as truncated
+     */
+    private void writeTreesInParallel(JsonGenerator generator,
+                                      SlingHttpServletResponse response,
+                                      List<TreeNode> nodes,
+                                      TraversalState state,
+                                      CachingResourceResolver resourceResolver,
+                                      ForkJoinPool currentPool) {
+        List<ForkJoinTask<TreeNode>> tasks = new ArrayList<>();
+        for (TreeNode node : nodes) {
+            tasks.add(submitTree(node, state, resourceResolver, currentPool));
+        }
+        boolean isInterrupted = false;
+        for (int i = 0; i < nodes.size(); i++) {
+            TreeNode node = nodes.get(i);
+            ForkJoinTask<TreeNode> task = tasks.get(i);
+            if (task == null) {
+                traverseTree(Collections.singletonList(node), state, resourceResolver, new StreamingVisitor(generator));
+            } else if (isInterrupted) {
+                task.cancel(true);
+                writeTruncatedNode(generator, node, resourceResolver);
+            } else {
+                try {
+                    writeCollectedTree(generator, task.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOG.error("Live copies collection is interrupted, path: {}", node.getPath(), e);
+                    isInterrupted = true;
+                    writeTruncatedNode(generator, node, resourceResolver);
+                } catch (ExecutionException e) {
+                    LOG.error("Live copies collection failed, path: {}", node.getPath(), e);
+                    writeTruncatedNode(generator, node, resourceResolver);
+                }
+            }
+            if (!flush(generator, response, state)) {
+                tasks.stream().filter(Objects::nonNull).forEach(pendingTask -> pendingTask.cancel(true));
+                return;
+            }
+        }
+    }
 
-        String jsonResponse = getLiveCopiesJsonArray(path, StringUtils.EMPTY, request.getResourceResolver(), 0)
-                .toString();
-        LOG.debug("Live copies data json: {}", jsonResponse);
+    private ForkJoinTask<TreeNode> submitTree(TreeNode node,
+                                               TraversalState state,
+                                               ResourceResolver resourceResolver,
+                                               ForkJoinPool currentPool) {
+        ResourceResolver workerResolver;
+        try {
+            workerResolver = resourceResolver.clone(null);
+        } catch (LoginException e) {
+            LOG.warn("Failed to clone resource resolver, the live copies are collected sequentially", e);
+            return null;
+        }
+        try {
+            return currentPool.submit(() -> collectTree(node, state, workerResolver));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Parallel collection is not available, the live copies are collected sequentially", e);
+            workerResolver.close();
+            return null;
+        }
+    }
 
-        ServletUtil.writeJsonResponse(response, jsonResponse);
-        LOG.debug("Live copies data collection is completed in {} ms", sw.getTime(TimeUnit.MILLISECONDS));
+    /**
+     * Collects the subtree of the given live copy into a node model, which is then written by the request thread.
+     * Returns null if the live copy is already collected
+     */
+    private TreeNode collectTree(TreeNode node, TraversalState state, ResourceResolver workerResolver) {
+        try (ResourceResolver resourceResolver = workerResolver) {
+            traverseTree(Collections.singletonList(node), state, new CachingResourceResolver(resourceResolver),
+                    new CollectingVisitor());
+        }
+        return node.isStarted ? node : null;
     }
 
-    private JsonArray getLiveCopiesJsonArray(String source,
-                                             String sourceSyncPath,
-                                             ResourceResolver resourceResolver,
-                                             int depth) {
+    /**
+     * Traverses the live copies trees with an explicit stack instead of recursion, passing each live copy to
+     * the visitor when it is started and after its nested live copies are traversed. A live copy which is already
+     * visited is skipped, so a live copy pointing back into its blueprint tree doesn't cause an endless traversal.
+     * The nested live copies exceeding the configured limits are not collected, and the parent live copy is marked
+     * as truncated
+     */
+    private void traverseTree(List<TreeNode> nodes,
+                           TraversalState state,
+                           CachingResourceResolver resourceResolver,
+                           TreeVisitor visitor) {
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        pushAll(stack, nodes);
+        while (!stack.isEmpty() && !state.isCancelled) {
+            TreeNode node = stack.pop();
+            if (node.isStarted) {
+                completeNode(node, resourceResolver);
+                visitor.end(node);
+                continue;
+            }
+            if (!state.visitedPaths.add(node.getPath())) {
+                LOG.warn("Live copy is already collected, the live relationships may be cyclic, path: {}", node.getPath());
+                continue;
+            }
+            visitor.start(node);
+            node.isStarted = true;
+            stack.push(node);
+
+            LiveCopyRelationship relationship = node.relationship;
+            int childDepth = node.depth + 1;
+            if (!isWithinMaxDepth(childDepth, state.maxDepth)) {
+                node.hasChildren = hasLiveCopies(relationship.getLiveCopyPath(), relationship.getSyncPath(), resourceResolver);
+                continue;
+            }
+            List<LiveCopyRelationship> children =
+                    getRelationships(relationship.getLiveCopyPath(), relationship.getSyncPath(), resourceResolver);
+            node.hasChildren = !children.isEmpty();
+            int allowedCount = childDepth > maxTreeDepth ? 0 : Math.max(0, maxNodes - state.scheduledCount.get());
+            if (children.size() > allowedCount) {
+                LOG.warn("Live copies tree is truncated at {}, depth: {}, collected live copies: {}",
+                        node.getPath(), childDepth, state.scheduledCount.get());
+                node.isTruncated = true;
+                children = children.subList(0, allowedCount);
+            }
+            state.scheduledCount.addAndGet(children.size());
+            pushAll(stack, children.stream()
+                    .map(child -> new TreeNode(child, node.getPath(), childDepth))
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Writes the node model collected by {@link #collectTree} with an explicit stack, the same way as it would be
+     * written by the streaming traversal
+     */
+    private static void writeCollectedTree(JsonGenerator generator, TreeNode root) {
+        if (root == null) {
+            return;
+        }
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            if (node.isWritten) {
+                writeRelationshipEnd(generator, node);
+                continue;
+            }
+            writeRelationshipStart(generator, node);
+            node.isWritten = true;
+            stack.push(node);
+            pushAll(stack, node.children);
+        }
+    }
+
+    /**
+     * Writes the live copy whose subtree failed to be collected without its nested live copies
+     */
+    private void writeTruncatedNode(JsonGenerator generator, TreeNode node, CachingResourceResolver resourceResolver) {
+        // A new node is written, since the failed task may have left the original one partially collected
+        TreeNode truncatedNode = new TreeNode(node.relationship, node.master, node.depth);
+        truncatedNode.hasChildren = true;
+        truncatedNode.isTruncated = true;
+        completeNode(truncatedNode, resourceResolver);
+        writeRelationshipStart(generator, truncatedNode);
+        writeRelationshipEnd(generator, truncatedNode);
+    }
+
+    private static void pushAll(Deque<TreeNode> stack, List<TreeNode> nodes) {
+        // Pushed in the reverse order, so that the live copies are written in the original order
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            stack.push(nodes.get(i));
+        }
+    }
+
+    private boolean hasLiveCopies(String source, String sourceSyncPath, CachingResourceResolver resourceResolver) {
+        return !getRelationships(source, sourceSyncPath, resourceResolver).isEmpty();
+    }
+
+    /**
+     * Gets the live relationships eligible for synchronization from the relationship index, or using the MSM API
+     * if the index is not available
+     */
+    private List<LiveCopyRelationship> getRelationships(String source,
+                                                        String sourceSyncPath,
+                                                        CachingResourceResolver resourceResolver) {
+        Optional<List<LiveCopyRelationship>> indexedRelationships =
+                relationshipIndexService.getRelationships(source, resourceResolver);
+        if (indexedRelationships.isPresent()) {
+            return indexedRelationships.get().stream()
+                    .map(relationship -> withSourceSyncPath(relationship, sourceSyncPath))
+                    .filter(relationship -> isSyncable(relationship.isDeep(), relationship.getSyncPath()))
+                    .collect(Collectors.toList());
+        }
         Optional<Resource> sourceResource = Optional.ofNullable(resourceResolver.getResource(source));
         if (!sourceResource.isPresent()) {
-            return JsonValue.EMPTY_JSON_ARRAY;
+            return Collections.emptyList();
         }
-        JsonArrayBuilder responseArrayBuilder = Json.createArrayBuilder();
+        List<LiveCopyRelationship> result = new ArrayList<>();
         try {
             RangeIterator relationships =
                     liveRelationshipManager.getLiveRelationships(sourceResource.get(), null, null);
             while (relationships.hasNext()) {
                 LiveRelationship relationship = (LiveRelationship) relationships.next();
-                JsonObject liveCopyJson = relationshipToJson(relationship, source, sourceSyncPath, depth, resourceResolver);
-                if (!liveCopyJson.isEmpty()) {
-                    responseArrayBuilder.add(liveCopyJson);
+                LiveCopy liveCopy = relationship.getLiveCopy();
+                String syncPath = buildSyncPath(relationship, sourceSyncPath);
+                if (liveCopy != null && isSyncable(liveCopy.isDeep(), syncPath)) {
+                    result.add(new LiveCopyRelationship(liveCopy.getPath(), syncPath,
+                            buildTargetPath(relationship, syncPath), liveCopy.isDeep(), liveCopy.getExclusions(),
+                            hasAutoTrigger(liveCopy)));
                 }
             }
         } catch (WCMException e) {
             LOG.error("Live copies collecting failed", e);
         }
-        return responseArrayBuilder.build();
+        return result;
     }
 
-    private JsonObject relationshipToJson(LiveRelationship relationship,
-                                          String source,
-                                          String sourceSyncPath,
-                                          int depth,
-                                          ResourceResolver resourceResolver) {
-        String syncPath = buildSyncPath(relationship, sourceSyncPath);
-        String targetPath = buildTargetPath(relationship, syncPath);
+    private static void writeRelationshipStart(JsonGenerator generator, TreeNode node) {
+        generator.writeStartObject()
+                .write(MASTER_JSON_FIELD, node.master)
+                .write(PATH_JSON_FIELD, node.getPath())
+                .write(SYNC_PATH_JSON_FIELD, node.relationship.getSyncPath())
+                .write(DEPTH_JSON_FIELD, node.depth)
+                .writeStartArray(LIVE_COPIES_JSON_FIELD);
+    }
 
-        LiveCopy liveCopy = relationship.getLiveCopy();
-        if (liveCopy == null || (StringUtils.isNotBlank(syncPath) && !liveCopy.isDeep())) {
-            return JsonValue.EMPTY_JSON_OBJECT;
+    private static void writeRelationshipEnd(JsonGenerator generator, TreeNode node) {
+        generator.writeEnd()
+                .write(HAS_CHILDREN_JSON_FIELD, node.hasChildren);
+        if (node.isTruncated) {
+            generator.write(IS_TRUNCATED_JSON_FIELD, true);
         }
-        boolean isDisabled = !relationshipCheckerService.isAvailableForSync(syncPath, targetPath, liveCopy.getExclusions(), resourceResolver);
+        generator.write(IS_NEW_JSON_FIELD, node.isNew)
+                .write(HAS_ROLLOUT_TRIGGER_JSON_FIELD, !node.isNew && node.relationship.isAutoRolloutTrigger())
+                .write(LAST_ROLLED_OUT_JSON_FIELD, node.lastRolledOut)
+                .write(IS_DISABLED_JSON_FIELD, node.isDisabled)
+                .writeEnd();
+    }
 
-        String liveCopyPath = liveCopy.getPath();
-        boolean isNew = !resourceExists(resourceResolver, liveCopyPath + syncPath);
+    /**
+     * Resolves the live copy properties which are written after its nested live copies
+     */
+    private void completeNode(TreeNode node, CachingResourceResolver resourceResolver) {
+        LiveCopyRelationship relationship = node.relationship;
+        node.isDisabled = !relationshipCheckerService.isAvailableForSync(relationship.getLiveCopyPath(),
+                relationship.getSyncPath(), relationship.getTargetPath(), relationship.getExclusions(), resourceResolver);
+        node.isNew = !resourceResolver.exists(node.getPath());
+        node.lastRolledOut = getStringDate(resourceResolver, node.getPath());
+    }
 
-        return Json.createObjectBuilder()
-                .add(MASTER_JSON_FIELD, source + sourceSyncPath)
-                .add(PATH_JSON_FIELD, liveCopyPath + syncPath)
-                .add(DEPTH_JSON_FIELD, depth)
-                .add(LIVE_COPIES_JSON_FIELD, getLiveCopiesJsonArray(liveCopyPath, syncPath, resourceResolver, depth + 1))
-                .add(IS_NEW_JSON_FIELD, isNew)
-                .add(HAS_ROLLOUT_TRIGGER_JSON_FIELD, !isNew && hasAutoTrigger(liveCopy))
-                .add(LAST_ROLLED_OUT_JSON_FIELD, getStringDate(resourceResolver, liveCopyPath + syncPath))
-                .add(IS_DISABLED_JSON_FIELD, isDisabled)
-                .build();
+    private static boolean isSyncable(boolean isDeep, String syncPath) {
+        return StringUtils.isBlank(syncPath) || isDeep;
+    }
+
+    private static LiveCopyRelationship withSourceSyncPath(LiveCopyRelationship relationship, String sourceSyncPath) {
+        if (StringUtils.isNotBlank(relationship.getSyncPath()) || StringUtils.isBlank(sourceSyncPath)) {
+            return relationship;
+        }
+        return new LiveCopyRelationship(relationship.getLiveCopyPath(), sourceSyncPath,
+                relationship.getLiveCopyPath() + sourceSyncPath, relationship.isDeep(), relationship.getExclusions(),
+                relationship.isAutoRolloutTrigger());
+    }
+
+    private static boolean isWithinMaxDepth(int depth, int maxDepth) {
+        return maxDepth == UNLIMITED_DEPTH || depth <= maxDepth;
     }
 
     private boolean hasAutoTrigger(LiveCopy liveCopy) {
@@ -178,16 +561,103 @@ public class CollectLiveCopiesServlet extends SlingAllMethodsServlet {
         return targetPath.contains(syncPath) ? targetPath : targetPath + syncPath;
     }
 
-    private boolean resourceExists(ResourceResolver resourceResolver, String path) {
-        return Optional.ofNullable(resourceResolver.getResource(path))
-                .isPresent();
+    private static String getStringDate(CachingResourceResolver resourceResolver, String resourcePath) {
+        return resourceResolver.getValueMap(resourcePath + JCR_CONTENT_NODE).get(PN_LAST_ROLLEDOUT, StringUtils.EMPTY);
+    }
+
+    /**
+     * Holds the state shared by the traversals of one request, which may run in parallel
+     */
+    private static class TraversalState {
+        private final Set<String> visitedPaths = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger scheduledCount;
+        private final int maxDepth;
+        private volatile boolean isCancelled;
+
+        TraversalState(String sourcePath, int scheduledCount, int maxDepth) {
+            this.visitedPaths.add(sourcePath);
+            this.scheduledCount = new AtomicInteger(scheduledCount);
+            this.maxDepth = maxDepth;
+        }
+    }
+
+    /**
+     * Receives the live copies in the traversal order
+     */
+    private interface TreeVisitor {
+        void start(TreeNode node);
+
+        void end(TreeNode node);
     }
 
-    private static String getStringDate(ResourceResolver resourceResolver, String resourcePath) {
-        Resource syncResource = resourceResolver.getResource(resourcePath + JCR_CONTENT_NODE);
-        return Optional.ofNullable(syncResource)
-                .map(r -> r.adaptTo(ValueMap.class))
-                .map(vm -> vm.get(PN_LAST_ROLLEDOUT, String.class))
-                .orElse(StringUtils.EMPTY);
+    /**
+     * Streams the live copies json to the response as the live copies are traversed
+     */
+    private static class StreamingVisitor implements TreeVisitor {
+        private final JsonGenerator generator;
+
+        StreamingVisitor(JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        @Override
+        public void start(TreeNode node) {
+            writeRelationshipStart(generator, node);
+        }
+
+        @Override
+        public void end(TreeNode node) {
+            writeRelationshipEnd(generator, node);
+        }
+    }
+
+    /**
+     * Links the traversed live copies into a node model, so that it can be written by another thread
+     */
+    private static class CollectingVisitor implements TreeVisitor {
+        private final Deque<TreeNode> started = new ArrayDeque<>();
+
+        @Override
+        public void start(TreeNode node) {
+            TreeNode parent = started.peek();
+            if (parent != null) {
+                parent.children.add(node);
+            }
+            started.push(node);
+        }
+
+        @Override
+        public void end(TreeNode node) {
+            started.pop();
+        }
+    }
+
+    /**
+     * Represents a live copy in the traversal stack. The live copy json is started when the node is popped for the first
+     * time, and is ended after its nested live copies are written. When the subtree is collected in parallel,
+     * the node also holds its nested live copies until they are written
+     */
+    private static class TreeNode {
+        private final LiveCopyRelationship relationship;
+        private final String master;
+        private final int depth;
+        private final List<TreeNode> children = new ArrayList<>();
+        private boolean isStarted;
+        private boolean isWritten;
+        private boolean hasChildren;
+        private boolean isTruncated;
+        private boolean isNew;
+        private boolean isDisabled;
+        private String lastRolledOut;
+
+        TreeNode(LiveCopyRelationship relationship, String master, int depth) {
+            this.relationship = relationship;
+            this.master = master;
+            this.depth = depth;
+        }
+
+        String getPath() {
+            return relationship.getLiveCopyPath() + relationship.getSyncPath();
+        }
     }
-}
\ No newline at end of file
+}
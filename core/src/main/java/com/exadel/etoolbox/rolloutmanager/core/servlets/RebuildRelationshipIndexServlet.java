@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.servlets;
+
+import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipIndexService;
+import com.exadel.etoolbox.rolloutmanager.core.servlets.util.ServletUtil;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.servlet.Servlet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rebuilds the relationship index of {@link RelationshipIndexService} from scratch. The rebuild is needed once after
+ * the index is enabled, and for recovery if the index gets out of sync with the live copies. The servlet node is
+ * readable by administrators only.
+ */
+@Component(service = Servlet.class)
+@SlingServletResourceTypes(
+        resourceTypes = "/apps/etoolbox-rollout-manager/rebuild-relationship-index",
+        methods = HttpConstants.METHOD_POST
+)
+@ServiceDescription("The servlet for rebuilding the relationship index")
+public class RebuildRelationshipIndexServlet extends SlingAllMethodsServlet {
+    private static final Logger LOG = LoggerFactory.getLogger(RebuildRelationshipIndexServlet.class);
+
+    private static final String INDEXED_LIVE_COPIES_JSON_FIELD = "indexedLiveCopies";
+
+    @Reference
+    private transient RelationshipIndexService relationshipIndexService;
+
+    @Override
+    protected void doPost(final SlingHttpServletRequest request, final SlingHttpServletResponse response) {
+        StopWatch sw = StopWatch.createStarted();
+        LOG.info("Relationship index rebuild is requested by {}", request.getResourceResolver().getUserID());
+
+        int count = relationshipIndexService.rebuild();
+        if (count < 0) {
+            response.setStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+
+        String jsonResponse = Json.createObjectBuilder()
+                .add(INDEXED_LIVE_COPIES_JSON_FIELD, count)
+                .build()
+                .toString();
+        ServletUtil.writeJsonResponse(response, jsonResponse);
+        LOG.debug("Relationship index rebuild is completed in {} ms", sw.getTime(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.servlets;
+
+import com.exadel.etoolbox.rolloutmanager.core.jobs.RolloutJobConsumer;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutJobInfo;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutJobTracker;
+import com.exadel.etoolbox.rolloutmanager.core.servlets.util.ServletUtil;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.servlet.Servlet;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Reports the progress of a rollout job added by {@link RolloutServlet}. The response contains the job state,
+ * the number of processed targets and the targets failed so far. The progress is available only for the user who
+ * requested the rollout.
+ */
+@Component(service = Servlet.class)
+@SlingServletResourceTypes(
+        resourceTypes = "/apps/etoolbox-rollout-manager/rollout-status",
+        methods = HttpConstants.METHOD_POST
+)
+@ServiceDescription("The servlet for getting rollout job status")
+public class RolloutJobStatusServlet extends SlingAllMethodsServlet {
+    private static final Logger LOG = LoggerFactory.getLogger(RolloutJobStatusServlet.class);
+
+    private static final String JOB_ID_REQUEST_PARAM = "jobId";
+
+    private static final String JOB_ID_JSON_FIELD = "jobId";
+    private static final String STATE_JSON_FIELD = "state";
+    private static final String PROCESSED_TARGETS_JSON_FIELD = "processedTargets";
+    private static final String FAILED_TARGETS_JSON_FIELD = "failedTargets";
+
+    @Reference
+    private transient RolloutJobTracker rolloutJobTracker;
+
+    @Reference
+    private transient JobManager jobManager;
+
+    @Override
+    protected void doPost(final SlingHttpServletRequest request, final SlingHttpServletResponse response) {
+        String jobId = ServletUtil.getRequestParamString(request, JOB_ID_REQUEST_PARAM);
+        if (StringUtils.isBlank(jobId)) {
+            response.setStatus(HttpStatus.SC_BAD_REQUEST);
+            LOG.warn("Job id is blank, rollout job status check failed");
+            return;
+        }
+
+        String userId = request.getResourceResolver().getUserID();
+        Optional<RolloutJobInfo> jobInfo = Optional.ofNullable(rolloutJobTracker.getJobInfo(jobId)
+                .orElseGet(() -> getQueuedJobInfo(jobId)))
+                .filter(info -> StringUtils.equals(userId, info.getUserId()));
+        if (!jobInfo.isPresent()) {
+            response.setStatus(HttpStatus.SC_NOT_FOUND);
+            LOG.warn("Rollout job is not found, job id: {}, user: {}", jobId, userId);
+            return;
+        }
+
+        String jsonResponse = Json.createObjectBuilder()
+                .add(JOB_ID_JSON_FIELD, jobId)
+                .add(STATE_JSON_FIELD, jobInfo.get().getState().name())
+                .add(PROCESSED_TARGETS_JSON_FIELD, jobInfo.get().getStatuses().size())
+                .add(FAILED_TARGETS_JSON_FIELD, Json.createArrayBuilder(jobInfo.get().getStatuses().stream()
+                        .filter(status -> !status.isSuccess())
+                        .map(RolloutStatus::getTarget)
+                        .collect(Collectors.toList())))
+                .build()
+                .toString();
+        LOG.debug("Json response: {}", jsonResponse);
+
+        ServletUtil.writeJsonResponse(response, jsonResponse);
+    }
+
+    private RolloutJobInfo getQueuedJobInfo(String jobId) {
+        return Optional.ofNullable(jobManager.getJobById(jobId))
+                .map(job -> new RolloutJobInfo(
+                        jobId,
+                        job.getProperty(RolloutJobConsumer.USER_ID_PROPERTY, String.class),
+                        RolloutJobInfo.State.QUEUED))
+                .orElse(null);
+    }
+}
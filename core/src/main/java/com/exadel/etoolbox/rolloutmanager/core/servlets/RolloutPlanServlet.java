@@ -0,0 +1,259 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.servlets;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.exadel.etoolbox.rolloutmanager.core.models.MetricStatistics;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import com.exadel.etoolbox.rolloutmanager.core.services.PageReplicationService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetricsMXBean;
+import com.exadel.etoolbox.rolloutmanager.core.servlets.util.ServletUtil;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.servlet.Servlet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Set;
+
+/**
+ * Estimates the rollout of the selected items without performing it. Takes the same parameters as
+ * {@link RolloutServlet} and responds with the number of pages rolled out to each target, the total number of page
+ * writes, the number of replication actions and the estimated duration in milliseconds.
+ * <p>
+ * For a deep rollout, all the subpages of the master page are counted, including the ones excluded from the live copy,
+ * and the targets which are up to date are counted as well, so the number of pages is an upper bound. The response
+ * states this explicitly. The subpages of each master are counted once per request, and the number of counted pages
+ * is limited, so the count of a large tree is a lower bound of its size and is marked as truncated. The duration is
+ * estimated by the average time of rolling out and replicating a single page recorded by {@link RolloutMetrics},
+ * or is -1 if there is no history yet.
+ */
+@Component(service = Servlet.class)
+@SlingServletResourceTypes(
+        resourceTypes = "/apps/etoolbox-rollout-manager/rollout-plan",
+        methods = HttpConstants.METHOD_POST
+)
+@ServiceDescription("The servlet for estimating rollouts")
+@Designate(ocd = RolloutPlanServlet.Configuration.class)
+public class RolloutPlanServlet extends SlingAllMethodsServlet {
+    private static final Logger LOG = LoggerFactory.getLogger(RolloutPlanServlet.class);
+
+    private static final String SELECTION_JSON_ARRAY_PARAM = "selectionJsonArray";
+    private static final String IS_DEEP_ROLLOUT_PARAM = "isDeepRollout";
+    private static final String SHOULD_ACTIVATE_PARAM = "shouldActivate";
+
+    private static final String TARGETS_RESPONSE_PARAM = "targets";
+    private static final String TARGET_RESPONSE_PARAM = "target";
+    private static final String PAGES_RESPONSE_PARAM = "pages";
+    private static final String TOTAL_PAGE_WRITES_RESPONSE_PARAM = "totalPageWrites";
+    private static final String REPLICATION_ACTIONS_RESPONSE_PARAM = "replicationActions";
+    private static final String ESTIMATED_DURATION_RESPONSE_PARAM = "estimatedDuration";
+    private static final String TRUNCATED_RESPONSE_PARAM = "truncated";
+    private static final String EXCLUDED_PAGES_SUBTRACTED_RESPONSE_PARAM = "excludedPagesSubtracted";
+    private static final String UP_TO_DATE_TARGETS_SUBTRACTED_RESPONSE_PARAM = "upToDateTargetsSubtracted";
+
+    private static final long UNKNOWN_DURATION = -1L;
+    private static final int DEFAULT_MAX_PAGES = 10000;
+
+    @ObjectClassDefinition(name = "EToolbox Rollout Plan Servlet Configuration")
+    @interface Configuration {
+
+        @AttributeDefinition(
+                name = "Max pages",
+                description = "The maximum number of pages counted in one request. The pages exceeding the limit "
+                        + "are not counted, and the estimation is marked as truncated")
+        int maxPages() default DEFAULT_MAX_PAGES;
+    }
+
+    @Reference
+    private transient PageReplicationService pageReplicationService;
+
+    @Reference
+    private transient RolloutMetricsMXBean rolloutMetrics;
+
+    private int maxPages = DEFAULT_MAX_PAGES;
+
+    @Activate
+    @Modified
+    private void activate(Configuration config) {
+        maxPages = Math.max(0, config.maxPages());
+    }
+
+    @Override
+    protected void doPost(final SlingHttpServletRequest request, final SlingHttpServletResponse response) {
+        String selectionJsonArray = ServletUtil.getRequestParamString(request, SELECTION_JSON_ARRAY_PARAM);
+        if (StringUtils.isBlank(selectionJsonArray)) {
+            response.setStatus(HttpStatus.SC_BAD_REQUEST);
+            LOG.warn("Selection json array is blank, rollout is not estimated");
+            return;
+        }
+        RolloutItem[] rolloutItems = RolloutServlet.jsonArrayToRolloutItems(selectionJsonArray);
+        if (ArrayUtils.isEmpty(rolloutItems)) {
+            response.setStatus(HttpStatus.SC_BAD_REQUEST);
+            LOG.warn("Rollout items array is empty, rollout is not estimated. Selected live copies json: {}", selectionJsonArray);
+            return;
+        }
+        PageManager pageManager = request.getResourceResolver().adaptTo(PageManager.class);
+        if (pageManager == null) {
+            response.setStatus(HttpStatus.SC_BAD_REQUEST);
+            LOG.warn("Page Manager is null, rollout is not estimated");
+            return;
+        }
+        boolean isDeepRollout = ServletUtil.getRequestParamBoolean(request, IS_DEEP_ROLLOUT_PARAM);
+        boolean shouldActivate = ServletUtil.getRequestParamBoolean(request, SHOULD_ACTIVATE_PARAM);
+
+        JsonArrayBuilder targets = Json.createArrayBuilder();
+        PageCounter pageCounter = new PageCounter(maxPages);
+        long totalPageWrites = 0;
+        long replicationActions = 0;
+        for (RolloutItem item : rolloutItems) {
+            if (StringUtils.isBlank(item.getTarget())) {
+                continue;
+            }
+            int pages = countPages(item, pageManager, isDeepRollout, pageCounter);
+            targets.add(Json.createObjectBuilder()
+                    .add(TARGET_RESPONSE_PARAM, item.getTarget())
+                    .add(PAGES_RESPONSE_PARAM, pages)
+                    .add(TRUNCATED_RESPONSE_PARAM, isDeepRollout && pageCounter.isTruncated(item.getMaster())));
+            totalPageWrites += pages;
+            if (shouldActivate) {
+                replicationActions += pageReplicationService.getReplicationActionCount(pages, isDeepRollout);
+            }
+        }
+        long estimatedDuration = estimateDuration(totalPageWrites, shouldActivate ? totalPageWrites : 0);
+        LOG.debug("Rollout is estimated, page writes: {}, replication actions: {}, duration: {} ms, truncated: {}",
+                totalPageWrites, replicationActions, estimatedDuration, pageCounter.isTruncated());
+
+        String jsonResponse = Json.createObjectBuilder()
+                .add(TARGETS_RESPONSE_PARAM, targets)
+                .add(TOTAL_PAGE_WRITES_RESPONSE_PARAM, totalPageWrites)
+                .add(REPLICATION_ACTIONS_RESPONSE_PARAM, replicationActions)
+                .add(ESTIMATED_DURATION_RESPONSE_PARAM, estimatedDuration)
+                .add(TRUNCATED_RESPONSE_PARAM, pageCounter.isTruncated())
+                .add(EXCLUDED_PAGES_SUBTRACTED_RESPONSE_PARAM, false)
+                .add(UP_TO_DATE_TARGETS_SUBTRACTED_RESPONSE_PARAM, false)
+                .build()
+                .toString();
+        ServletUtil.writeJsonResponse(response, jsonResponse);
+    }
+
+    private static int countPages(RolloutItem item, PageManager pageManager, boolean isDeep, PageCounter pageCounter) {
+        // Auto triggered live copies of the nested levels are skipped by the rollout, see RolloutServiceImpl
+        if (item.getDepth() != 0 && item.isAutoRolloutTrigger()) {
+            return 0;
+        }
+        Page masterPage = pageManager.getPage(item.getMaster());
+        if (masterPage == null) {
+            return 0;
+        }
+        if (!isDeep) {
+            return 1;
+        }
+        return pageCounter.count(masterPage);
+    }
+
+    private long estimateDuration(long pageWrites, long activatedPages) {
+        OptionalDouble pageRolloutMillis = getMean(rolloutMetrics.getTimers().get(RolloutMetrics.PAGE_ROLLOUT));
+        if (!pageRolloutMillis.isPresent()) {
+            return UNKNOWN_DURATION;
+        }
+        double duration = pageWrites * pageRolloutMillis.getAsDouble();
+        if (activatedPages > 0) {
+            OptionalDouble targetReplicationMillis = getMean(rolloutMetrics.getTimers().get(RolloutMetrics.TARGET_REPLICATION));
+            OptionalDouble replicatedPagesPerTarget = getMean(rolloutMetrics.getHistograms().get(RolloutMetrics.REPLICATED_PAGES));
+            if (!targetReplicationMillis.isPresent() || !replicatedPagesPerTarget.isPresent()) {
+                return UNKNOWN_DURATION;
+            }
+            duration += activatedPages * targetReplicationMillis.getAsDouble() / replicatedPagesPerTarget.getAsDouble();
+        }
+        return Math.round(duration);
+    }
+
+    private static OptionalDouble getMean(MetricStatistics statistics) {
+        return Optional.ofNullable(statistics)
+                .filter(stats -> stats.getCount() > 0 && stats.getMean() > 0)
+                .map(stats -> OptionalDouble.of(stats.getMean()))
+                .orElse(OptionalDouble.empty());
+    }
+
+    /**
+     * Counts the pages of the master subtrees within one request. The count of each master is memoized, since
+     * the targets of a selection usually share their masters, and all the walks share the same page limit
+     */
+    private static class PageCounter {
+        private final Map<String, Integer> counts = new HashMap<>();
+        private final Set<String> truncatedPaths = new HashSet<>();
+        private int remainingPages;
+
+        PageCounter(int maxPages) {
+            remainingPages = maxPages;
+        }
+
+        int count(Page root) {
+            Integer count = counts.get(root.getPath());
+            if (count != null) {
+                return count;
+            }
+            int pages = 0;
+            Deque<Page> queue = new ArrayDeque<>();
+            queue.offer(root);
+            while (!queue.isEmpty()) {
+                if (pages >= remainingPages) {
+                    truncatedPaths.add(root.getPath());
+                    LOG.warn("Pages count is truncated at {}, counted pages: {}", root.getPath(), pages);
+                    break;
+                }
+                pages++;
+                queue.poll().listChildren().forEachRemaining(queue::offer);
+            }
+            remainingPages -= pages;
+            counts.put(root.getPath(), pages);
+            return pages;
+        }
+
+        boolean isTruncated(String path) {
+            return truncatedPaths.contains(path);
+        }
+
+        boolean isTruncated() {
+            return !truncatedPaths.isEmpty();
+        }
+    }
+}
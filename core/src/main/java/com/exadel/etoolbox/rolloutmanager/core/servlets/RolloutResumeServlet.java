@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.servlets;
+
+import com.exadel.etoolbox.rolloutmanager.core.jobs.RolloutJobConsumer;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutJobInfo;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutJobTracker;
+import com.exadel.etoolbox.rolloutmanager.core.servlets.util.ServletUtil;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.servlet.Servlet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Resumes a finished rollout job added by {@link RolloutServlet}. A new job is added with the properties of the
+ * resumed one, and only the targets which are not completed according to the job checkpoint are processed by
+ * {@link RolloutJobConsumer}. The progress of the resumed job is reported by {@link RolloutJobStatusServlet} under
+ * the id of the original job. A job can be resumed only by the user who requested the rollout.
+ */
+@Component(service = Servlet.class)
+@SlingServletResourceTypes(
+        resourceTypes = "/apps/etoolbox-rollout-manager/rollout-resume",
+        methods = HttpConstants.METHOD_POST
+)
+@ServiceDescription("The servlet for resuming rollout jobs")
+public class RolloutResumeServlet extends SlingAllMethodsServlet {
+    private static final Logger LOG = LoggerFactory.getLogger(RolloutResumeServlet.class);
+
+    private static final String JOB_ID_REQUEST_PARAM = "jobId";
+    private static final String JOB_ID_RESPONSE_PARAM = "jobId";
+
+    private static final Set<RolloutJobInfo.State> FINISHED_STATES =
+            EnumSet.of(RolloutJobInfo.State.SUCCEEDED, RolloutJobInfo.State.FAILED);
+
+    @Reference
+    private transient RolloutJobTracker rolloutJobTracker;
+
+    @Reference
+    private transient JobManager jobManager;
+
+    @Override
+    protected void doPost(final SlingHttpServletRequest request, final SlingHttpServletResponse response) {
+        String jobId = ServletUtil.getRequestParamString(request, JOB_ID_REQUEST_PARAM);
+        if (StringUtils.isBlank(jobId)) {
+            response.setStatus(HttpStatus.SC_BAD_REQUEST);
+            LOG.warn("Job id is blank, rollout job is not resumed");
+            return;
+        }
+
+        String userId = request.getResourceResolver().getUserID();
+        Optional<RolloutJobInfo> jobInfo = rolloutJobTracker.getJobInfo(jobId)
+                .filter(info -> StringUtils.equals(userId, info.getUserId()));
+        if (!jobInfo.isPresent()) {
+            response.setStatus(HttpStatus.SC_NOT_FOUND);
+            LOG.warn("Rollout job is not found, job id: {}, user: {}", jobId, userId);
+            return;
+        }
+        if (!FINISHED_STATES.contains(jobInfo.get().getState())) {
+            response.setStatus(HttpStatus.SC_CONFLICT);
+            LOG.warn("Rollout job is not finished and cannot be resumed, job id: {}, state: {}",
+                    jobId, jobInfo.get().getState());
+            return;
+        }
+        if (!jobInfo.get().getJobProperties().containsKey(RolloutJobConsumer.SELECTION_JSON_ARRAY_PROPERTY)) {
+            response.setStatus(HttpStatus.SC_BAD_REQUEST);
+            LOG.warn("Rollout job has no stored selection and cannot be resumed, job id: {}", jobId);
+            return;
+        }
+
+        Map<String, Object> jobProperties = new HashMap<>(jobInfo.get().getJobProperties());
+        jobProperties.put(RolloutJobConsumer.RESUMED_JOB_ID_PROPERTY, jobId);
+        // The state is reset beforehand, so that the status polling doesn't stop before the resumed job is started
+        rolloutJobTracker.queued(jobId);
+        Job job = jobManager.addJob(RolloutJobConsumer.TOPIC, jobProperties);
+        if (job == null) {
+            LOG.error("Failed to add resumed rollout job, topic: {}", RolloutJobConsumer.TOPIC);
+            rolloutJobTracker.finished(jobId, jobInfo.get().getState());
+            response.setStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        LOG.debug("Rollout job {} is resumed by the job {}", jobId, job.getId());
+        response.setStatus(HttpStatus.SC_ACCEPTED);
+        String jsonResponse = Json.createObjectBuilder()
+                .add(JOB_ID_RESPONSE_PARAM, jobId)
+                .build()
+                .toString();
+        ServletUtil.writeJsonResponse(response, jsonResponse);
+    }
+}
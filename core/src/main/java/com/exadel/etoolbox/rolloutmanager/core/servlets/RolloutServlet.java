@@ -14,13 +14,18 @@
 
 package com.exadel.etoolbox.rolloutmanager.core.servlets;
 
-import com.day.cq.wcm.api.Page;
+import com.day.cq.replication.Replicator;
 import com.day.cq.wcm.api.PageManager;
-import com.day.cq.wcm.api.WCMException;
-import com.day.cq.wcm.msm.api.RolloutManager;
+import com.exadel.etoolbox.rolloutmanager.core.jobs.RolloutJobConsumer;
+import com.exadel.etoolbox.rolloutmanager.core.models.ExecutionWindow;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutAdmission;
 import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
 import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
 import com.exadel.etoolbox.rolloutmanager.core.services.PageReplicationService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutAdmissionService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutScheduleService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutService;
 import com.exadel.etoolbox.rolloutmanager.core.servlets.util.ServletUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.collections.CollectionUtils;
@@ -30,10 +35,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
-import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
@@ -41,11 +47,18 @@ import org.osgi.service.component.propertytypes.ServiceDescription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.Privilege;
 import javax.json.Json;
+import javax.json.JsonObjectBuilder;
 import javax.servlet.Servlet;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -59,6 +72,22 @@ import java.util.stream.Stream;
  * array is then grouped by depth which defines a level of nesting for live relationships. The items with a lower depth
  * are rolled out first. Rollout operation returns a {@link List} of {@link RolloutStatus} items. Failed items are put
  * into the servlet response and outputted in the UI dialog.
+ * <p>
+ * If the 'runAsJob' request parameter is true, the rollout is performed asynchronously by {@link RolloutJobConsumer}.
+ * The servlet responds with the id of the added job right away, and the job progress is reported by
+ * {@link RolloutJobStatusServlet}. The job is performed with the permissions of the requesting user, which write and,
+ * if the pages are activated, replicate permissions for the targets are checked before the job is added.
+ * <p>
+ * If the 'schedule' request parameter is true, the rollout job is scheduled by {@link RolloutScheduleService} within
+ * the execution window of the targets' site root, and the servlet responds with the time when the job is started.
+ * <p>
+ * If the 'stream' request parameter is true, the status of each target is written to the response as a separate
+ * json line as soon as the target is rolled out or activated, along with the time spent on it. The last line
+ * contains the failed targets.
+ * <p>
+ * The synchronous and the streamed rollouts are admitted by {@link RolloutAdmissionService}. If the limit of concurrent
+ * rollouts is reached and the rollout can't wait in the queue, the servlet responds with 429 status, the queue position
+ * and the time after which the rollout can be requested again.
  */
 @Component(service = Servlet.class)
 @SlingServletResourceTypes(
@@ -71,20 +100,66 @@ public class RolloutServlet extends SlingAllMethodsServlet {
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
+    private static final String WRITE_ACTIONS = Session.ACTION_ADD_NODE + "," + Session.ACTION_SET_PROPERTY;
+
     private static final String SELECTION_JSON_ARRAY_PARAM = "selectionJsonArray";
     private static final String IS_DEEP_ROLLOUT_PARAM = "isDeepRollout";
     private static final String SHOULD_ACTIVATE_PARAM = "shouldActivate";
+    private static final String RUN_AS_JOB_PARAM = "runAsJob";
+    private static final String STREAM_PARAM = "stream";
+    private static final String SCHEDULE_PARAM = "schedule";
     private static final String FAILED_TARGETS_RESPONSE_PARAM = "failedTargets";
+    private static final String JOB_ID_RESPONSE_PARAM = "jobId";
+    private static final String SCHEDULED_AT_RESPONSE_PARAM = "scheduledAt";
+    private static final String QUEUE_POSITION_RESPONSE_PARAM = "queuePosition";
+    private static final String RETRY_AFTER_RESPONSE_PARAM = "retryAfter";
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+    // Not defined by HttpStatus
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static final String PHASE_RESPONSE_PARAM = "phase";
+    private static final String TARGET_RESPONSE_PARAM = "target";
+    private static final String SUCCESS_RESPONSE_PARAM = "success";
+    private static final String DURATION_RESPONSE_PARAM = "duration";
+    private static final String ACTIVATED_PAGES_RESPONSE_PARAM = "activatedPages";
+    private static final String SKIPPED_PAGES_RESPONSE_PARAM = "skippedPages";
+    private static final String SKIPPED_RESPONSE_PARAM = "skipped";
+    private static final String FAILED_PAGES_RESPONSE_PARAM = "failedPages";
+    private static final String THROTTLE_DELAY_RESPONSE_PARAM = "throttleDelay";
+    private static final String QUEUE_WAIT_EXCEEDED_RESPONSE_PARAM = "queueWaitExceeded";
+    private static final String ROLLOUT_PHASE = "rollout";
+    private static final String ACTIVATION_PHASE = "activation";
+    private static final String COMPLETED_PHASE = "completed";
 
     @Reference
-    private transient RolloutManager rolloutManager;
+    private transient RolloutService rolloutService;
+
+    @Reference
+    private transient JobManager jobManager;
 
     @Reference
     private transient PageReplicationService pageReplicationService;
 
+    @Reference
+    private transient RolloutMetrics rolloutMetrics;
+
+    @Reference
+    private transient RolloutAdmissionService rolloutAdmissionService;
+
+    @Reference
+    private transient RolloutScheduleService rolloutScheduleService;
+
     @Override
     protected void doPost(final SlingHttpServletRequest request, final SlingHttpServletResponse response) {
         StopWatch sw = StopWatch.createStarted();
+        try {
+            rolloutSelectedItems(request, response, sw);
+        } finally {
+            rolloutMetrics.recordTime(RolloutMetrics.ROLLOUT_REQUEST, sw.getNanoTime());
+        }
+    }
+
+    private void rolloutSelectedItems(SlingHttpServletRequest request, SlingHttpServletResponse response, StopWatch sw) {
         LOG.debug("Starting rollout of selected items");
 
         String selectionJsonArray = ServletUtil.getRequestParamString(request, SELECTION_JSON_ARRAY_PARAM);
@@ -112,10 +187,44 @@ public class RolloutServlet extends SlingAllMethodsServlet {
         boolean isDeepRollout = ServletUtil.getRequestParamBoolean(request, IS_DEEP_ROLLOUT_PARAM);
         LOG.debug("Is deep rollout (include subpages): {}", isDeepRollout);
 
-        List<RolloutStatus> rolloutStatuses = doItemsRollout(rolloutItems, pageManager, isDeepRollout);
-
         boolean shouldActivate = ServletUtil.getRequestParamBoolean(request, SHOULD_ACTIVATE_PARAM);
         LOG.debug("Should activate pages: {}", shouldActivate);
+
+        if (ServletUtil.getRequestParamBoolean(request, SCHEDULE_PARAM)) {
+            scheduleRolloutJob(request, response, rolloutItems, isDeepRollout, shouldActivate);
+            LOG.debug("Rollout job for selected items is scheduled in {} ms", sw.getTime(TimeUnit.MILLISECONDS));
+            return;
+        }
+
+        if (ServletUtil.getRequestParamBoolean(request, RUN_AS_JOB_PARAM)) {
+            addRolloutJob(request, response, rolloutItems, isDeepRollout, shouldActivate);
+            LOG.debug("Rollout job for selected items is added in {} ms", sw.getTime(TimeUnit.MILLISECONDS));
+            return;
+        }
+
+        try (RolloutAdmission admission = rolloutAdmissionService.admit()) {
+            if (!admission.isAdmitted()) {
+                writeRejectedResponse(admission, response);
+                return;
+            }
+            LOG.debug("Rollout of selected items is admitted in {} ms", sw.getTime(TimeUnit.MILLISECONDS));
+            if (ServletUtil.getRequestParamBoolean(request, STREAM_PARAM)) {
+                streamRolloutStatuses(request, response, rolloutItems, isDeepRollout, shouldActivate, sw);
+            } else {
+                rolloutItems(request, response, rolloutItems, isDeepRollout, shouldActivate, sw);
+            }
+        }
+    }
+
+    private void rolloutItems(SlingHttpServletRequest request,
+                              SlingHttpServletResponse response,
+                              RolloutItem[] rolloutItems,
+                              boolean isDeepRollout,
+                              boolean shouldActivate,
+                              StopWatch sw) {
+        List<RolloutStatus> rolloutStatuses =
+                rolloutService.rolloutItems(rolloutItems, request.getResourceResolver(), isDeepRollout);
+
         List<RolloutStatus> activationStatuses = new ArrayList<>();
         if (shouldActivate) {
             activationStatuses = pageReplicationService.replicateItems(request.getResourceResolver(), rolloutItems, request.getResourceResolver().adaptTo(PageManager.class), isDeepRollout);
@@ -126,92 +235,208 @@ public class RolloutServlet extends SlingAllMethodsServlet {
         LOG.debug("Rollout of selected items is completed in {} ms", sw.getTime(TimeUnit.MILLISECONDS));
     }
 
-    private void writeStatusesIfFailed(List<RolloutStatus> rolloutStatuses, SlingHttpServletResponse response) {
-        List<String> failedTargets = rolloutStatuses.stream()
-                .filter(status -> !status.isSuccess())
-                .map(RolloutStatus::getTarget)
-                .collect(Collectors.toList());
-        if (CollectionUtils.isNotEmpty(failedTargets)) {
-            LOG.debug("Rollout failed for the following targets: {}", failedTargets);
-            response.setStatus(HttpStatus.SC_BAD_REQUEST);
-            String jsonResponse = Json.createObjectBuilder()
-                    .add(FAILED_TARGETS_RESPONSE_PARAM, Json.createArrayBuilder(failedTargets))
-                    .build()
-                    .toString();
-            ServletUtil.writeJsonResponse(response, jsonResponse);
-        }
-    }
-
-    private List<RolloutStatus> doItemsRollout(RolloutItem[] items, PageManager pageManager, boolean isDeep) {
-        return Arrays.stream(items)
-                .collect(Collectors.groupingBy(RolloutItem::getDepth))
-                .entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByKey())
-                .map(Map.Entry::getValue)
-                .flatMap(sortedByDepthItems -> rolloutSortedByDepthItems(sortedByDepthItems, pageManager, isDeep))
-                .collect(Collectors.toList());
+    /**
+     * Performs the rollout and writes the status of each target as a separate json line as soon as the target is
+     * processed. The last line contains the failed targets, since the response status is already sent at that time
+     */
+    private void streamRolloutStatuses(SlingHttpServletRequest request,
+                                       SlingHttpServletResponse response,
+                                       RolloutItem[] rolloutItems,
+                                       boolean isDeepRollout,
+                                       boolean shouldActivate,
+                                       StopWatch sw) {
+        ResourceResolver resourceResolver = request.getResourceResolver();
+        ServletUtil.startJsonLinesResponse(response);
+        List<String> failedTargets = new ArrayList<>();
+
+        rolloutService.rolloutItems(rolloutItems, resourceResolver, isDeepRollout,
+                status -> writeStatusLine(ROLLOUT_PHASE, status, failedTargets, response));
+        if (shouldActivate) {
+            pageReplicationService.replicateItems(resourceResolver, rolloutItems,
+                    resourceResolver.adaptTo(PageManager.class), isDeepRollout,
+                    status -> writeStatusLine(ACTIVATION_PHASE, status, failedTargets, response));
+        }
+
+        ServletUtil.writeJsonLine(response, Json.createObjectBuilder()
+                .add(PHASE_RESPONSE_PARAM, COMPLETED_PHASE)
+                .add(FAILED_TARGETS_RESPONSE_PARAM, Json.createArrayBuilder(failedTargets))
+                .add(DURATION_RESPONSE_PARAM, sw.getTime(TimeUnit.MILLISECONDS))
+                .build());
+        LOG.debug("Streamed rollout of selected items is completed in {} ms", sw.getTime(TimeUnit.MILLISECONDS));
+    }
+
+    private static void writeStatusLine(String phase,
+                                         RolloutStatus status,
+                                         List<String> failedTargets,
+                                         SlingHttpServletResponse response) {
+        if (!status.isSuccess()) {
+            failedTargets.add(status.getTarget());
+        }
+        JsonObjectBuilder statusLine = Json.createObjectBuilder()
+                .add(PHASE_RESPONSE_PARAM, phase)
+                .add(TARGET_RESPONSE_PARAM, status.getTarget())
+                .add(SUCCESS_RESPONSE_PARAM, status.isSuccess())
+                .add(DURATION_RESPONSE_PARAM, status.getDuration());
+        if (ACTIVATION_PHASE.equals(phase)) {
+            statusLine.add(ACTIVATED_PAGES_RESPONSE_PARAM, status.getActivatedPages())
+                    .add(SKIPPED_PAGES_RESPONSE_PARAM, status.getSkippedPages())
+                    .add(FAILED_PAGES_RESPONSE_PARAM, status.getFailedPages())
+                    .add(THROTTLE_DELAY_RESPONSE_PARAM, status.getThrottleDelay())
+                    .add(QUEUE_WAIT_EXCEEDED_RESPONSE_PARAM, status.isQueueWaitExceeded());
+        } else {
+            statusLine.add(SKIPPED_RESPONSE_PARAM, status.isSkipped());
+        }
+        ServletUtil.writeJsonLine(response, statusLine.build());
     }
 
-    private Stream<RolloutStatus> rolloutSortedByDepthItems(List<RolloutItem> items, PageManager pageManager, boolean isDeep) {
-        return items.stream()
-                .filter(item -> !skipAutoTriggered(item))
-                .filter(item -> StringUtils.isNotBlank(item.getTarget()))
-                .map(item -> rollout(item, pageManager, isDeep));
+    private void addRolloutJob(SlingHttpServletRequest request,
+                               SlingHttpServletResponse response,
+                               RolloutItem[] rolloutItems,
+                               boolean isDeepRollout,
+                               boolean shouldActivate) {
+        if (!isPermitted(request, response, rolloutItems, shouldActivate)) {
+            return;
+        }
+
+        Map<String, Object> jobProperties = getJobProperties(request, isDeepRollout, shouldActivate);
+        Job job = jobManager.addJob(RolloutJobConsumer.TOPIC, jobProperties);
+        if (job == null) {
+            LOG.error("Failed to add rollout job, topic: {}", RolloutJobConsumer.TOPIC);
+            response.setStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        LOG.debug("Rollout job is added: {}", job.getId());
+        response.setStatus(HttpStatus.SC_ACCEPTED);
+        String jsonResponse = Json.createObjectBuilder()
+                .add(JOB_ID_RESPONSE_PARAM, job.getId())
+                .build()
+                .toString();
+        ServletUtil.writeJsonResponse(response, jsonResponse);
+    }
+
+    private void scheduleRolloutJob(SlingHttpServletRequest request,
+                                    SlingHttpServletResponse response,
+                                    RolloutItem[] rolloutItems,
+                                    boolean isDeepRollout,
+                                    boolean shouldActivate) {
+        Optional<ExecutionWindow> window = rolloutScheduleService.getExecutionWindow(rolloutItems);
+        if (!window.isPresent()) {
+            LOG.warn("Rollout job is not scheduled, the targets don't share an execution window");
+            response.setStatus(HttpStatus.SC_BAD_REQUEST);
+            return;
+        }
+        if (!isPermitted(request, response, rolloutItems, shouldActivate)) {
+            return;
+        }
+
+        Optional<Calendar> startTime = rolloutScheduleService.schedule(window.get(),
+                getJobProperties(request, isDeepRollout, shouldActivate));
+        if (!startTime.isPresent()) {
+            response.setStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        response.setStatus(HttpStatus.SC_ACCEPTED);
+        String jsonResponse = Json.createObjectBuilder()
+                .add(SCHEDULED_AT_RESPONSE_PARAM, startTime.get().getTimeInMillis())
+                .build()
+                .toString();
+        ServletUtil.writeJsonResponse(response, jsonResponse);
     }
 
-    private boolean skipAutoTriggered(RolloutItem item) {
-        boolean skipAutoTriggered = item.getDepth() != 0 && item.isAutoRolloutTrigger();
-        if (skipAutoTriggered) {
-            LOG.debug("Item rollout skipped due to auto trigger, master: {}, target: {}", item.getMaster(), item.getTarget());
+    private boolean isPermitted(SlingHttpServletRequest request,
+                                SlingHttpServletResponse response,
+                                RolloutItem[] rolloutItems,
+                                boolean shouldActivate) {
+        ResourceResolver resourceResolver = request.getResourceResolver();
+        List<String> notPermittedTargets = getNotPermittedTargets(rolloutItems,
+                resourceResolver.adaptTo(Session.class), shouldActivate);
+        if (CollectionUtils.isEmpty(notPermittedTargets)) {
+            return true;
         }
-        return skipAutoTriggered;
+        LOG.warn("Rollout job is not added, the user {} has no write or replicate permissions for the targets: {}",
+                resourceResolver.getUserID(), notPermittedTargets);
+        response.setStatus(HttpStatus.SC_FORBIDDEN);
+        writeTargetsResponse(notPermittedTargets, response);
+        return false;
+    }
+
+    private static Map<String, Object> getJobProperties(SlingHttpServletRequest request,
+                                                        boolean isDeepRollout,
+                                                        boolean shouldActivate) {
+        Map<String, Object> jobProperties = new HashMap<>();
+        jobProperties.put(RolloutJobConsumer.SELECTION_JSON_ARRAY_PROPERTY,
+                ServletUtil.getRequestParamString(request, SELECTION_JSON_ARRAY_PARAM));
+        jobProperties.put(RolloutJobConsumer.IS_DEEP_ROLLOUT_PROPERTY, isDeepRollout);
+        jobProperties.put(RolloutJobConsumer.SHOULD_ACTIVATE_PROPERTY, shouldActivate);
+        jobProperties.put(RolloutJobConsumer.USER_ID_PROPERTY, request.getResourceResolver().getUserID());
+        return jobProperties;
+    }
+
+    private static void writeRejectedResponse(RolloutAdmission admission, SlingHttpServletResponse response) {
+        LOG.warn("Rollout of selected items is rejected, queue position: {}", admission.getQueuePosition());
+        response.setStatus(SC_TOO_MANY_REQUESTS);
+        response.setHeader(RETRY_AFTER_HEADER, String.valueOf(admission.getRetryAfter()));
+        String jsonResponse = Json.createObjectBuilder()
+                .add(QUEUE_POSITION_RESPONSE_PARAM, admission.getQueuePosition())
+                .add(RETRY_AFTER_RESPONSE_PARAM, admission.getRetryAfter())
+                .build()
+                .toString();
+        ServletUtil.writeJsonResponse(response, jsonResponse);
     }
 
-    private RolloutStatus rollout(RolloutItem targetItem, PageManager pageManager, boolean isDeep) {
-        String targetPath = targetItem.getTarget();
-        RolloutStatus status = new RolloutStatus(targetPath);
+    private List<String> getNotPermittedTargets(RolloutItem[] rolloutItems, Session session, boolean shouldActivate) {
+        return Arrays.stream(rolloutItems)
+                .map(RolloutItem::getTarget)
+                .filter(StringUtils::isNotBlank)
+                .filter(target -> !hasWritePermission(session, target)
+                        || (shouldActivate && !hasReplicatePermission(session, target)))
+                .collect(Collectors.toList());
+    }
 
-        String masterPath = targetItem.getMaster();
-        Optional<Page> masterPage = Optional.ofNullable(pageManager.getPage(masterPath));
-        if (!masterPage.isPresent()) {
-            status.setSuccess(false);
-            LOG.warn("Rollout failed - master page is null, master page path: {}", masterPath);
-            return status;
+    private static boolean hasReplicatePermission(Session session, String path) {
+        try {
+            AccessControlManager accessControlManager = session.getAccessControlManager();
+            return accessControlManager.hasPrivileges(path,
+                    new Privilege[]{accessControlManager.privilegeFromName(Replicator.REPLICATE_PRIVILEGE)});
+        } catch (RepositoryException e) {
+            LOG.error("Failed to check replicate permissions, path: {}", path, e);
         }
+        return false;
+    }
 
-        RolloutManager.RolloutParams params = toRolloutParams(masterPage.get(), targetPath, isDeep);
+    private static boolean hasWritePermission(Session session, String path) {
+        if (session == null) {
+            return false;
+        }
         try {
-            LOG.debug("Item rollout started, master: {}, target: {}", masterPath, targetPath);
-            rolloutManager.rollout(params);
-            status.setSuccess(true);
-            LOG.debug("Item rollout completed, master: {}, target: {}", masterPath, targetPath);
-        } catch (WCMException e) {
-            status.setSuccess(false);
-            String message = String.format("Item rollout failed, master: %s, target: %s", masterPath, targetPath);
-            LOG.error(message, e);
-            discardUnsavedChanges(masterPage.get());
+            return session.hasPermission(path, WRITE_ACTIONS);
+        } catch (RepositoryException e) {
+            LOG.error("Failed to check write permissions, path: {}", path, e);
         }
-        return status;
+        return false;
     }
 
-    private static void discardUnsavedChanges(Page masterPage) {
-        Optional.of(masterPage)
-                .map(page -> page.adaptTo(Resource.class))
-                .map(Resource::getResourceResolver)
-                .ifPresent(ResourceResolver::revert);
+    private void writeStatusesIfFailed(List<RolloutStatus> rolloutStatuses, SlingHttpServletResponse response) {
+        List<String> failedTargets = rolloutStatuses.stream()
+                .filter(status -> !status.isSuccess())
+                .map(RolloutStatus::getTarget)
+                .collect(Collectors.toList());
+        if (CollectionUtils.isNotEmpty(failedTargets)) {
+            LOG.debug("Rollout failed for the following targets: {}", failedTargets);
+            response.setStatus(HttpStatus.SC_BAD_REQUEST);
+            writeTargetsResponse(failedTargets, response);
+        }
     }
 
-    private RolloutManager.RolloutParams toRolloutParams(Page masterPage, String targetPath, boolean isDeep) {
-        RolloutManager.RolloutParams params = new RolloutManager.RolloutParams();
-        params.master = masterPage;
-        params.targets = new String[]{targetPath};
-        params.isDeep = isDeep;
-        params.trigger = RolloutManager.Trigger.ROLLOUT;
-        return params;
+    private static void writeTargetsResponse(List<String> targets, SlingHttpServletResponse response) {
+        String jsonResponse = Json.createObjectBuilder()
+                .add(FAILED_TARGETS_RESPONSE_PARAM, Json.createArrayBuilder(targets))
+                .build()
+                .toString();
+        ServletUtil.writeJsonResponse(response, jsonResponse);
     }
 
-    private RolloutItem[] jsonArrayToRolloutItems(String jsonArray) {
+    static RolloutItem[] jsonArrayToRolloutItems(String jsonArray) {
         try {
             return OBJECT_MAPPER.readValue(jsonArray, RolloutItem[].class);
         } catch (IOException e) {
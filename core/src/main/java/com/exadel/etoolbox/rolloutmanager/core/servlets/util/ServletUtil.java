@@ -16,6 +16,7 @@ package com.exadel.etoolbox.rolloutmanager.core.servlets.util;
 
 import org.apache.commons.lang.CharEncoding;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.http.entity.ContentType;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
@@ -23,8 +24,13 @@ import org.apache.sling.api.request.RequestParameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
 import java.io.IOException;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Contains common methods for operating servlet request and response.
@@ -32,6 +38,8 @@ import java.util.Optional;
 public class ServletUtil {
     private static final Logger LOG = LoggerFactory.getLogger(ServletUtil.class);
 
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
     private ServletUtil() {
     }
 
@@ -59,6 +67,18 @@ public class ServletUtil {
         return Boolean.parseBoolean(getRequestParamString(request, param));
     }
 
+    /**
+     * Gets int parameter value from {@link SlingHttpServletRequest}
+     *
+     * @param request      - {@link SlingHttpServletRequest}
+     * @param param        - parameter name
+     * @param defaultValue - value returned if the parameter is missing or is not a number
+     * @return int request parameter value
+     */
+    public static int getRequestParamInt(SlingHttpServletRequest request, String param, int defaultValue) {
+        return NumberUtils.toInt(getRequestParamString(request, param), defaultValue);
+    }
+
     /**
      * Writes a json to response with UTF-8 encoding
      *
@@ -74,4 +94,63 @@ public class ServletUtil {
             LOG.error("Failed to write json to response", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Streams a json to response with UTF-8 encoding. The json is written by the given consumer directly to
+     * the response writer, so that a large json is not kept in memory
+     *
+     * @param response   - {@link SlingHttpServletResponse}
+     * @param jsonWriter - consumer writing the json with the provided {@link JsonGenerator}
+     */
+    public static void streamJsonResponse(SlingHttpServletResponse response, Consumer<JsonGenerator> jsonWriter) {
+        response.setCharacterEncoding(CharEncoding.UTF_8);
+        response.setContentType(ContentType.APPLICATION_JSON.getMimeType());
+        try (JsonGenerator generator = Json.createGenerator(response.getWriter())) {
+            jsonWriter.accept(generator);
+        } catch (IOException | JsonException e) {
+            LOG.error("Failed to stream json to response", e);
+        }
+    }
+
+    /**
+     * Checks if the streamed response can't be written anymore, e.g. the client has closed the connection.
+     * The content written so far is flushed to the client
+     *
+     * @param response - {@link SlingHttpServletResponse}
+     * @return true, if writing to the response failed
+     */
+    public static boolean isResponseFailed(SlingHttpServletResponse response) {
+        try {
+            // The print writer doesn't throw exceptions, the write errors are reported by checkError
+            return response.getWriter().checkError();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Prepares the response for streaming newline delimited json objects with UTF-8 encoding
+     *
+     * @param response - {@link SlingHttpServletResponse}
+     */
+    public static void startJsonLinesResponse(SlingHttpServletResponse response) {
+        response.setCharacterEncoding(CharEncoding.UTF_8);
+        response.setContentType(NDJSON_CONTENT_TYPE);
+    }
+
+    /**
+     * Writes a json object as a separate line and flushes the response, so that the line is sent to the client
+     * right away
+     *
+     * @param response - {@link SlingHttpServletResponse}
+     * @param json     - json object to write
+     */
+    public static void writeJsonLine(SlingHttpServletResponse response, JsonObject json) {
+        try {
+            response.getWriter().write(json.toString() + "\n");
+            response.flushBuffer();
+        } catch (IOException e) {
+            LOG.error("Failed to write json line to response", e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class BlueprintCheckCacheImplTest {
+    private static final String CACHE_SIZE_PROPERTY = "cacheSize";
+
+    private static final String TEST_PAGE_PATH = "/content/my-site/language-masters/en/testResource";
+    private static final String TEST_OTHER_PAGE_PATH = "/content/my-site/language-masters/en/otherResource";
+    private static final String TEST_THIRD_PAGE_PATH = "/content/my-site/language-masters/en/thirdResource";
+    private static final String TEST_USER_ID = "author";
+    private static final String TEST_OTHER_USER_ID = "reviewer";
+
+    private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
+
+    private BlueprintCheckCacheImpl fixture;
+
+    private AtomicInteger checksCount;
+    private BooleanSupplier check;
+
+    @BeforeEach
+    void setup() {
+        fixture = context.registerInjectActivateService(new BlueprintCheckCacheImpl(), CACHE_SIZE_PROPERTY, 2);
+        checksCount = new AtomicInteger();
+        check = () -> checksCount.incrementAndGet() > 0;
+    }
+
+    @Test
+    void isAvailableForRollout_RepeatedCheck_CachedResult() {
+        assertTrue(fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check));
+        assertTrue(fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check));
+
+        assertEquals(1, checksCount.get());
+        assertEquals(1, fixture.getHitCount());
+        assertEquals(1, fixture.getMissCount());
+    }
+
+    @Test
+    void isAvailableForRollout_OtherUser_CheckedSeparately() {
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_OTHER_USER_ID, check);
+
+        assertEquals(2, checksCount.get());
+        assertEquals(0, fixture.getHitCount());
+    }
+
+    @Test
+    void isAvailableForRollout_CacheSizeExceeded_LeastRecentlyUsedEvicted() {
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+        fixture.isAvailableForRollout(TEST_OTHER_PAGE_PATH, TEST_USER_ID, check);
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+        fixture.isAvailableForRollout(TEST_THIRD_PAGE_PATH, TEST_USER_ID, check);
+
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+        fixture.isAvailableForRollout(TEST_OTHER_PAGE_PATH, TEST_USER_ID, check);
+
+        assertEquals(4, checksCount.get());
+    }
+
+    @Test
+    void onChange_PageAdded_Invalidated() {
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+
+        fixture.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.ADDED, TEST_OTHER_PAGE_PATH, false)));
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+
+        assertEquals(2, checksCount.get());
+    }
+
+    @Test
+    void onChange_LiveSyncConfigChanged_Invalidated() {
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED,
+                TEST_OTHER_PAGE_PATH + "/jcr:content/cq:LiveSyncConfig", false)));
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+
+        assertEquals(2, checksCount.get());
+    }
+
+    @Test
+    void onChange_AccessControlPolicyChanged_Invalidated() {
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED,
+                "/content/my-site/rep:policy/allow", false)));
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+
+        assertEquals(2, checksCount.get());
+    }
+
+    @Test
+    void onChange_PageContentChanged_NotInvalidated() {
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.ADDED,
+                TEST_PAGE_PATH + "/jcr:content/root/text", false)));
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+
+        assertEquals(1, checksCount.get());
+    }
+
+    @Test
+    void onChange_PageContentChangedWithoutPropertyNames_NotInvalidated() {
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED,
+                TEST_PAGE_PATH + "/jcr:content", true)));
+        fixture.isAvailableForRollout(TEST_PAGE_PATH, TEST_USER_ID, check);
+
+        assertEquals(1, checksCount.get());
+    }
+}
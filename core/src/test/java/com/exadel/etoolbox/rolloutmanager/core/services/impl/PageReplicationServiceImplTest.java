@@ -0,0 +1,266 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.day.cq.replication.Agent;
+import com.day.cq.replication.AgentConfig;
+import com.day.cq.replication.AgentManager;
+import com.day.cq.replication.ReplicationActionType;
+import com.day.cq.replication.ReplicationException;
+import com.day.cq.replication.ReplicationOptions;
+import com.day.cq.replication.ReplicationQueue;
+import com.day.cq.replication.Replicator;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.WCMException;
+import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.jcr.RangeIterator;
+import javax.jcr.Session;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+class PageReplicationServiceImplTest {
+    private static final String SELECTED_LIVECOPIES_JSON =
+            "src/test/resources/com/exadel/etoolbox/rolloutmanager/core/servlets/rollout-selected-items.json";
+    private static final int EXPECTED_REPLICATIONS_COUNT = 6;
+
+    private static final String POOL_SIZE_PROPERTY = "poolSize";
+    private static final String QUEUE_CAPACITY_PROPERTY = "queueCapacity";
+    private static final String BATCH_REPLICATION_PROPERTY = "batchReplication";
+    private static final String BATCH_SIZE_PROPERTY = "batchSize";
+    private static final String QUEUE_HIGH_WATER_MARK_PROPERTY = "queueHighWaterMark";
+    private static final String QUEUE_CHECK_INTERVAL_PROPERTY = "queueCheckInterval";
+    private static final String MAX_QUEUE_WAIT_PROPERTY = "maxQueueWait";
+
+    private static final String TEST_PAGE_PATH = "/content/we-retail/ca/en/experience";
+
+    private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
+
+    @Mock
+    private LiveRelationshipManager liveRelationshipManager;
+
+    @Mock
+    private Replicator replicator;
+
+    @Mock
+    private AgentManager agentManager;
+
+    @Mock
+    private ResourceResolver resourceResolver;
+
+    @Mock
+    private PageManager pageManager;
+
+    @Mock
+    private Session session;
+
+    private PageReplicationServiceImpl fixture;
+
+    private RolloutItem[] rolloutItems;
+
+    @BeforeEach
+    void setup() throws IOException, WCMException {
+        context.registerService(LiveRelationshipManager.class, liveRelationshipManager);
+        context.registerService(Replicator.class, replicator);
+        context.registerService(AgentManager.class, agentManager);
+        context.registerService(JobManager.class, mock(JobManager.class));
+        context.registerInjectActivateService(new RolloutMetricsImpl());
+        // The queue is smaller than a depth level, so the overflowing tasks are executed by the caller
+        fixture = context.registerInjectActivateService(new PageReplicationServiceImpl(),
+                POOL_SIZE_PROPERTY, 1,
+                QUEUE_CAPACITY_PROPERTY, 1);
+
+        rolloutItems = new ObjectMapper().readValue(new File(SELECTED_LIVECOPIES_JSON), RolloutItem[].class);
+
+        RangeIterator noRelationships = mock(RangeIterator.class);
+        when(resourceResolver.getResource(anyString())).thenReturn(mock(Resource.class));
+        when(liveRelationshipManager.getLiveRelationships(any(Resource.class), isNull(), isNull()))
+                .thenReturn(noRelationships);
+    }
+
+    @Test
+    void replicateItems_SharedExecutor_AllReplicated() throws ReplicationException {
+        when(resourceResolver.adaptTo(Session.class)).thenReturn(session);
+        when(pageManager.getPage(anyString())).thenReturn(mock(Page.class));
+
+        List<RolloutStatus> statuses = fixture.replicateItems(resourceResolver, rolloutItems, pageManager, false);
+
+        assertEquals(EXPECTED_REPLICATIONS_COUNT, statuses.size());
+        assertTrue(statuses.stream().allMatch(RolloutStatus::isSuccess));
+        verify(replicator, times(EXPECTED_REPLICATIONS_COUNT))
+                .replicate(eq(session), eq(ReplicationActionType.ACTIVATE), anyString());
+        assertEquals(0, fixture.getQueuedTaskCount());
+    }
+
+    @Test
+    void replicateItems_DeepBatchReplication_ReplicatedInBatches() throws ReplicationException {
+        PageReplicationServiceImpl batchFixture = context.registerInjectActivateService(new PageReplicationServiceImpl(),
+                BATCH_REPLICATION_PROPERTY, true,
+                BATCH_SIZE_PROPERTY, 2);
+        when(resourceResolver.adaptTo(Session.class)).thenReturn(session);
+        Page page = createPage(TEST_PAGE_PATH, createPage(TEST_PAGE_PATH + "/child-1"), createPage(TEST_PAGE_PATH + "/child-2"));
+        when(pageManager.getPage(TEST_PAGE_PATH)).thenReturn(page);
+        RolloutItem[] items = new RolloutItem[]{rolloutItems[0]};
+
+        List<RolloutStatus> statuses = batchFixture.replicateItems(resourceResolver, items, pageManager, true);
+
+        assertEquals(1, statuses.size());
+        assertTrue(statuses.get(0).isSuccess());
+        assertEquals(3, statuses.get(0).getActivatedPages());
+        verify(replicator, times(2)).replicate(eq(session), eq(ReplicationActionType.ACTIVATE),
+                any(String[].class), any(ReplicationOptions.class));
+        verify(replicator, never()).replicate(eq(session), eq(ReplicationActionType.ACTIVATE), anyString());
+    }
+
+    @Test
+    void replicateItems_DeepFailedChild_PagesCounted() throws ReplicationException {
+        when(resourceResolver.adaptTo(Session.class)).thenReturn(session);
+        String failedPath = TEST_PAGE_PATH + "/failed";
+        Page emptyPage = mock(Page.class);
+        when(emptyPage.getPath()).thenReturn(TEST_PAGE_PATH + "/empty");
+        when(emptyPage.listChildren()).thenReturn(Arrays.asList(createPage(TEST_PAGE_PATH + "/empty/child")).iterator());
+        Page page = createPage(TEST_PAGE_PATH, createPage(failedPath), emptyPage);
+        when(pageManager.getPage(TEST_PAGE_PATH)).thenReturn(page);
+        doAnswer(invocation -> {
+            if (failedPath.equals(invocation.getArgument(2))) {
+                throw new ReplicationException("Agent is blocked");
+            }
+            return null;
+        }).when(replicator).replicate(eq(session), eq(ReplicationActionType.ACTIVATE), anyString());
+        RolloutItem[] items = new RolloutItem[]{rolloutItems[0]};
+
+        List<RolloutStatus> statuses = fixture.replicateItems(resourceResolver, items, pageManager, true);
+
+        RolloutStatus status = statuses.get(0);
+        assertFalse(status.isSuccess());
+        assertEquals(2, status.getActivatedPages());
+        assertEquals(1, status.getSkippedPages());
+        assertEquals(1, status.getFailedPages());
+        verify(replicator).replicate(session, ReplicationActionType.ACTIVATE, TEST_PAGE_PATH + "/empty/child");
+    }
+
+    @Test
+    void replicateItems_AgentQueueAboveHighWaterMark_ActivationDelayed() throws ReplicationException {
+        PageReplicationServiceImpl backpressureFixture = context.registerInjectActivateService(new PageReplicationServiceImpl(),
+                QUEUE_HIGH_WATER_MARK_PROPERTY, 1,
+                QUEUE_CHECK_INTERVAL_PROPERTY, 1L);
+        ReplicationQueue queue = mock(ReplicationQueue.class);
+        ReplicationQueue.Entry entry = mock(ReplicationQueue.Entry.class);
+        List<ReplicationQueue.Entry> pending = Arrays.asList(entry, entry);
+        when(queue.entries()).thenReturn(pending, pending, Collections.emptyList());
+        Agent agent = mock(Agent.class);
+        when(agent.isEnabled()).thenReturn(true);
+        when(agent.isValid()).thenReturn(true);
+        when(agent.getConfiguration()).thenReturn(mock(AgentConfig.class));
+        when(agent.getQueue()).thenReturn(queue);
+        when(agentManager.getAgents()).thenReturn(Collections.singletonMap("publish", agent));
+        when(resourceResolver.adaptTo(Session.class)).thenReturn(session);
+        when(pageManager.getPage(anyString())).thenReturn(mock(Page.class));
+        RolloutItem[] items = new RolloutItem[]{rolloutItems[0]};
+
+        List<RolloutStatus> statuses = backpressureFixture.replicateItems(resourceResolver, items, pageManager, false);
+
+        assertTrue(statuses.get(0).isSuccess());
+        assertTrue(statuses.get(0).getThrottleDelay() > 0);
+        verify(queue, times(3)).entries();
+        verify(replicator).replicate(session, ReplicationActionType.ACTIVATE, rolloutItems[0].getTarget());
+    }
+
+    @Test
+    void replicateItems_QueueWaitBudgetSpent_RemainingPagesActivated() throws ReplicationException {
+        PageReplicationServiceImpl backpressureFixture = context.registerInjectActivateService(new PageReplicationServiceImpl(),
+                QUEUE_HIGH_WATER_MARK_PROPERTY, 1,
+                QUEUE_CHECK_INTERVAL_PROPERTY, 1L,
+                MAX_QUEUE_WAIT_PROPERTY, 0L);
+        ReplicationQueue queue = mock(ReplicationQueue.class);
+        ReplicationQueue.Entry entry = mock(ReplicationQueue.Entry.class);
+        when(queue.entries()).thenReturn(Arrays.asList(entry, entry));
+        Agent agent = mock(Agent.class);
+        when(agent.isEnabled()).thenReturn(true);
+        when(agent.isValid()).thenReturn(true);
+        when(agent.getConfiguration()).thenReturn(mock(AgentConfig.class));
+        when(agent.getQueue()).thenReturn(queue);
+        when(agentManager.getAgents()).thenReturn(Collections.singletonMap("publish", agent));
+        when(resourceResolver.adaptTo(Session.class)).thenReturn(session);
+        Page page = createPage(TEST_PAGE_PATH, createPage(TEST_PAGE_PATH + "/first"), createPage(TEST_PAGE_PATH + "/second"));
+        when(pageManager.getPage(TEST_PAGE_PATH)).thenReturn(page);
+        RolloutItem[] items = new RolloutItem[]{rolloutItems[0]};
+
+        List<RolloutStatus> statuses = backpressureFixture.replicateItems(resourceResolver, items, pageManager, true);
+
+        RolloutStatus status = statuses.get(0);
+        assertTrue(status.isSuccess());
+        assertTrue(status.isQueueWaitExceeded());
+        assertEquals(3, status.getActivatedPages());
+        // The queues are not checked again once the budget of the target is spent
+        verify(queue, atMost(2)).entries();
+    }
+
+    @Test
+    void replicateItems_Deactivated_FailedStatuses() {
+        MockOsgi.deactivate(fixture, context.bundleContext());
+
+        List<RolloutStatus> statuses = fixture.replicateItems(resourceResolver, rolloutItems, pageManager, false);
+
+        assertEquals(EXPECTED_REPLICATIONS_COUNT, statuses.size());
+        assertFalse(statuses.stream().anyMatch(RolloutStatus::isSuccess));
+        verifyNoInteractions(replicator);
+        assertEquals(0, fixture.getActiveThreadCount());
+    }
+
+    private static Page createPage(String path, Page... children) {
+        Page page = mock(Page.class);
+        when(page.getPath()).thenReturn(path);
+        when(page.getContentResource()).thenReturn(mock(Resource.class));
+        when(page.listChildren()).thenReturn(Arrays.asList(children).iterator());
+        return page;
+    }
+}
@@ -20,10 +20,12 @@ import com.google.common.collect.ImmutableSet;
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 import org.apache.commons.lang.StringUtils;
+import org.apache.sling.api.resource.observation.ResourceChange;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.util.Collections;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -40,6 +42,7 @@ class RelationshipCheckerServiceImplTest {
     private static final String TEST_OTHER_PAGE_EXCLUSION = "other-page";
     private static final String TEST_PARENT_PAGE_EXCLUSION = "parent-page";
     private static final String TEST_CONTENT_PATH = "/content";
+    private static final String TEST_LIVE_COPY_PATH = "/content/my-site/ca/en";
 
     private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
 
@@ -121,4 +124,49 @@ class RelationshipCheckerServiceImplTest {
 
         assertTrue(fixture.isAvailableForSync(relationshipMock, context.resourceResolver()));
     }
-}
\ No newline at end of file
+
+    @Test
+    void isAvailableForSync_ParentInCompiledExclusions_False() {
+        Set<String> exclusions = ImmutableSet.of(TEST_OTHER_PAGE_EXCLUSION, TEST_PARENT_PAGE_EXCLUSION);
+
+        assertFalse(fixture.isAvailableForSync(TEST_LIVE_COPY_PATH, TEST_PARENT_SYNC_PATH,
+                TEST_LIVE_COPY_PATH + TEST_PARENT_SYNC_PATH, exclusions, context.resourceResolver()));
+        assertFalse(fixture.isAvailableForSync(TEST_LIVE_COPY_PATH, TEST_PARENT_SYNC_PATH + "/child",
+                TEST_LIVE_COPY_PATH + TEST_PARENT_SYNC_PATH + "/child", exclusions, context.resourceResolver()));
+    }
+
+    @Test
+    void isAvailableForSync_SimilarSegmentInCompiledExclusions_True() {
+        Set<String> exclusions = ImmutableSet.of(TEST_CURRENT_PAGE_EXCLUSION + "-other", "parent");
+        context.create().resource(TEST_LIVE_COPY_PATH + "/parent-page");
+
+        assertTrue(fixture.isAvailableForSync(TEST_LIVE_COPY_PATH, TEST_PARENT_SYNC_PATH,
+                TEST_LIVE_COPY_PATH + TEST_PARENT_SYNC_PATH, exclusions, context.resourceResolver()));
+    }
+
+    @Test
+    void onChange_LiveSyncConfigChanged_ExclusionsRecompiled() {
+        context.create().resource(TEST_LIVE_COPY_PATH);
+        fixture.isAvailableForSync(TEST_LIVE_COPY_PATH, TEST_SYNC_PATH, TEST_LIVE_COPY_PATH + TEST_SYNC_PATH,
+                ImmutableSet.of(TEST_CURRENT_PAGE_EXCLUSION), context.resourceResolver());
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED,
+                TEST_LIVE_COPY_PATH + "/jcr:content/cq:LiveSyncConfig", false)));
+
+        assertTrue(fixture.isAvailableForSync(TEST_LIVE_COPY_PATH, TEST_SYNC_PATH, TEST_LIVE_COPY_PATH + TEST_SYNC_PATH,
+                ImmutableSet.of(TEST_OTHER_PAGE_EXCLUSION), context.resourceResolver()));
+    }
+
+    @Test
+    void onChange_ExternalLiveSyncConfigChanged_ExclusionsRecompiled() {
+        context.create().resource(TEST_LIVE_COPY_PATH);
+        assertFalse(fixture.isAvailableForSync(TEST_LIVE_COPY_PATH, TEST_SYNC_PATH, TEST_LIVE_COPY_PATH + TEST_SYNC_PATH,
+                ImmutableSet.of(TEST_CURRENT_PAGE_EXCLUSION), context.resourceResolver()));
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED,
+                TEST_LIVE_COPY_PATH + "/jcr:content/cq:LiveSyncConfig", true)));
+
+        assertTrue(fixture.isAvailableForSync(TEST_LIVE_COPY_PATH, TEST_SYNC_PATH, TEST_LIVE_COPY_PATH + TEST_SYNC_PATH,
+                ImmutableSet.of(TEST_OTHER_PAGE_EXCLUSION), context.resourceResolver()));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.exadel.etoolbox.rolloutmanager.core.models.LiveCopyRelationship;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+class RelationshipIndexServiceImplTest {
+    private static final String ENABLED_PROPERTY = "enabled";
+
+    private static final String TEST_BLUEPRINT_PATH = "/content/my-site/language-masters/en";
+    private static final String TEST_SOURCE_PATH = TEST_BLUEPRINT_PATH + "/testResource";
+    private static final String TEST_DEEP_LIVE_COPY_PATH = "/content/my-site/fr/en";
+    private static final String TEST_SHALLOW_LIVE_COPY_PATH = "/content/my-site/de/en";
+
+    private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
+
+    @Mock
+    private LiveRelationshipManager liveRelationshipManager;
+
+    @BeforeEach
+    void setup() {
+        context.registerService(LiveRelationshipManager.class, liveRelationshipManager);
+        context.create().resource(TEST_DEEP_LIVE_COPY_PATH);
+        context.create().resource(TEST_SHALLOW_LIVE_COPY_PATH);
+
+        context.create().resource(RelationshipIndexServiceImpl.INDEX_PATH, "built", Calendar.getInstance());
+        context.create().resource(RelationshipIndexServiceImpl.INDEX_PATH + TEST_DEEP_LIVE_COPY_PATH,
+                "blueprintPath", TEST_BLUEPRINT_PATH,
+                "liveCopyPath", TEST_DEEP_LIVE_COPY_PATH,
+                "deep", true,
+                "exclusions", new String[0],
+                "autoRolloutTrigger", true);
+        context.create().resource(RelationshipIndexServiceImpl.INDEX_PATH + TEST_SHALLOW_LIVE_COPY_PATH,
+                "blueprintPath", TEST_BLUEPRINT_PATH,
+                "liveCopyPath", TEST_SHALLOW_LIVE_COPY_PATH,
+                "deep", false,
+                "exclusions", new String[0],
+                "autoRolloutTrigger", false);
+    }
+
+    @Test
+    void getRelationships_Disabled_Empty() {
+        RelationshipIndexServiceImpl fixture = context.registerInjectActivateService(new RelationshipIndexServiceImpl());
+
+        assertFalse(fixture.getRelationships(TEST_BLUEPRINT_PATH, context.resourceResolver()).isPresent());
+    }
+
+    @Test
+    void getRelationships_ChildPage_DeepLiveCopiesReturned() {
+        RelationshipIndexServiceImpl fixture = context.registerInjectActivateService(new RelationshipIndexServiceImpl(),
+                ENABLED_PROPERTY, true);
+
+        Optional<List<LiveCopyRelationship>> relationships =
+                fixture.getRelationships(TEST_SOURCE_PATH, context.resourceResolver());
+
+        assertTrue(relationships.isPresent());
+        assertEquals(1, relationships.get().size());
+        LiveCopyRelationship relationship = relationships.get().get(0);
+        assertEquals(TEST_DEEP_LIVE_COPY_PATH, relationship.getLiveCopyPath());
+        assertEquals("/testResource", relationship.getSyncPath());
+        assertEquals(TEST_DEEP_LIVE_COPY_PATH + "/testResource", relationship.getTargetPath());
+        assertTrue(relationship.isAutoRolloutTrigger());
+    }
+
+    @Test
+    void getRelationships_NotIndexedPath_Empty() {
+        RelationshipIndexServiceImpl fixture = context.registerInjectActivateService(new RelationshipIndexServiceImpl(),
+                ENABLED_PROPERTY, true);
+
+        assertFalse(fixture.getRelationships("/content/my-site/fr/en/testResource", context.resourceResolver())
+                .isPresent());
+    }
+
+    @Test
+    void onChange_LiveCopyRemoved_EntryRemoved() {
+        RelationshipIndexServiceImpl fixture = context.registerInjectActivateService(new RelationshipIndexServiceImpl(),
+                ENABLED_PROPERTY, true);
+        assertEquals(2, fixture.getRelationships(TEST_BLUEPRINT_PATH, context.resourceResolver())
+                .map(List::size)
+                .orElse(0));
+
+        fixture.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.REMOVED, TEST_SHALLOW_LIVE_COPY_PATH, false)));
+
+        assertEquals(1, fixture.getRelationships(TEST_BLUEPRINT_PATH, context.resourceResolver())
+                .map(List::size)
+                .orElse(0));
+    }
+
+    @Test
+    void onChange_AncestorPageRemoved_EntriesRemoved() {
+        RelationshipIndexServiceImpl fixture = context.registerInjectActivateService(new RelationshipIndexServiceImpl(),
+                ENABLED_PROPERTY, true);
+
+        fixture.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.REMOVED, "/content/my-site/de", false)));
+
+        assertEquals(1, fixture.getRelationships(TEST_BLUEPRINT_PATH, context.resourceResolver())
+                .map(List::size)
+                .orElse(0));
+    }
+
+    @Test
+    void onChange_NotLiveCopyPageAdded_Ignored() {
+        RelationshipIndexServiceImpl fixture = context.registerInjectActivateService(new RelationshipIndexServiceImpl(),
+                ENABLED_PROPERTY, true);
+        context.create().resource(TEST_SOURCE_PATH);
+
+        fixture.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.ADDED, TEST_SOURCE_PATH, false)));
+
+        verifyNoInteractions(liveRelationshipManager);
+        assertEquals(2, fixture.getRelationships(TEST_BLUEPRINT_PATH, context.resourceResolver())
+                .map(List::size)
+                .orElse(0));
+    }
+
+    @Test
+    void onChange_ExternalIndexChange_IndexReread() throws PersistenceException {
+        RelationshipIndexServiceImpl fixture = context.registerInjectActivateService(new RelationshipIndexServiceImpl(),
+                ENABLED_PROPERTY, true);
+        assertEquals(2, fixture.getRelationships(TEST_BLUEPRINT_PATH, context.resourceResolver())
+                .map(List::size)
+                .orElse(0));
+        String entryPath = RelationshipIndexServiceImpl.INDEX_PATH + TEST_SHALLOW_LIVE_COPY_PATH;
+        context.resourceResolver().delete(context.resourceResolver().getResource(entryPath));
+        context.resourceResolver().commit();
+
+        fixture.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.REMOVED, entryPath, true)));
+
+        assertEquals(1, fixture.getRelationships(TEST_BLUEPRINT_PATH, context.resourceResolver())
+                .map(List::size)
+                .orElse(0));
+    }
+
+    @Test
+    void onChange_ExternalContentChange_Ignored() {
+        RelationshipIndexServiceImpl fixture = context.registerInjectActivateService(new RelationshipIndexServiceImpl(),
+                ENABLED_PROPERTY, true);
+
+        fixture.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.REMOVED, TEST_SHALLOW_LIVE_COPY_PATH, true)));
+
+        assertEquals(2, fixture.getRelationships(TEST_BLUEPRINT_PATH, context.resourceResolver())
+                .map(List::size)
+                .orElse(0));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutAdmission;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class RolloutAdmissionServiceImplTest {
+    private static final String MAX_CONCURRENT_ROLLOUTS_PROPERTY = "maxConcurrentRollouts";
+    private static final String QUEUE_SIZE_PROPERTY = "queueSize";
+    private static final String MAX_WAIT_PROPERTY = "maxWait";
+    private static final String RETRY_AFTER_PROPERTY = "retryAfter";
+
+    private static final long WAIT_TIMEOUT_SECONDS = 5L;
+
+    private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
+
+    @BeforeEach
+    void setup() {
+        context.registerInjectActivateService(new RolloutMetricsImpl());
+    }
+
+    @Test
+    void admit_NoLimit_Admitted() {
+        RolloutAdmissionServiceImpl fixture = context.registerInjectActivateService(new RolloutAdmissionServiceImpl());
+
+        try (RolloutAdmission first = fixture.admit(); RolloutAdmission second = fixture.admit()) {
+            assertTrue(first.isAdmitted());
+            assertTrue(second.isAdmitted());
+            assertEquals(2, fixture.getRunningCount());
+        }
+        assertEquals(0, fixture.getRunningCount());
+    }
+
+    @Test
+    void admit_QueueFull_RejectedWithRetryHint() {
+        RolloutAdmissionServiceImpl fixture = context.registerInjectActivateService(new RolloutAdmissionServiceImpl(),
+                MAX_CONCURRENT_ROLLOUTS_PROPERTY, 1,
+                QUEUE_SIZE_PROPERTY, 0,
+                RETRY_AFTER_PROPERTY, 10L);
+
+        RolloutAdmission running = fixture.admit();
+        RolloutAdmission rejected = fixture.admit();
+        assertTrue(running.isAdmitted());
+        assertFalse(rejected.isAdmitted());
+        assertEquals(1, rejected.getQueuePosition());
+        assertEquals(10L, rejected.getRetryAfter());
+
+        running.close();
+        // Closing the admission again doesn't release an extra slot
+        running.close();
+        try (RolloutAdmission next = fixture.admit(); RolloutAdmission overLimit = fixture.admit()) {
+            assertTrue(next.isAdmitted());
+            assertFalse(overLimit.isAdmitted());
+        }
+    }
+
+    @Test
+    void admit_SlotReleasedWhileQueued_Admitted()
+            throws InterruptedException, ExecutionException, TimeoutException {
+        RolloutAdmissionServiceImpl fixture = context.registerInjectActivateService(new RolloutAdmissionServiceImpl(),
+                MAX_CONCURRENT_ROLLOUTS_PROPERTY, 1,
+                QUEUE_SIZE_PROPERTY, 1,
+                MAX_WAIT_PROPERTY, WAIT_TIMEOUT_SECONDS);
+        RolloutAdmission running = fixture.admit();
+
+        CompletableFuture<RolloutAdmission> queued = CompletableFuture.supplyAsync(fixture::admit);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_TIMEOUT_SECONDS);
+        while (fixture.getWaitingCount() == 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10L);
+        }
+        assertEquals(1, fixture.getWaitingCount());
+        running.close();
+
+        try (RolloutAdmission admission = queued.get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            assertTrue(admission.isAdmitted());
+            assertEquals(0, fixture.getWaitingCount());
+        }
+    }
+}
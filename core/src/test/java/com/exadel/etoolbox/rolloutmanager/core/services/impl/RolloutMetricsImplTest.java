@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.exadel.etoolbox.rolloutmanager.core.models.MetricStatistics;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RolloutMetricsImplTest {
+    private static final double DELTA = 0.001;
+
+    private RolloutMetricsImpl fixture;
+
+    @BeforeEach
+    void setup() {
+        fixture = new RolloutMetricsImpl();
+    }
+
+    @Test
+    void recordTime_DurationsRecorded_StatisticsInMilliseconds() {
+        for (int i = 1; i <= 100; i++) {
+            fixture.recordTime(RolloutMetrics.TARGET_ROLLOUT, TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        MetricStatistics statistics = fixture.getTimers().get(RolloutMetrics.TARGET_ROLLOUT);
+        assertEquals(100, statistics.getCount());
+        assertEquals(50.5, statistics.getMean(), DELTA);
+        assertEquals(100, statistics.getMax(), DELTA);
+        assertEquals(50, statistics.getP50(), DELTA);
+        assertEquals(100, statistics.getP99(), DELTA);
+    }
+
+    @Test
+    void recordValue_ValueAboveBucketBound_PercentileCappedByMax() {
+        fixture.recordValue(RolloutMetrics.COLLECTED_LIVE_COPIES, 3);
+        fixture.recordValue(RolloutMetrics.COLLECTED_LIVE_COPIES, 7);
+
+        MetricStatistics statistics = fixture.getHistograms().get(RolloutMetrics.COLLECTED_LIVE_COPIES);
+        assertEquals(2, statistics.getCount());
+        assertEquals(5, statistics.getP50(), DELTA);
+        assertEquals(7, statistics.getP99(), DELTA);
+    }
+
+    @Test
+    void increment_CounterIncremented() {
+        fixture.increment(RolloutMetrics.TARGET_ROLLOUT_FAILED);
+        fixture.increment(RolloutMetrics.TARGET_ROLLOUT_FAILED);
+
+        assertEquals(2L, fixture.getCounters().get(RolloutMetrics.TARGET_ROLLOUT_FAILED));
+    }
+
+    @Test
+    void registerGauge_CurrentValueReported() {
+        int[] queueDepth = {1};
+        fixture.registerGauge(RolloutMetrics.REPLICATION_QUEUE_DEPTH, () -> queueDepth[0]);
+        queueDepth[0] = 5;
+
+        assertEquals(5L, fixture.getGauges().get(RolloutMetrics.REPLICATION_QUEUE_DEPTH));
+
+        fixture.unregisterGauge(RolloutMetrics.REPLICATION_QUEUE_DEPTH);
+        assertTrue(fixture.getGauges().isEmpty());
+    }
+
+    @Test
+    void resetMetrics_GaugesKept() {
+        fixture.recordTime(RolloutMetrics.ROLLOUT_REQUEST, 1L);
+        fixture.increment(RolloutMetrics.TARGET_ROLLOUT_SUCCEEDED);
+        fixture.registerGauge(RolloutMetrics.REPLICATION_ACTIVE_THREADS, () -> 1L);
+
+        fixture.resetMetrics();
+
+        assertTrue(fixture.getTimers().isEmpty());
+        assertTrue(fixture.getCounters().isEmpty());
+        assertEquals(1L, fixture.getGauges().get(RolloutMetrics.REPLICATION_ACTIVE_THREADS));
+    }
+}
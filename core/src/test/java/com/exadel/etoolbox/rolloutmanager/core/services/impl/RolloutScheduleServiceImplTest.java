@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.exadel.etoolbox.rolloutmanager.core.jobs.RolloutJobConsumer;
+import com.exadel.etoolbox.rolloutmanager.core.models.ExecutionWindow;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.sling.event.jobs.JobBuilder;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.ScheduledJobInfo;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+class RolloutScheduleServiceImplTest {
+    private static final String SELECTED_LIVECOPIES_JSON =
+            "src/test/resources/com/exadel/etoolbox/rolloutmanager/core/servlets/rollout-selected-items.json";
+    private static final String EXECUTION_WINDOWS_PROPERTY = "executionWindows";
+    private static final ZoneId TEST_ZONE = ZoneOffset.UTC;
+    private static final LocalDateTime TEST_NOW = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
+
+    @Mock
+    private JobManager jobManager;
+
+    private RolloutItem[] rolloutItems;
+
+    @BeforeEach
+    void setup() throws IOException {
+        context.registerService(JobManager.class, jobManager);
+        rolloutItems = new ObjectMapper().readValue(new File(SELECTED_LIVECOPIES_JSON), RolloutItem[].class);
+    }
+
+    @Test
+    void getExecutionWindow_NestedSiteRoots_LongestSiteRootMatched() {
+        RolloutScheduleServiceImpl fixture = createFixture("/content=22:00-06:00", "/content/we-retail=01:00-05:00");
+
+        Optional<ExecutionWindow> window = fixture.getExecutionWindow(rolloutItems);
+
+        assertTrue(window.isPresent());
+        assertEquals("/content/we-retail", window.get().getSiteRoot());
+    }
+
+    @Test
+    void getExecutionWindow_TargetsInDifferentWindows_Empty() {
+        RolloutScheduleServiceImpl fixture = createFixture("/content=22:00-06:00", "/content/we-retail/ca=01:00-05:00");
+
+        assertFalse(fixture.getExecutionWindow(rolloutItems).isPresent());
+    }
+
+    @Test
+    void getExecutionWindow_DifferentSiteRootsSameHours_Shared() {
+        RolloutScheduleServiceImpl fixture = createFixture("/content=22:00-06:00", "/content/we-retail/ca=22:00-06:00");
+
+        Optional<ExecutionWindow> window = fixture.getExecutionWindow(rolloutItems);
+
+        assertTrue(window.isPresent());
+        assertEquals("22:00", window.get().getStart().toString());
+        assertEquals("06:00", window.get().getEnd().toString());
+    }
+
+    @Test
+    void schedule_WindowClosed_JobScheduledAtWindowStart() {
+        RolloutScheduleServiceImpl fixture = createFixture("/content=22:00-06:00");
+        ExecutionWindow window = fixture.getExecutionWindow(rolloutItems).orElseThrow(IllegalStateException::new);
+        JobBuilder jobBuilder = mock(JobBuilder.class);
+        JobBuilder.ScheduleBuilder scheduleBuilder = mock(JobBuilder.ScheduleBuilder.class);
+        Date expectedStart = Date.from(TEST_NOW.withHour(22).atZone(TEST_ZONE).toInstant());
+        when(jobManager.createJob(RolloutJobConsumer.SCHEDULED_TOPIC)).thenReturn(jobBuilder);
+        when(jobBuilder.properties(anyMap())).thenReturn(jobBuilder);
+        when(jobBuilder.schedule()).thenReturn(scheduleBuilder);
+        when(scheduleBuilder.at(expectedStart)).thenReturn(scheduleBuilder);
+        when(scheduleBuilder.add()).thenReturn(mock(ScheduledJobInfo.class));
+
+        Map<String, Object> jobProperties = Collections.singletonMap(RolloutJobConsumer.IS_DEEP_ROLLOUT_PROPERTY, true);
+        Optional<Calendar> startTime = fixture.schedule(window, jobProperties);
+
+        assertFalse(fixture.isOpen(window));
+        assertTrue(startTime.isPresent());
+        assertEquals(expectedStart, startTime.get().getTime());
+        verify(jobBuilder).properties(jobProperties);
+    }
+
+    @Test
+    void schedule_WindowOpen_JobAddedRightAway() {
+        RolloutScheduleServiceImpl fixture = createFixture("/content=09:00-18:00");
+        ExecutionWindow window = fixture.getExecutionWindow(rolloutItems).orElseThrow(IllegalStateException::new);
+        Map<String, Object> jobProperties = Collections.emptyMap();
+
+        fixture.schedule(window, jobProperties);
+
+        assertTrue(fixture.isOpen(window));
+        verify(jobManager).addJob(RolloutJobConsumer.SCHEDULED_TOPIC, jobProperties);
+    }
+
+    @Test
+    void activate_InvalidExecutionWindow_Ignored() {
+        RolloutScheduleServiceImpl fixture = createFixture("/content=10pm-6am");
+
+        assertFalse(fixture.getExecutionWindow(rolloutItems).isPresent());
+        verifyNoInteractions(jobManager);
+    }
+
+    private RolloutScheduleServiceImpl createFixture(String... executionWindows) {
+        RolloutScheduleServiceImpl fixture = context.registerInjectActivateService(new RolloutScheduleServiceImpl(),
+                EXECUTION_WINDOWS_PROPERTY, executionWindows);
+        fixture.clock = Clock.fixed(TEST_NOW.atZone(TEST_ZONE).toInstant(), TEST_ZONE);
+        return fixture;
+    }
+}
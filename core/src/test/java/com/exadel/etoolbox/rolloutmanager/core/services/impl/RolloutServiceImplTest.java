@@ -0,0 +1,290 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.impl;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.WCMException;
+import com.day.cq.wcm.msm.api.LiveRelationship;
+import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.day.cq.wcm.msm.api.MSMNameConstants;
+import com.day.cq.wcm.msm.api.RolloutManager;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutItem;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.jackrabbit.commons.iterator.RangeIteratorAdapter;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+class RolloutServiceImplTest {
+    private static final String SELECTED_LIVECOPIES_JSON =
+            "src/test/resources/com/exadel/etoolbox/rolloutmanager/core/servlets/rollout-selected-items.json";
+    private static final int EXPECTED_ROLLOUTS_COUNT = 6;
+    private static final int EXPECTED_BATCHES_COUNT = 3;
+
+    private static final String PARALLEL_ROLLOUT_PROPERTY = "parallelRollout";
+    private static final String POOL_SIZE_PROPERTY = "poolSize";
+    private static final String QUEUE_CAPACITY_PROPERTY = "queueCapacity";
+    private static final String BATCH_ROLLOUT_PROPERTY = "batchRollout";
+    private static final String CHUNKED_DEEP_ROLLOUT_PROPERTY = "chunkedDeepRollout";
+    private static final String CHUNK_SIZE_PROPERTY = "chunkSize";
+    private static final String INCREMENTAL_ROLLOUT_PROPERTY = "incrementalRollout";
+
+    private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
+
+    @Mock
+    private RolloutManager rolloutManager;
+
+    @Mock
+    private LiveRelationshipManager liveRelationshipManager;
+
+    @Mock
+    private ResourceResolver resourceResolver;
+
+    @Mock
+    private ResourceResolver workerResourceResolver;
+
+    @Mock
+    private PageManager pageManager;
+
+    private RolloutServiceImpl fixture;
+
+    private RolloutItem[] rolloutItems;
+
+    @BeforeEach
+    void setup() throws IOException, LoginException {
+        context.registerService(RolloutManager.class, rolloutManager);
+        context.registerService(LiveRelationshipManager.class, liveRelationshipManager);
+        context.registerInjectActivateService(new RolloutMetricsImpl());
+        fixture = context.registerInjectActivateService(new RolloutServiceImpl(),
+                PARALLEL_ROLLOUT_PROPERTY, true,
+                POOL_SIZE_PROPERTY, 2);
+
+        rolloutItems = new ObjectMapper().readValue(new File(SELECTED_LIVECOPIES_JSON), RolloutItem[].class);
+
+        when(resourceResolver.adaptTo(PageManager.class)).thenReturn(pageManager);
+        when(resourceResolver.clone(null)).thenReturn(workerResourceResolver);
+        when(workerResourceResolver.adaptTo(PageManager.class)).thenReturn(pageManager);
+        when(pageManager.getPage(anyString())).thenReturn(mock(Page.class));
+    }
+
+    @Test
+    void rolloutItems_Parallel_CommittedByWorkers() throws WCMException, PersistenceException {
+        when(workerResourceResolver.hasChanges()).thenReturn(true);
+
+        List<RolloutStatus> statuses = fixture.rolloutItems(rolloutItems, resourceResolver, false);
+
+        assertEquals(EXPECTED_ROLLOUTS_COUNT, statuses.size());
+        assertTrue(statuses.stream().allMatch(RolloutStatus::isSuccess));
+        verify(rolloutManager, times(EXPECTED_ROLLOUTS_COUNT)).rollout(any(RolloutManager.RolloutParams.class));
+        verify(workerResourceResolver, times(EXPECTED_ROLLOUTS_COUNT)).commit();
+        verify(workerResourceResolver, times(EXPECTED_ROLLOUTS_COUNT)).close();
+        verify(resourceResolver).refresh();
+    }
+
+    @Test
+    void rolloutItems_ParallelCommitException_FailedStatuses() throws PersistenceException {
+        when(workerResourceResolver.hasChanges()).thenReturn(true);
+        doThrow(new PersistenceException("Failed to commit")).when(workerResourceResolver).commit();
+
+        List<RolloutStatus> statuses = fixture.rolloutItems(rolloutItems, resourceResolver, false);
+
+        assertEquals(EXPECTED_ROLLOUTS_COUNT, statuses.size());
+        assertFalse(statuses.stream().anyMatch(RolloutStatus::isSuccess));
+        verify(workerResourceResolver, times(EXPECTED_ROLLOUTS_COUNT)).revert();
+    }
+
+    @Test
+    void rolloutItems_ReconfiguredQueueFull_RolledOutByCaller() throws WCMException, PersistenceException {
+        when(workerResourceResolver.hasChanges()).thenReturn(true);
+        MockOsgi.modified(fixture, context.bundleContext(),
+                PARALLEL_ROLLOUT_PROPERTY, true,
+                POOL_SIZE_PROPERTY, 1,
+                QUEUE_CAPACITY_PROPERTY, 1);
+
+        List<RolloutStatus> statuses = fixture.rolloutItems(rolloutItems, resourceResolver, false);
+
+        assertEquals(EXPECTED_ROLLOUTS_COUNT, statuses.size());
+        assertTrue(statuses.stream().allMatch(RolloutStatus::isSuccess));
+        verify(rolloutManager, times(EXPECTED_ROLLOUTS_COUNT)).rollout(any(RolloutManager.RolloutParams.class));
+        verify(workerResourceResolver, times(EXPECTED_ROLLOUTS_COUNT)).commit();
+    }
+
+    @Test
+    void rolloutItems_Batch_SingleCallPerMaster() throws WCMException, PersistenceException {
+        RolloutServiceImpl batchFixture = createBatchFixture();
+        when(workerResourceResolver.hasChanges()).thenReturn(true);
+
+        List<RolloutStatus> statuses = batchFixture.rolloutItems(rolloutItems, resourceResolver, false);
+
+        assertEquals(EXPECTED_ROLLOUTS_COUNT, statuses.size());
+        assertTrue(statuses.stream().allMatch(RolloutStatus::isSuccess));
+        ArgumentCaptor<RolloutManager.RolloutParams> params = ArgumentCaptor.forClass(RolloutManager.RolloutParams.class);
+        verify(rolloutManager, times(EXPECTED_BATCHES_COUNT)).rollout(params.capture());
+        assertTrue(params.getAllValues().stream().allMatch(batchParams -> batchParams.targets.length == 2));
+        verify(workerResourceResolver, times(EXPECTED_BATCHES_COUNT)).commit();
+    }
+
+    @Test
+    void rolloutItems_BatchException_RolledOutOneByOne() throws WCMException {
+        RolloutServiceImpl batchFixture = createBatchFixture();
+        doAnswer(invocation -> {
+            if (invocation.<RolloutManager.RolloutParams>getArgument(0).targets.length > 1) {
+                throw new WCMException("Failed to rollout batch");
+            }
+            return null;
+        }).when(rolloutManager).rollout(any(RolloutManager.RolloutParams.class));
+
+        List<RolloutStatus> statuses = batchFixture.rolloutItems(rolloutItems, resourceResolver, false);
+
+        assertEquals(EXPECTED_ROLLOUTS_COUNT, statuses.size());
+        assertTrue(statuses.stream().allMatch(RolloutStatus::isSuccess));
+        verify(rolloutManager, times(EXPECTED_BATCHES_COUNT + EXPECTED_ROLLOUTS_COUNT))
+                .rollout(any(RolloutManager.RolloutParams.class));
+    }
+
+    private RolloutServiceImpl createBatchFixture() {
+        return context.registerInjectActivateService(new RolloutServiceImpl(),
+                PARALLEL_ROLLOUT_PROPERTY, true,
+                POOL_SIZE_PROPERTY, 2,
+                BATCH_ROLLOUT_PROPERTY, true);
+    }
+
+    @Test
+    void rolloutItems_ChunkedDeep_CommittedPerChunk() throws WCMException, PersistenceException {
+        RolloutServiceImpl chunkedFixture = context.registerInjectActivateService(new RolloutServiceImpl(),
+                PARALLEL_ROLLOUT_PROPERTY, true,
+                POOL_SIZE_PROPERTY, 1,
+                CHUNKED_DEEP_ROLLOUT_PROPERTY, true,
+                CHUNK_SIZE_PROPERTY, 2);
+        RolloutItem item = rolloutItems[0];
+        Page masterPage = pageManager.getPage(item.getMaster());
+        Page syncedChild = mockPage(item.getMaster() + "/synced");
+        Page excludedChild = mockPage(item.getMaster() + "/excluded");
+        Page nestedChild = mockPage(item.getMaster() + "/synced/nested");
+        stubPage(masterPage, item.getMaster(), syncedChild, excludedChild);
+        when(syncedChild.listChildren()).thenReturn(Collections.singletonList(nestedChild).iterator());
+        when(nestedChild.listChildren()).thenReturn(Collections.emptyIterator());
+        when(liveRelationshipManager.getLiveRelationships(any(Resource.class), anyString(), isNull()))
+                .thenAnswer(invocation -> {
+                    String targetPath = invocation.getArgument(1);
+                    if (targetPath.endsWith("/excluded")) {
+                        return new RangeIteratorAdapter(Collections.emptyIterator());
+                    }
+                    LiveRelationship relationship = mock(LiveRelationship.class);
+                    when(relationship.getTargetPath()).thenReturn(targetPath);
+                    return new RangeIteratorAdapter(Collections.singletonList(relationship).iterator());
+                });
+
+        List<RolloutStatus> statuses = chunkedFixture.rolloutItems(new RolloutItem[]{item}, resourceResolver, true);
+
+        assertEquals(1, statuses.size());
+        assertTrue(statuses.get(0).isSuccess());
+        // The master page, the synced child and the nested child, the excluded child is skipped
+        verify(rolloutManager, times(3)).rollout(eq(workerResourceResolver), any(LiveRelationship.class), eq(false), eq(false));
+        verify(rolloutManager, never()).rollout(any(RolloutManager.RolloutParams.class));
+        verify(workerResourceResolver, times(2)).commit();
+    }
+
+    @Test
+    void rolloutItems_IncrementalTargetUpToDate_Skipped() throws WCMException {
+        RolloutServiceImpl incrementalFixture = context.registerInjectActivateService(new RolloutServiceImpl(),
+                PARALLEL_ROLLOUT_PROPERTY, true,
+                POOL_SIZE_PROPERTY, 1,
+                INCREMENTAL_ROLLOUT_PROPERTY, true);
+        RolloutItem upToDateItem = rolloutItems[0];
+        RolloutItem changedItem = rolloutItems[1];
+        Calendar lastModified = Calendar.getInstance();
+        Calendar lastRolledOut = (Calendar) lastModified.clone();
+        lastRolledOut.add(Calendar.MINUTE, 1);
+        Page masterPage = mock(Page.class);
+        Page upToDatePage = mock(Page.class);
+        Page changedPage = mock(Page.class);
+        when(masterPage.getLastModified()).thenReturn(lastModified);
+        when(masterPage.getProperties()).thenReturn(ValueMap.EMPTY);
+        when(upToDatePage.getProperties()).thenReturn(new ValueMapDecorator(
+                Collections.singletonMap(MSMNameConstants.PN_LAST_ROLLEDOUT, lastRolledOut)));
+        when(changedPage.getProperties()).thenReturn(ValueMap.EMPTY);
+        when(pageManager.getPage(upToDateItem.getMaster())).thenReturn(masterPage);
+        when(pageManager.getPage(upToDateItem.getTarget())).thenReturn(upToDatePage);
+        when(pageManager.getPage(changedItem.getTarget())).thenReturn(changedPage);
+
+        List<RolloutStatus> statuses = incrementalFixture.rolloutItems(
+                new RolloutItem[]{upToDateItem, changedItem}, resourceResolver, false);
+
+        assertEquals(2, statuses.size());
+        assertTrue(statuses.stream().allMatch(RolloutStatus::isSuccess));
+        assertTrue(statuses.stream()
+                .filter(status -> upToDateItem.getTarget().equals(status.getTarget()))
+                .allMatch(RolloutStatus::isSkipped));
+        assertFalse(statuses.stream()
+                .filter(status -> changedItem.getTarget().equals(status.getTarget()))
+                .anyMatch(RolloutStatus::isSkipped));
+        verify(rolloutManager).rollout(any(RolloutManager.RolloutParams.class));
+    }
+
+    private Page mockPage(String path) {
+        Page page = mock(Page.class);
+        Resource resource = mock(Resource.class);
+        when(page.getPath()).thenReturn(path);
+        when(page.adaptTo(Resource.class)).thenReturn(resource);
+        return page;
+    }
+
+    private void stubPage(Page page, String path, Page... children) {
+        Resource resource = mock(Resource.class);
+        when(resource.getResourceResolver()).thenReturn(workerResourceResolver);
+        when(page.getPath()).thenReturn(path);
+        when(page.adaptTo(Resource.class)).thenReturn(resource);
+        when(page.listChildren()).thenReturn(Arrays.asList(children).iterator());
+    }
+}
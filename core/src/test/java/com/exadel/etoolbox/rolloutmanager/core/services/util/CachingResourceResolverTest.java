@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.services.util;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class CachingResourceResolverTest {
+    private static final String TEST_PAGE_PATH = "/content/my-site/fr/en";
+    private static final String TEST_ABSENT_PAGE_PATH = "/content/my-site/de/en";
+    private static final String TEST_PROPERTY = "testProperty";
+
+    private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
+
+    private CachingResourceResolver fixture;
+
+    @BeforeEach
+    void setup() {
+        context.create().resource(TEST_PAGE_PATH, TEST_PROPERTY, "value");
+        fixture = new CachingResourceResolver(context.resourceResolver());
+    }
+
+    @Test
+    void exists_RepeatedLookups_ReadOnce() {
+        assertTrue(fixture.exists(TEST_PAGE_PATH));
+        assertTrue(fixture.exists(TEST_PAGE_PATH));
+        assertFalse(fixture.exists(TEST_ABSENT_PAGE_PATH));
+        assertFalse(fixture.exists(TEST_ABSENT_PAGE_PATH));
+
+        assertEquals(2, fixture.getMissCount());
+        assertEquals(2, fixture.getHitCount());
+    }
+
+    @Test
+    void getValueMap_AbsentResource_EmptyValueMap() {
+        assertEquals("value", fixture.getValueMap(TEST_PAGE_PATH).get(TEST_PROPERTY, String.class));
+        assertTrue(fixture.getValueMap(TEST_ABSENT_PAGE_PATH).isEmpty());
+    }
+}
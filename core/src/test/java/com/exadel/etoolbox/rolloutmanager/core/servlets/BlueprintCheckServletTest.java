@@ -17,11 +17,17 @@ package com.exadel.etoolbox.rolloutmanager.core.servlets;
 import com.day.cq.wcm.api.WCMException;
 import com.day.cq.wcm.msm.api.LiveRelationship;
 import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.exadel.etoolbox.rolloutmanager.core.models.LiveCopyRelationship;
+import com.exadel.etoolbox.rolloutmanager.core.services.BlueprintCheckCache;
 import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipCheckerService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipIndexService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
 import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
@@ -34,9 +40,15 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import javax.jcr.RangeIterator;
 import javax.json.Json;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -44,9 +56,12 @@ import static org.mockito.Mockito.when;
 @ExtendWith({AemContextExtension.class, MockitoExtension.class})
 class BlueprintCheckServletTest {
     private static final String PATH_REQUEST_PARAM = "path";
+    private static final String PATHS_REQUEST_PARAM = "paths";
     private static final String IS_AVAILABLE_FOR_ROLLOUT_PARAM = "isAvailableForRollout";
 
     private static final String TEST_RESOURCE_PATH = "/content/my-site/en/testResource";
+    private static final String TEST_ABSENT_RESOURCE_PATH = "/content/my-site/en/absentResource";
+    private static final String TEST_LIVE_COPY_PATH = "/content/my-site/fr/testResource";
 
     private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
 
@@ -56,6 +71,15 @@ class BlueprintCheckServletTest {
     @Mock
     private RelationshipCheckerService relationshipCheckerService;
 
+    @Mock
+    private BlueprintCheckCache blueprintCheckCache;
+
+    @Mock
+    private RelationshipIndexService relationshipIndexService;
+
+    @Mock
+    private RolloutMetrics rolloutMetrics;
+
     @InjectMocks
     private final BlueprintCheckServlet fixture = new BlueprintCheckServlet();
 
@@ -66,6 +90,8 @@ class BlueprintCheckServletTest {
     void setup() {
         request = context.request();
         response = context.response();
+        lenient().when(blueprintCheckCache.isAvailableForRollout(anyString(), anyString(), any(BooleanSupplier.class)))
+                .thenAnswer(invocation -> invocation.getArgument(2, BooleanSupplier.class).getAsBoolean());
     }
 
     @Test
@@ -130,6 +156,25 @@ class BlueprintCheckServletTest {
         assertJsonResponse(false);
     }
 
+    @Test
+    void doPost_IndexedRelationships_MsmApiNotUsed() {
+        context.create().resource(TEST_RESOURCE_PATH);
+        request.addRequestParameter(PATH_REQUEST_PARAM, TEST_RESOURCE_PATH);
+
+        LiveCopyRelationship relationship = new LiveCopyRelationship(TEST_LIVE_COPY_PATH, StringUtils.EMPTY,
+                TEST_LIVE_COPY_PATH, true, Collections.emptySet(), false);
+        when(relationshipIndexService.getRelationships(TEST_RESOURCE_PATH, request.getResourceResolver()))
+                .thenReturn(Optional.of(Collections.singletonList(relationship)));
+        when(relationshipCheckerService.isAvailableForSync(TEST_LIVE_COPY_PATH, StringUtils.EMPTY, TEST_LIVE_COPY_PATH,
+                Collections.emptySet(), request.getResourceResolver()))
+                .thenReturn(true);
+
+        fixture.doPost(request, response);
+
+        assertJsonResponse(true);
+        verifyNoInteractions(liveRelationshipManager);
+    }
+
     @Test
     void doPost_EmptyParams_BadRequest() {
         fixture.doPost(request, response);
@@ -148,6 +193,53 @@ class BlueprintCheckServletTest {
         verifyNoInteractions(liveRelationshipManager);
     }
 
+    @Test
+    void doPost_BulkCheck_PathToResultMap() throws WCMException {
+        context.create().resource(TEST_RESOURCE_PATH);
+        request.addRequestParameter(PATHS_REQUEST_PARAM, TEST_RESOURCE_PATH);
+        request.addRequestParameter(PATHS_REQUEST_PARAM, TEST_ABSENT_RESOURCE_PATH);
+
+        RangeIterator relationships = mock(RangeIterator.class);
+        when(relationships.hasNext()).thenReturn(true);
+        LiveRelationship liveRelationship = mock(LiveRelationship.class);
+        when(relationships.next()).thenReturn(liveRelationship);
+        when(liveRelationshipManager.getLiveRelationships(any(Resource.class), any(), any()))
+                .thenReturn(relationships);
+        when(relationshipCheckerService.isAvailableForSync(eq(liveRelationship), any(ResourceResolver.class)))
+                .thenReturn(true);
+
+        fixture.doPost(request, response);
+
+        String expectedJsonResponse = Json.createObjectBuilder()
+                .add(TEST_RESOURCE_PATH, true)
+                .add(TEST_ABSENT_RESOURCE_PATH, false)
+                .build()
+                .toString();
+        assertEquals(expectedJsonResponse, response.getOutputAsString());
+    }
+
+    @Test
+    void doPost_BulkCheckAboveMaxPaths_ExceedingPathsLeftOut() {
+        context.registerService(LiveRelationshipManager.class, liveRelationshipManager);
+        context.registerService(RelationshipCheckerService.class, relationshipCheckerService);
+        context.registerService(BlueprintCheckCache.class, blueprintCheckCache);
+        context.registerService(RelationshipIndexService.class, relationshipIndexService);
+        context.registerService(RolloutMetrics.class, rolloutMetrics);
+        BlueprintCheckServlet limitedFixture = context.registerInjectActivateService(new BlueprintCheckServlet(),
+                "maxBulkPaths", 1);
+        request.addRequestParameter(PATHS_REQUEST_PARAM, TEST_ABSENT_RESOURCE_PATH);
+        request.addRequestParameter(PATHS_REQUEST_PARAM, TEST_RESOURCE_PATH);
+
+        limitedFixture.doPost(request, response);
+
+        String expectedJsonResponse = Json.createObjectBuilder()
+                .add(TEST_ABSENT_RESOURCE_PATH, false)
+                .build()
+                .toString();
+        assertEquals(expectedJsonResponse, response.getOutputAsString());
+        verifyNoInteractions(liveRelationshipManager);
+    }
+
     private void assertJsonResponse(boolean expectedValue) {
         String expectedJsonResponse = Json.createObjectBuilder()
                 .add(IS_AVAILABLE_FOR_ROLLOUT_PARAM, expectedValue)
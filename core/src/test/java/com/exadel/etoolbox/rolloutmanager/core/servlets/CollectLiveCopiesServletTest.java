@@ -19,11 +19,15 @@ import com.day.cq.wcm.msm.api.LiveCopy;
 import com.day.cq.wcm.msm.api.LiveRelationship;
 import com.day.cq.wcm.msm.api.LiveRelationshipManager;
 import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipCheckerService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RelationshipIndexService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.lang.StringUtils;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
 import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
@@ -35,30 +39,54 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import javax.jcr.RangeIterator;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonReader;
 import javax.json.JsonValue;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith({AemContextExtension.class, MockitoExtension.class})
 class CollectLiveCopiesServletTest {
     private static final String PATH_REQUEST_PARAM = "path";
+    private static final String MAX_DEPTH_REQUEST_PARAM = "maxDepth";
+    private static final String MAX_TREE_DEPTH_PROPERTY = "maxTreeDepth";
+    private static final String PARALLEL_COLLECTION_PROPERTY = "parallelCollection";
+    private static final String PARALLELISM_PROPERTY = "parallelism";
 
-    private static final String TEST_SOURCE_PATH = "/content/my-site/language-masters/en/testResource";
+    private static final String TEST_BLUEPRINT_PATH = "/content/my-site/language-masters/en";
+    private static final String TEST_SOURCE_PATH = TEST_BLUEPRINT_PATH + "/testResource";
     private static final String TEST_SYNC_PATH = "/testResource";
     private static final String TEST_LIVE_COPY_PATH = "/content/my-site/fr/en";
     private static final String TEST_TARGET_PATH = TEST_LIVE_COPY_PATH + TEST_SYNC_PATH;
     private static final String TEST_NESTED_LIVE_COPY_PATH = "/content/my-site/ca/en";
     private static final String TEST_NESTED_TARGET_PATH = TEST_NESTED_LIVE_COPY_PATH + TEST_SYNC_PATH;
+    private static final String TEST_SIBLING_LIVE_COPY_PATH = "/content/my-site/de/en";
+    private static final String TEST_SIBLING_TARGET_PATH = TEST_SIBLING_LIVE_COPY_PATH + TEST_SYNC_PATH;
+    private static final String TEST_SPECIAL_CHARS_SYNC_PATH = "/test \"quoted\" \\ r\u00e9sum\u00e9";
+    private static final String PATH_JSON_FIELD = "path";
 
     private static final String EXPECTED_RESPONSE_JSON =
             "src/test/resources/com/exadel/etoolbox/rolloutmanager/core/servlets/collect-expected-items.json";
@@ -66,6 +94,18 @@ class CollectLiveCopiesServletTest {
     private static final String EXPECTED_EMPTY_RESPONSE_JSON =
             "src/test/resources/com/exadel/etoolbox/rolloutmanager/core/servlets/collect-expected-items-with-no-valid-live-copy.json";
 
+    private static final String EXPECTED_MAX_DEPTH_RESPONSE_JSON =
+            "src/test/resources/com/exadel/etoolbox/rolloutmanager/core/servlets/collect-expected-items-max-depth.json";
+
+    private static final String EXPECTED_TRUNCATED_RESPONSE_JSON =
+            "src/test/resources/com/exadel/etoolbox/rolloutmanager/core/servlets/collect-expected-items-truncated.json";
+
+    private static final String EXPECTED_PARALLEL_RESPONSE_JSON =
+            "src/test/resources/com/exadel/etoolbox/rolloutmanager/core/servlets/collect-expected-items-parallel.json";
+
+    private static final String EXPECTED_PARALLEL_FAILED_RESPONSE_JSON =
+            "src/test/resources/com/exadel/etoolbox/rolloutmanager/core/servlets/collect-expected-items-parallel-failed.json";
+
     private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
 
     @Mock
@@ -74,6 +114,12 @@ class CollectLiveCopiesServletTest {
     @Mock
     private RelationshipCheckerService relationshipCheckerService;
 
+    @Mock
+    private RelationshipIndexService relationshipIndexService;
+
+    @Mock
+    private RolloutMetrics rolloutMetrics;
+
     @InjectMocks
     private final CollectLiveCopiesServlet fixture = new CollectLiveCopiesServlet();
 
@@ -156,7 +202,7 @@ class CollectLiveCopiesServletTest {
         when(relationship.getSyncPath()).thenReturn(TEST_SYNC_PATH);
 
         when(liveCopy.isDeep()).thenReturn(true);
-        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any()))
+        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any(), any()))
                 .thenReturn(false);
 
         fixture.doPost(request, response);
@@ -182,7 +228,7 @@ class CollectLiveCopiesServletTest {
                 any()
         );
 
-        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any()))
+        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any(), any()))
                 .thenReturn(true);
 
         fixture.doPost(request, response);
@@ -192,6 +238,292 @@ class CollectLiveCopiesServletTest {
         assertEquals(expected, response.getOutputAsString());
     }
 
+    @Test
+    void doPost_MaxDepth_NestedLiveCopiesNotCollected() throws WCMException, IOException {
+        createSourceResource();
+        request.addRequestParameter(MAX_DEPTH_REQUEST_PARAM, "0");
+        context.create().resource(TEST_LIVE_COPY_PATH);
+        context.create().resource(TEST_TARGET_PATH);
+
+        mockRelationshipWithTarget(TEST_SOURCE_PATH, TEST_TARGET_PATH, TEST_LIVE_COPY_PATH);
+
+        LiveRelationship nestedRelationship = mockSingleLiveRelationship(TEST_LIVE_COPY_PATH);
+        LiveCopy nestedLiveCopy = mock(LiveCopy.class);
+        when(nestedRelationship.getLiveCopy()).thenReturn(nestedLiveCopy);
+        when(nestedRelationship.getSyncPath()).thenReturn(TEST_SYNC_PATH);
+        when(nestedLiveCopy.isDeep()).thenReturn(true);
+
+        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any(), any()))
+                .thenReturn(true);
+
+        fixture.doPost(request, response);
+
+        String expected = new String(Files.readAllBytes(Paths.get(EXPECTED_MAX_DEPTH_RESPONSE_JSON)))
+                .replaceAll("(\\r|\\n|\\t|\\s)", StringUtils.EMPTY);
+        assertEquals(expected, response.getOutputAsString());
+    }
+
+    @Test
+    void doPost_CyclicRelationships_CollectedOnce() throws WCMException, IOException {
+        createSourceResource();
+        context.create().resource(TEST_LIVE_COPY_PATH);
+        context.create().resource(TEST_TARGET_PATH);
+
+        mockRelationshipWithTarget(TEST_SOURCE_PATH, TEST_TARGET_PATH, TEST_LIVE_COPY_PATH);
+        // The live copy points back to the blueprint
+        mockRelationshipWithTarget(TEST_LIVE_COPY_PATH, TEST_SOURCE_PATH, TEST_BLUEPRINT_PATH);
+
+        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any(), any()))
+                .thenReturn(true);
+
+        fixture.doPost(request, response);
+
+        String expected = new String(Files.readAllBytes(Paths.get(EXPECTED_MAX_DEPTH_RESPONSE_JSON)))
+                .replaceAll("(\\r|\\n|\\t|\\s)", StringUtils.EMPTY);
+        assertEquals(expected, response.getOutputAsString());
+    }
+
+    @Test
+    void doPost_MaxTreeDepthExceeded_TruncatedResponse() throws WCMException, IOException {
+        context.registerService(LiveRelationshipManager.class, liveRelationshipManager);
+        context.registerService(RelationshipCheckerService.class, relationshipCheckerService);
+        context.registerService(RelationshipIndexService.class, relationshipIndexService);
+        context.registerService(RolloutMetrics.class, rolloutMetrics);
+        CollectLiveCopiesServlet limitedFixture = context.registerInjectActivateService(new CollectLiveCopiesServlet(),
+                MAX_TREE_DEPTH_PROPERTY, 0);
+        createSourceResource();
+        context.create().resource(TEST_LIVE_COPY_PATH);
+        context.create().resource(TEST_TARGET_PATH);
+
+        mockRelationshipWithTarget(TEST_SOURCE_PATH, TEST_TARGET_PATH, TEST_LIVE_COPY_PATH);
+        mockRelationshipWithTarget(TEST_LIVE_COPY_PATH, TEST_NESTED_TARGET_PATH, TEST_NESTED_LIVE_COPY_PATH);
+
+        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any(), any()))
+                .thenReturn(true);
+
+        limitedFixture.doPost(request, response);
+
+        String expected = new String(Files.readAllBytes(Paths.get(EXPECTED_TRUNCATED_RESPONSE_JSON)))
+                .replaceAll("(\\r|\\n|\\t|\\s)", StringUtils.EMPTY);
+        assertEquals(expected, response.getOutputAsString());
+    }
+
+    @Test
+    void doPost_SpecialCharactersInPath_EscapedJson() throws WCMException {
+        createSourceResource();
+
+        LiveRelationship relationship = mockSingleLiveRelationship(TEST_SOURCE_PATH);
+        LiveCopy liveCopy = mock(LiveCopy.class);
+        when(relationship.getLiveCopy()).thenReturn(liveCopy);
+        when(relationship.getSyncPath()).thenReturn(TEST_SPECIAL_CHARS_SYNC_PATH);
+        when(relationship.getTargetPath()).thenReturn(TEST_LIVE_COPY_PATH + TEST_SPECIAL_CHARS_SYNC_PATH);
+        when(liveCopy.isDeep()).thenReturn(true);
+        when(liveCopy.getPath()).thenReturn(TEST_LIVE_COPY_PATH);
+
+        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any(), any()))
+                .thenReturn(true);
+
+        fixture.doPost(request, response);
+
+        String output = response.getOutputAsString();
+        assertTrue(output.contains("\\\"quoted\\\" \\\\"));
+        try (JsonReader reader = Json.createReader(new StringReader(output))) {
+            JsonArray items = reader.readArray();
+            assertEquals(1, items.size());
+            assertEquals(TEST_LIVE_COPY_PATH + TEST_SPECIAL_CHARS_SYNC_PATH,
+                    items.getJsonObject(0).getString(PATH_JSON_FIELD));
+        }
+    }
+
+    @Test
+    void doPost_SiblingLiveCopies_WrittenLiveCopyFlushed() throws WCMException {
+        createSiblingResources();
+        request.addRequestParameter(PATH_REQUEST_PARAM, TEST_SOURCE_PATH);
+
+        mockSiblingRelationships();
+        doReturn(mock(RangeIterator.class)).when(liveRelationshipManager).getLiveRelationships(
+                argThat((Resource resource) -> TEST_LIVE_COPY_PATH.equals(resource.getPath())),
+                any(),
+                any()
+        );
+        // The output is captured while the nested live copies of the second live copy are collected
+        AtomicReference<String> flushedOutput = new AtomicReference<>();
+        doAnswer(invocation -> {
+            flushedOutput.set(response.getOutputAsString());
+            return mock(RangeIterator.class);
+        }).when(liveRelationshipManager).getLiveRelationships(
+                argThat((Resource resource) -> TEST_SIBLING_LIVE_COPY_PATH.equals(resource.getPath())),
+                any(),
+                any()
+        );
+
+        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any(), any()))
+                .thenReturn(true);
+
+        fixture.doPost(request, response);
+
+        assertTrue(flushedOutput.get().contains(TEST_TARGET_PATH));
+        assertFalse(flushedOutput.get().contains(TEST_SIBLING_TARGET_PATH));
+        assertTrue(response.getOutputAsString().contains(TEST_SIBLING_TARGET_PATH));
+    }
+
+    @Test
+    void doPost_ResponseFailed_CollectionStopped() throws WCMException, IOException {
+        createSiblingResources();
+        request.addRequestParameter(PATH_REQUEST_PARAM, TEST_SOURCE_PATH);
+
+        mockSiblingRelationships();
+        doReturn(mock(RangeIterator.class)).when(liveRelationshipManager).getLiveRelationships(
+                argThat((Resource resource) -> TEST_LIVE_COPY_PATH.equals(resource.getPath())),
+                any(),
+                any()
+        );
+
+        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any(), any()))
+                .thenReturn(true);
+
+        // The client has closed the connection
+        MockSlingHttpServletResponse failedResponse = spy(response);
+        doReturn(new PrintWriter(new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("Connection is closed");
+            }
+
+            @Override
+            public void flush() throws IOException {
+                throw new IOException("Connection is closed");
+            }
+
+            @Override
+            public void close() {
+            }
+        })).when(failedResponse).getWriter();
+
+        fixture.doPost(request, failedResponse);
+
+        verify(liveRelationshipManager, never()).getLiveRelationships(
+                argThat((Resource resource) -> TEST_SIBLING_LIVE_COPY_PATH.equals(resource.getPath())),
+                any(),
+                any()
+        );
+    }
+
+    @Test
+    void doPost_ParallelCollection_WrittenInOriginalOrder() throws WCMException, IOException, LoginException {
+        CollectLiveCopiesServlet parallelFixture = registerParallelFixture();
+        MockSlingHttpServletRequest parallelRequest = createParallelRequest();
+        createSiblingResources();
+
+        mockSiblingRelationships();
+        doReturn(mock(RangeIterator.class)).when(liveRelationshipManager).getLiveRelationships(
+                argThat((Resource resource) -> TEST_LIVE_COPY_PATH.equals(resource.getPath())),
+                any(),
+                any()
+        );
+        doReturn(mock(RangeIterator.class)).when(liveRelationshipManager).getLiveRelationships(
+                argThat((Resource resource) -> TEST_SIBLING_LIVE_COPY_PATH.equals(resource.getPath())),
+                any(),
+                any()
+        );
+
+        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any(), any()))
+                .thenReturn(true);
+
+        parallelFixture.doPost(parallelRequest, response);
+
+        String expected = new String(Files.readAllBytes(Paths.get(EXPECTED_PARALLEL_RESPONSE_JSON)))
+                .replaceAll("(\\r|\\n|\\t|\\s)", StringUtils.EMPTY);
+        assertEquals(expected, response.getOutputAsString());
+    }
+
+    @Test
+    void doPost_ParallelCollectionFailed_SubtreeTruncated() throws WCMException, IOException, LoginException {
+        CollectLiveCopiesServlet parallelFixture = registerParallelFixture();
+        MockSlingHttpServletRequest parallelRequest = createParallelRequest();
+        createSiblingResources();
+
+        mockSiblingRelationships();
+        doThrow(new IllegalStateException("Failed to get relationships")).when(liveRelationshipManager)
+                .getLiveRelationships(
+                        argThat((Resource resource) -> TEST_LIVE_COPY_PATH.equals(resource.getPath())),
+                        any(),
+                        any()
+                );
+        doReturn(mock(RangeIterator.class)).when(liveRelationshipManager).getLiveRelationships(
+                argThat((Resource resource) -> TEST_SIBLING_LIVE_COPY_PATH.equals(resource.getPath())),
+                any(),
+                any()
+        );
+
+        when(relationshipCheckerService.isAvailableForSync(any(), any(), any(), any(), any()))
+                .thenReturn(true);
+
+        parallelFixture.doPost(parallelRequest, response);
+
+        String expected = new String(Files.readAllBytes(Paths.get(EXPECTED_PARALLEL_FAILED_RESPONSE_JSON)))
+                .replaceAll("(\\r|\\n|\\t|\\s)", StringUtils.EMPTY);
+        assertEquals(expected, response.getOutputAsString());
+    }
+
+    private CollectLiveCopiesServlet registerParallelFixture() {
+        context.registerService(LiveRelationshipManager.class, liveRelationshipManager);
+        context.registerService(RelationshipCheckerService.class, relationshipCheckerService);
+        context.registerService(RelationshipIndexService.class, relationshipIndexService);
+        context.registerService(RolloutMetrics.class, rolloutMetrics);
+        return context.registerInjectActivateService(new CollectLiveCopiesServlet(),
+                PARALLEL_COLLECTION_PROPERTY, true,
+                PARALLELISM_PROPERTY, 2);
+    }
+
+    /**
+     * Creates a request whose resource resolver hands out non-closing clones, so that the subtrees are collected
+     * by the pool threads against the same mock repository
+     */
+    private MockSlingHttpServletRequest createParallelRequest() throws LoginException {
+        ResourceResolver resourceResolver = spy(context.resourceResolver());
+        ResourceResolver workerResolver = spy(context.resourceResolver());
+        doNothing().when(workerResolver).close();
+        doReturn(workerResolver).when(resourceResolver).clone(null);
+
+        MockSlingHttpServletRequest parallelRequest =
+                new MockSlingHttpServletRequest(resourceResolver, context.bundleContext());
+        parallelRequest.addRequestParameter(PATH_REQUEST_PARAM, TEST_SOURCE_PATH);
+        return parallelRequest;
+    }
+
+    private void createSiblingResources() {
+        context.create().resource(TEST_SOURCE_PATH);
+        context.create().resource(TEST_LIVE_COPY_PATH);
+        context.create().resource(TEST_TARGET_PATH);
+        context.create().resource(TEST_SIBLING_LIVE_COPY_PATH);
+        context.create().resource(TEST_SIBLING_TARGET_PATH);
+    }
+
+    private void mockSiblingRelationships() throws WCMException {
+        LiveRelationship relationship = mockRelationship(TEST_TARGET_PATH, TEST_LIVE_COPY_PATH);
+        LiveRelationship siblingRelationship = mockRelationship(TEST_SIBLING_TARGET_PATH, TEST_SIBLING_LIVE_COPY_PATH);
+        RangeIterator relationships = mock(RangeIterator.class);
+        when(relationships.hasNext()).thenReturn(true, true, false);
+        when(relationships.next()).thenReturn(relationship, siblingRelationship);
+        doReturn(relationships).when(liveRelationshipManager).getLiveRelationships(
+                argThat((Resource resource) -> TEST_SOURCE_PATH.equals(resource.getPath())),
+                any(),
+                any()
+        );
+    }
+
+    private LiveRelationship mockRelationship(String target, String liveCopyPath) {
+        LiveRelationship relationship = mock(LiveRelationship.class);
+        LiveCopy liveCopy = mock(LiveCopy.class);
+        when(relationship.getLiveCopy()).thenReturn(liveCopy);
+        when(relationship.getSyncPath()).thenReturn(TEST_SYNC_PATH);
+        when(relationship.getTargetPath()).thenReturn(target);
+        when(liveCopy.isDeep()).thenReturn(true);
+        when(liveCopy.getPath()).thenReturn(liveCopyPath);
+        return relationship;
+    }
+
     private LiveRelationship mockSingleLiveRelationship(String sourcePath) throws WCMException {
         LiveRelationship relationship = mock(LiveRelationship.class);
         RangeIterator relationships = mock(RangeIterator.class);
@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.servlets;
+
+import com.exadel.etoolbox.rolloutmanager.core.jobs.RolloutJobConsumer;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutJobInfo;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutStatus;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutJobTracker;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.json.Json;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+class RolloutJobStatusServletTest {
+    private static final String JOB_ID_REQUEST_PARAM = "jobId";
+
+    private static final String TEST_JOB_ID = "2024/1/1/10/0/test-job_1";
+    private static final String TEST_USER_ID = "test-user";
+    private static final String TEST_OTHER_USER_ID = "other-user";
+    private static final String TEST_SUCCEEDED_TARGET = "/content/we-retail/ca/en/experience";
+    private static final String TEST_FAILED_TARGET = "/content/we-retail/us/en/experience";
+
+    private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
+
+    @Mock
+    private RolloutJobTracker rolloutJobTracker;
+
+    @Mock
+    private JobManager jobManager;
+
+    @InjectMocks
+    private final RolloutJobStatusServlet fixture = new RolloutJobStatusServlet();
+
+    private MockSlingHttpServletRequest request;
+    private MockSlingHttpServletResponse response;
+
+    @BeforeEach
+    void setup() {
+        ResourceResolver resourceResolverMock = mock(ResourceResolver.class);
+        when(resourceResolverMock.getUserID()).thenReturn(TEST_USER_ID);
+        request = new MockSlingHttpServletRequest(resourceResolverMock, context.bundleContext());
+        response = context.response();
+    }
+
+    @Test
+    void doPost_EmptyParams_BadRequest() {
+        fixture.doPost(request, response);
+
+        assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatus());
+        verifyNoInteractions(rolloutJobTracker);
+        verifyNoInteractions(jobManager);
+    }
+
+    @Test
+    void doPost_UnknownJob_NotFound() {
+        request.addRequestParameter(JOB_ID_REQUEST_PARAM, TEST_JOB_ID);
+        when(rolloutJobTracker.getJobInfo(TEST_JOB_ID)).thenReturn(Optional.empty());
+
+        fixture.doPost(request, response);
+
+        assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatus());
+    }
+
+    @Test
+    void doPost_QueuedJob_QueuedStateInResponse() {
+        request.addRequestParameter(JOB_ID_REQUEST_PARAM, TEST_JOB_ID);
+        when(rolloutJobTracker.getJobInfo(TEST_JOB_ID)).thenReturn(Optional.empty());
+        Job job = mock(Job.class);
+        when(job.getProperty(RolloutJobConsumer.USER_ID_PROPERTY, String.class)).thenReturn(TEST_USER_ID);
+        when(jobManager.getJobById(TEST_JOB_ID)).thenReturn(job);
+
+        fixture.doPost(request, response);
+
+        String expectedResponse = Json.createObjectBuilder()
+                .add("jobId", TEST_JOB_ID)
+                .add("state", RolloutJobInfo.State.QUEUED.name())
+                .add("processedTargets", 0)
+                .add("failedTargets", Json.createArrayBuilder())
+                .build()
+                .toString();
+        assertEquals(expectedResponse, response.getOutputAsString());
+    }
+
+    @Test
+    void doPost_OtherUserJob_NotFound() {
+        request.addRequestParameter(JOB_ID_REQUEST_PARAM, TEST_JOB_ID);
+        RolloutJobInfo jobInfo = new RolloutJobInfo(TEST_JOB_ID, TEST_OTHER_USER_ID, RolloutJobInfo.State.RUNNING);
+        when(rolloutJobTracker.getJobInfo(TEST_JOB_ID)).thenReturn(Optional.of(jobInfo));
+
+        fixture.doPost(request, response);
+
+        assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatus());
+        verifyNoInteractions(jobManager);
+    }
+
+    @Test
+    void doPost_FinishedJob_FailedTargetsInResponse() {
+        request.addRequestParameter(JOB_ID_REQUEST_PARAM, TEST_JOB_ID);
+        RolloutJobInfo jobInfo = new RolloutJobInfo(TEST_JOB_ID, TEST_USER_ID, RolloutJobInfo.State.FAILED);
+        jobInfo.getStatuses().add(createStatus(TEST_SUCCEEDED_TARGET, true));
+        jobInfo.getStatuses().add(createStatus(TEST_FAILED_TARGET, false));
+        when(rolloutJobTracker.getJobInfo(TEST_JOB_ID)).thenReturn(Optional.of(jobInfo));
+
+        fixture.doPost(request, response);
+
+        String expectedResponse = Json.createObjectBuilder()
+                .add("jobId", TEST_JOB_ID)
+                .add("state", RolloutJobInfo.State.FAILED.name())
+                .add("processedTargets", 2)
+                .add("failedTargets", Json.createArrayBuilder(Collections.singletonList(TEST_FAILED_TARGET)))
+                .build()
+                .toString();
+        assertEquals(expectedResponse, response.getOutputAsString());
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+    }
+
+    private static RolloutStatus createStatus(String target, boolean isSuccess) {
+        RolloutStatus status = new RolloutStatus(target);
+        status.setSuccess(isSuccess);
+        return status;
+    }
+}
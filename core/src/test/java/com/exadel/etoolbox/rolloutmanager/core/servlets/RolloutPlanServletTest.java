@@ -0,0 +1,167 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.servlets;
+
+import com.exadel.etoolbox.rolloutmanager.core.services.PageReplicationService;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutMetrics;
+import com.exadel.etoolbox.rolloutmanager.core.services.impl.RolloutMetricsImpl;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+class RolloutPlanServletTest {
+    private static final String SELECTION_JSON_ARRAY_PARAM = "selectionJsonArray";
+    private static final String IS_DEEP_ROLLOUT_PARAM = "isDeepRollout";
+    private static final String SHOULD_ACTIVATE_PARAM = "shouldActivate";
+
+    private static final String SELECTED_LIVECOPIES_REQUEST_JSON =
+            "src/test/resources/com/exadel/etoolbox/rolloutmanager/core/servlets/rollout-selected-items.json";
+    private static final String TEST_PAGES_STRUCTURE_PATH =
+            "/com/exadel/etoolbox/rolloutmanager/core/servlets/rollout-pages-structure.json";
+    private static final String TEST_FOLDER_PATH = "/content/we-retail";
+    private static final String TEST_DEEP_SELECTION_JSON_ARRAY =
+            "[{\"master\":\"/content/we-retail/ca\",\"target\":\"/content/we-retail/us\",\"depth\":0}]";
+    private static final String TEST_SHARED_MASTER_SELECTION_JSON_ARRAY =
+            "[{\"master\":\"/content/we-retail/ca\",\"target\":\"/content/we-retail/us\",\"depth\":0},"
+                    + "{\"master\":\"/content/we-retail/ca\",\"target\":\"/content/we-retail/de\",\"depth\":0}]";
+    private static final int EXPECTED_DEEP_PAGES = 5;
+    private static final String MAX_PAGES_PROPERTY = "maxPages";
+
+    private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
+
+    @Mock
+    private PageReplicationService pageReplicationService;
+
+    private RolloutMetricsImpl rolloutMetrics;
+    private RolloutPlanServlet fixture;
+
+    private MockSlingHttpServletRequest request;
+    private MockSlingHttpServletResponse response;
+
+    @BeforeEach
+    void setup() {
+        context.load().json(TEST_PAGES_STRUCTURE_PATH, TEST_FOLDER_PATH);
+        context.registerService(PageReplicationService.class, pageReplicationService);
+        rolloutMetrics = context.registerInjectActivateService(new RolloutMetricsImpl());
+        fixture = context.registerInjectActivateService(new RolloutPlanServlet());
+
+        request = context.request();
+        response = context.response();
+    }
+
+    @Test
+    void doPost_EmptyParams_BadRequest() {
+        fixture.doPost(request, response);
+
+        assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatus());
+        verifyNoInteractions(pageReplicationService);
+    }
+
+    @Test
+    void doPost_DeepRolloutNoHistory_SubpagesCountedDurationUnknown() {
+        request.addRequestParameter(SELECTION_JSON_ARRAY_PARAM, TEST_DEEP_SELECTION_JSON_ARRAY);
+        request.addRequestParameter(IS_DEEP_ROLLOUT_PARAM, Boolean.TRUE.toString());
+        request.addRequestParameter(SHOULD_ACTIVATE_PARAM, Boolean.TRUE.toString());
+        when(pageReplicationService.getReplicationActionCount(EXPECTED_DEEP_PAGES, true)).thenReturn(EXPECTED_DEEP_PAGES);
+
+        fixture.doPost(request, response);
+
+        JsonObject plan = readJson(response.getOutputAsString());
+        assertEquals(EXPECTED_DEEP_PAGES, plan.getJsonArray("targets").getJsonObject(0).getInt("pages"));
+        assertEquals(EXPECTED_DEEP_PAGES, plan.getInt("totalPageWrites"));
+        assertEquals(EXPECTED_DEEP_PAGES, plan.getInt("replicationActions"));
+        assertEquals(-1, plan.getInt("estimatedDuration"));
+    }
+
+    @Test
+    void doPost_RolloutHistory_DurationEstimated() throws IOException {
+        rolloutMetrics.recordTime(RolloutMetrics.PAGE_ROLLOUT, TimeUnit.MILLISECONDS.toNanos(10));
+        rolloutMetrics.recordTime(RolloutMetrics.PAGE_ROLLOUT, TimeUnit.MILLISECONDS.toNanos(10));
+        String selectedLiveCopies = new String(Files.readAllBytes(Paths.get(SELECTED_LIVECOPIES_REQUEST_JSON)));
+        request.addRequestParameter(SELECTION_JSON_ARRAY_PARAM, selectedLiveCopies);
+
+        fixture.doPost(request, response);
+
+        JsonObject plan = readJson(response.getOutputAsString());
+        assertEquals(6, plan.getJsonArray("targets").size());
+        assertEquals(6, plan.getInt("totalPageWrites"));
+        assertEquals(0, plan.getInt("replicationActions"));
+        assertEquals(60, plan.getInt("estimatedDuration"));
+        verifyNoInteractions(pageReplicationService);
+    }
+
+    @Test
+    void doPost_SharedMaster_CountedOnce() {
+        RolloutPlanServlet limitedFixture = context.registerInjectActivateService(new RolloutPlanServlet(),
+                MAX_PAGES_PROPERTY, EXPECTED_DEEP_PAGES);
+        request.addRequestParameter(SELECTION_JSON_ARRAY_PARAM, TEST_SHARED_MASTER_SELECTION_JSON_ARRAY);
+        request.addRequestParameter(IS_DEEP_ROLLOUT_PARAM, Boolean.TRUE.toString());
+
+        limitedFixture.doPost(request, response);
+
+        JsonObject plan = readJson(response.getOutputAsString());
+        assertEquals(EXPECTED_DEEP_PAGES, plan.getJsonArray("targets").getJsonObject(1).getInt("pages"));
+        assertEquals(EXPECTED_DEEP_PAGES * 2, plan.getInt("totalPageWrites"));
+        assertFalse(plan.getBoolean("truncated"));
+        assertFalse(plan.getBoolean("excludedPagesSubtracted"));
+        assertFalse(plan.getBoolean("upToDateTargetsSubtracted"));
+    }
+
+    @Test
+    void doPost_MaxPagesExceeded_Truncated() {
+        RolloutPlanServlet limitedFixture = context.registerInjectActivateService(new RolloutPlanServlet(),
+                MAX_PAGES_PROPERTY, EXPECTED_DEEP_PAGES - 1);
+        request.addRequestParameter(SELECTION_JSON_ARRAY_PARAM, TEST_DEEP_SELECTION_JSON_ARRAY);
+        request.addRequestParameter(IS_DEEP_ROLLOUT_PARAM, Boolean.TRUE.toString());
+
+        limitedFixture.doPost(request, response);
+
+        JsonObject plan = readJson(response.getOutputAsString());
+        JsonObject target = plan.getJsonArray("targets").getJsonObject(0);
+        assertEquals(EXPECTED_DEEP_PAGES - 1, target.getInt("pages"));
+        assertTrue(target.getBoolean("truncated"));
+        assertTrue(plan.getBoolean("truncated"));
+    }
+
+    private static JsonObject readJson(String json) {
+        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+            return reader.readObject();
+        }
+    }
+}
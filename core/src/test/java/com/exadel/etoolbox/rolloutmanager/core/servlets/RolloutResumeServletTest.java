@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.exadel.etoolbox.rolloutmanager.core.servlets;
+
+import com.exadel.etoolbox.rolloutmanager.core.jobs.RolloutJobConsumer;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutJobInfo;
+import com.exadel.etoolbox.rolloutmanager.core.services.RolloutJobTracker;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.json.Json;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+class RolloutResumeServletTest {
+    private static final String JOB_ID_REQUEST_PARAM = "jobId";
+
+    private static final String TEST_JOB_ID = "2024/1/1/10/0/test-job_1";
+    private static final String TEST_RESUMING_JOB_ID = "2024/1/1/11/0/test-job_2";
+    private static final String TEST_USER_ID = "test-user";
+    private static final String TEST_OTHER_USER_ID = "other-user";
+    private static final String TEST_SELECTION_JSON_ARRAY =
+            "[{\"master\":\"/content/we-retail/language-masters/en\",\"target\":\"/content/we-retail/ca/en\",\"depth\":0}]";
+
+    private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
+
+    @Mock
+    private RolloutJobTracker rolloutJobTracker;
+
+    @Mock
+    private JobManager jobManager;
+
+    @InjectMocks
+    private final RolloutResumeServlet fixture = new RolloutResumeServlet();
+
+    private MockSlingHttpServletRequest request;
+    private MockSlingHttpServletResponse response;
+
+    @BeforeEach
+    void setup() {
+        ResourceResolver resourceResolverMock = mock(ResourceResolver.class);
+        when(resourceResolverMock.getUserID()).thenReturn(TEST_USER_ID);
+        request = new MockSlingHttpServletRequest(resourceResolverMock, context.bundleContext());
+        response = context.response();
+    }
+
+    @Test
+    void doPost_EmptyParams_BadRequest() {
+        fixture.doPost(request, response);
+
+        assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatus());
+        verifyNoInteractions(rolloutJobTracker);
+        verifyNoInteractions(jobManager);
+    }
+
+    @Test
+    void doPost_OtherUserJob_NotFound() {
+        request.addRequestParameter(JOB_ID_REQUEST_PARAM, TEST_JOB_ID);
+        RolloutJobInfo jobInfo = new RolloutJobInfo(TEST_JOB_ID, TEST_OTHER_USER_ID, RolloutJobInfo.State.FAILED);
+        when(rolloutJobTracker.getJobInfo(TEST_JOB_ID)).thenReturn(Optional.of(jobInfo));
+
+        fixture.doPost(request, response);
+
+        assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatus());
+        verifyNoInteractions(jobManager);
+    }
+
+    @Test
+    void doPost_RunningJob_Conflict() {
+        request.addRequestParameter(JOB_ID_REQUEST_PARAM, TEST_JOB_ID);
+        RolloutJobInfo jobInfo = new RolloutJobInfo(TEST_JOB_ID, TEST_USER_ID, RolloutJobInfo.State.RUNNING);
+        when(rolloutJobTracker.getJobInfo(TEST_JOB_ID)).thenReturn(Optional.of(jobInfo));
+
+        fixture.doPost(request, response);
+
+        assertEquals(HttpStatus.SC_CONFLICT, response.getStatus());
+        verify(rolloutJobTracker, never()).queued(TEST_JOB_ID);
+        verifyNoInteractions(jobManager);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void doPost_FailedJob_ResumedJobAdded() {
+        request.addRequestParameter(JOB_ID_REQUEST_PARAM, TEST_JOB_ID);
+        RolloutJobInfo jobInfo = new RolloutJobInfo(TEST_JOB_ID, TEST_USER_ID, RolloutJobInfo.State.FAILED);
+        jobInfo.getJobProperties().put(RolloutJobConsumer.SELECTION_JSON_ARRAY_PROPERTY, TEST_SELECTION_JSON_ARRAY);
+        jobInfo.getJobProperties().put(RolloutJobConsumer.IS_DEEP_ROLLOUT_PROPERTY, true);
+        when(rolloutJobTracker.getJobInfo(TEST_JOB_ID)).thenReturn(Optional.of(jobInfo));
+        Job job = mock(Job.class);
+        when(job.getId()).thenReturn(TEST_RESUMING_JOB_ID);
+        ArgumentCaptor<Map<String, Object>> jobProperties = ArgumentCaptor.forClass(Map.class);
+        when(jobManager.addJob(eq(RolloutJobConsumer.TOPIC), jobProperties.capture())).thenReturn(job);
+
+        fixture.doPost(request, response);
+
+        assertEquals(HttpStatus.SC_ACCEPTED, response.getStatus());
+        assertEquals(Json.createObjectBuilder().add("jobId", TEST_JOB_ID).build().toString(),
+                response.getOutputAsString());
+        assertEquals(TEST_JOB_ID, jobProperties.getValue().get(RolloutJobConsumer.RESUMED_JOB_ID_PROPERTY));
+        assertEquals(TEST_SELECTION_JSON_ARRAY,
+                jobProperties.getValue().get(RolloutJobConsumer.SELECTION_JSON_ARRAY_PROPERTY));
+        assertEquals(true, jobProperties.getValue().get(RolloutJobConsumer.IS_DEEP_ROLLOUT_PROPERTY));
+        verify(rolloutJobTracker).queued(TEST_JOB_ID);
+    }
+}
@@ -14,36 +14,62 @@
 
 package com.exadel.etoolbox.rolloutmanager.core.servlets;
 
+import com.day.cq.replication.Replicator;
 import com.day.cq.wcm.api.WCMException;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.msm.api.LiveRelationshipManager;
 import com.day.cq.wcm.msm.api.RolloutManager;
+import com.exadel.etoolbox.rolloutmanager.core.jobs.RolloutJobConsumer;
+import com.exadel.etoolbox.rolloutmanager.core.models.RolloutAdmission;
+import com.exadel.etoolbox.rolloutmanager.core.services.PageReplicationService;
+import com.exadel.etoolbox.rolloutmanager.core.services.impl.RolloutAdmissionServiceImpl;
+import com.exadel.etoolbox.rolloutmanager.core.services.impl.RolloutMetricsImpl;
+import com.exadel.etoolbox.rolloutmanager.core.services.impl.RolloutScheduleServiceImpl;
+import com.exadel.etoolbox.rolloutmanager.core.services.impl.RolloutServiceImpl;
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.request.RequestParameter;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
 import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.Privilege;
 import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
 import javax.json.JsonValue;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -52,7 +78,15 @@ import static org.mockito.Mockito.when;
 @ExtendWith({AemContextExtension.class, MockitoExtension.class})
 class RolloutServletTest {
     private static final String SELECTION_JSON_ARRAY_PARAM = "selectionJsonArray";
+    private static final String RUN_AS_JOB_PARAM = "runAsJob";
+    private static final String STREAM_PARAM = "stream";
+    private static final String SHOULD_ACTIVATE_PARAM = "shouldActivate";
+    private static final String SCHEDULE_PARAM = "schedule";
+    private static final String EXECUTION_WINDOWS_PROPERTY = "executionWindows";
     private static final String FAILED_TARGETS_RESPONSE_PARAM = "failedTargets";
+    private static final String JOB_ID_RESPONSE_PARAM = "jobId";
+    private static final String SCHEDULED_AT_RESPONSE_PARAM = "scheduledAt";
+    private static final String TEST_JOB_ID = "2024/1/1/10/0/test-job_1";
 
     private static final String SELECTED_LIVECOPIES_REQUEST_JSON =
             "src/test/resources/com/exadel/etoolbox/rolloutmanager/core/servlets/rollout-selected-items.json";
@@ -73,19 +107,48 @@ class RolloutServletTest {
             "/content/we-retail/ch/ca-es-ch-livecopy/experience"
     );
 
+    private static final List<String> EXPECTED_NOT_PERMITTED_PATH = Arrays.asList(
+            "/content/we-retail/ca/en/experience",
+            "/content/we-retail/es/ca-es-livecopy/experience",
+            "/content/we-retail/de/ca-es-de-livecopy/experience",
+            "/content/we-retail/ch/ca-es-ch-livecopy/experience",
+            "/content/we-retail/fr/ca-fr-livecopy/experience",
+            "/content/we-retail/us/en/experience"
+    );
+
     private final AemContext context = new AemContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
 
     @Mock
     private RolloutManager rolloutManager;
 
-    @InjectMocks
-    private final RolloutServlet fixture = new RolloutServlet();
+    @Mock
+    private LiveRelationshipManager liveRelationshipManager;
+
+    @Mock
+    private JobManager jobManager;
+
+    @Mock
+    private PageReplicationService pageReplicationService;
+
+    private RolloutServlet fixture;
+    private RolloutAdmissionServiceImpl admissionService;
+    private RolloutScheduleServiceImpl scheduleService;
 
     private MockSlingHttpServletRequest request;
     private MockSlingHttpServletResponse response;
 
     @BeforeEach
     void setup() {
+        context.registerService(RolloutManager.class, rolloutManager);
+        context.registerService(LiveRelationshipManager.class, liveRelationshipManager);
+        context.registerService(JobManager.class, jobManager);
+        context.registerService(PageReplicationService.class, pageReplicationService);
+        context.registerInjectActivateService(new RolloutMetricsImpl());
+        context.registerInjectActivateService(new RolloutServiceImpl());
+        admissionService = context.registerInjectActivateService(new RolloutAdmissionServiceImpl());
+        scheduleService = context.registerInjectActivateService(new RolloutScheduleServiceImpl());
+        fixture = context.registerInjectActivateService(new RolloutServlet());
+
         request = context.request();
         response = context.response();
     }
@@ -196,4 +259,170 @@ class RolloutServletTest {
 
         assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatus());
     }
+
+    @Test
+    void doPost_Stream_StatusLinePerTarget() throws IOException, WCMException {
+        context.load().json(TEST_PAGES_STRUCTURE_PATH, TEST_FOLDER_PATH);
+
+        String selectedLiveCopies = new String(Files.readAllBytes(Paths.get(SELECTED_LIVECOPIES_REQUEST_JSON)));
+        request.addRequestParameter(SELECTION_JSON_ARRAY_PARAM, selectedLiveCopies);
+        request.addRequestParameter(STREAM_PARAM, Boolean.TRUE.toString());
+
+        doThrow(new WCMException("Failed to rollout")).when(rolloutManager)
+                .rollout(any(RolloutManager.RolloutParams.class));
+
+        fixture.doPost(request, response);
+
+        List<JsonObject> lines = Arrays.stream(response.getOutputAsString().split("\n"))
+                .map(RolloutServletTest::readJson)
+                .collect(Collectors.toList());
+        assertEquals(EXPECTED_FAILED_PATH.size() + 1, lines.size());
+
+        List<JsonObject> statusLines = lines.subList(0, EXPECTED_FAILED_PATH.size());
+        assertEquals(EXPECTED_FAILED_PATH, statusLines.stream()
+                .map(line -> line.getString("target"))
+                .collect(Collectors.toList()));
+        statusLines.forEach(line -> {
+            assertEquals("rollout", line.getString("phase"));
+            assertFalse(line.getBoolean("success"));
+        });
+
+        JsonObject completedLine = lines.get(lines.size() - 1);
+        assertEquals("completed", completedLine.getString("phase"));
+        assertEquals(Json.createArrayBuilder(EXPECTED_FAILED_PATH).build(),
+                completedLine.getJsonArray(FAILED_TARGETS_RESPONSE_PARAM));
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+    }
+
+    @Test
+    void doPost_ConcurrentRolloutsLimitReached_TooManyRequests() throws IOException {
+        MockOsgi.modified(admissionService, context.bundleContext(),
+                "maxConcurrentRollouts", 1,
+                "queueSize", 0);
+        String selectedLiveCopies = new String(Files.readAllBytes(Paths.get(SELECTED_LIVECOPIES_REQUEST_JSON)));
+        request.addRequestParameter(SELECTION_JSON_ARRAY_PARAM, selectedLiveCopies);
+
+        try (RolloutAdmission runningRollout = admissionService.admit()) {
+            fixture.doPost(request, response);
+        }
+
+        assertEquals(429, response.getStatus());
+        assertEquals("30", response.getHeader("Retry-After"));
+        JsonObject jsonResponse = readJson(response.getOutputAsString());
+        assertEquals(1, jsonResponse.getInt("queuePosition"));
+        assertEquals(30, jsonResponse.getInt("retryAfter"));
+        verifyNoInteractions(rolloutManager);
+    }
+
+    @Test
+    void doPost_RunAsJob_JobIdInResponse() throws IOException, RepositoryException, WCMException {
+        MockSlingHttpServletRequest jobRequest = createJobRequest(true);
+
+        Job job = mock(Job.class);
+        when(job.getId()).thenReturn(TEST_JOB_ID);
+        when(jobManager.addJob(eq(RolloutJobConsumer.TOPIC), anyMap())).thenReturn(job);
+
+        fixture.doPost(jobRequest, response);
+
+        String expectedResponse = Json.createObjectBuilder()
+                .add(JOB_ID_RESPONSE_PARAM, TEST_JOB_ID)
+                .build()
+                .toString();
+
+        assertEquals(expectedResponse, response.getOutputAsString());
+        assertEquals(HttpStatus.SC_ACCEPTED, response.getStatus());
+        verify(rolloutManager, never()).rollout(any(RolloutManager.RolloutParams.class));
+    }
+
+    @Test
+    void doPost_RunAsJobNoPermissions_Forbidden() throws IOException, RepositoryException {
+        MockSlingHttpServletRequest jobRequest = createJobRequest(false);
+
+        fixture.doPost(jobRequest, response);
+
+        String expectedResponse = Json.createObjectBuilder()
+                .add(FAILED_TARGETS_RESPONSE_PARAM, Json.createArrayBuilder(EXPECTED_NOT_PERMITTED_PATH))
+                .build()
+                .toString();
+
+        assertEquals(expectedResponse, response.getOutputAsString());
+        assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatus());
+        verifyNoInteractions(jobManager);
+    }
+
+    @Test
+    void doPost_RunAsJobActivateNoReplicatePermission_Forbidden() throws IOException, RepositoryException {
+        MockSlingHttpServletRequest jobRequest = createJobRequest(true);
+        jobRequest.addRequestParameter(SHOULD_ACTIVATE_PARAM, Boolean.TRUE.toString());
+        Session session = jobRequest.getResourceResolver().adaptTo(Session.class);
+        AccessControlManager accessControlManager = mock(AccessControlManager.class);
+        when(session.getAccessControlManager()).thenReturn(accessControlManager);
+        when(accessControlManager.privilegeFromName(Replicator.REPLICATE_PRIVILEGE)).thenReturn(mock(Privilege.class));
+        when(accessControlManager.hasPrivileges(anyString(), any(Privilege[].class))).thenReturn(false);
+
+        fixture.doPost(jobRequest, response);
+
+        String expectedResponse = Json.createObjectBuilder()
+                .add(FAILED_TARGETS_RESPONSE_PARAM, Json.createArrayBuilder(EXPECTED_NOT_PERMITTED_PATH))
+                .build()
+                .toString();
+
+        assertEquals(expectedResponse, response.getOutputAsString());
+        assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatus());
+        verifyNoInteractions(jobManager);
+    }
+
+    @Test
+    void doPost_ScheduleWithinOpenWindow_JobAdded() throws IOException, RepositoryException, WCMException {
+        MockOsgi.modified(scheduleService, context.bundleContext(),
+                EXECUTION_WINDOWS_PROPERTY, new String[]{TEST_FOLDER_PATH + "=00:00-00:00"});
+        MockSlingHttpServletRequest jobRequest = createJobRequest(true);
+        jobRequest.addRequestParameter(SCHEDULE_PARAM, Boolean.TRUE.toString());
+        when(jobManager.addJob(eq(RolloutJobConsumer.SCHEDULED_TOPIC), anyMap())).thenReturn(mock(Job.class));
+
+        fixture.doPost(jobRequest, response);
+
+        assertEquals(HttpStatus.SC_ACCEPTED, response.getStatus());
+        assertTrue(readJson(response.getOutputAsString()).containsKey(SCHEDULED_AT_RESPONSE_PARAM));
+        verify(jobManager, never()).addJob(eq(RolloutJobConsumer.TOPIC), anyMap());
+        verify(rolloutManager, never()).rollout(any(RolloutManager.RolloutParams.class));
+    }
+
+    @Test
+    void doPost_ScheduleTargetsInDifferentWindows_BadRequest() throws IOException {
+        MockOsgi.modified(scheduleService, context.bundleContext(),
+                EXECUTION_WINDOWS_PROPERTY, new String[]{
+                        TEST_FOLDER_PATH + "=01:00-05:00",
+                        TEST_FOLDER_PATH + "/ca=22:00-06:00"
+                });
+        String selectedLiveCopies = new String(Files.readAllBytes(Paths.get(SELECTED_LIVECOPIES_REQUEST_JSON)));
+        request.addRequestParameter(SELECTION_JSON_ARRAY_PARAM, selectedLiveCopies);
+        request.addRequestParameter(SCHEDULE_PARAM, Boolean.TRUE.toString());
+
+        fixture.doPost(request, response);
+
+        assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatus());
+        verifyNoInteractions(jobManager);
+        verifyNoInteractions(rolloutManager);
+    }
+
+    private static JsonObject readJson(String line) {
+        try (JsonReader reader = Json.createReader(new StringReader(line))) {
+            return reader.readObject();
+        }
+    }
+
+    private MockSlingHttpServletRequest createJobRequest(boolean hasPermission) throws IOException, RepositoryException {
+        ResourceResolver resourceResolverMock = mock(ResourceResolver.class);
+        Session sessionMock = mock(Session.class);
+        when(resourceResolverMock.adaptTo(PageManager.class)).thenReturn(mock(PageManager.class));
+        when(resourceResolverMock.adaptTo(Session.class)).thenReturn(sessionMock);
+        when(sessionMock.hasPermission(anyString(), anyString())).thenReturn(hasPermission);
+
+        MockSlingHttpServletRequest jobRequest = new MockSlingHttpServletRequest(resourceResolverMock, context.bundleContext());
+        String selectedLiveCopies = new String(Files.readAllBytes(Paths.get(SELECTED_LIVECOPIES_REQUEST_JSON)));
+        jobRequest.addRequestParameter(SELECTION_JSON_ARRAY_PARAM, selectedLiveCopies);
+        jobRequest.addRequestParameter(RUN_AS_JOB_PARAM, Boolean.TRUE.toString());
+        return jobRequest;
+    }
 }
\ No newline at end of file
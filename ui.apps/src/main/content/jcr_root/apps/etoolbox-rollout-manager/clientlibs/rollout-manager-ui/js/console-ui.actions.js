@@ -20,6 +20,8 @@
     'use strict';
 
     const COLLECT_LIVE_COPIES_COMMAND = '/content/etoolbox/rollout-manager/servlet/collect-live-copies';
+    // Only the top level is collected when the dialog is opened, nested levels are loaded on expand
+    const COLLECT_MAX_DEPTH = 0;
 
     /**
      * Retrieves data related to eligible for synchronization live copies as a json array. The data is
@@ -33,47 +35,141 @@
             type: 'POST',
             data: {
                 _charset_: 'UTF-8',
-                path
+                path,
+                maxDepth: COLLECT_MAX_DEPTH
             }
         });
     }
 
+    /**
+     * Retrieves the next level of live copies for the live copy expanded in the 'Targets' tree, or all the nested
+     * levels if the live copy is selected along with its children without being expanded
+     * @param liveCopyJson - data of the expanded live copy
+     * @param allLevels - true to collect all the nested levels
+     * @returns {*}
+     */
+    function collectNestedLiveCopies(liveCopyJson, allLevels) {
+        const depth = liveCopyJson.depth + 1;
+        const data = {
+            _charset_: 'UTF-8',
+            path: liveCopyJson.path,
+            syncPath: liveCopyJson.syncPath,
+            depth
+        };
+        if (!allLevels) {
+            data.maxDepth = depth;
+        }
+        return $.ajax({
+            url: COLLECT_LIVE_COPIES_COMMAND,
+            type: 'POST',
+            data
+        });
+    }
+    ns.collectNestedLiveCopies = collectNestedLiveCopies;
+
     const BLUEPRINT_CHECK_COMMAND = '/content/etoolbox/rollout-manager/servlet/blueprint-check';
+    const COLLECTION_SELECTOR = '.foundation-collection';
+    const COLLECTION_ITEM_SELECTOR = '.foundation-collection-item[data-foundation-collection-item-id]';
+    // Matches the default maximum number of paths accepted by the servlet in one request
+    const BULK_CHECK_BATCH_SIZE = 100;
+
+    // Rollout availability of the collection items by path, filled in the background by the bulk blueprint check
+    let rolloutAvailability = {};
+    const pendingPaths = new Set();
 
     /**
-     * Checks if selected page has live relationships eligible for synchronization and thus can be rolled out.
-     * The 'Rollout' button is displayed in the Sites toolbar based on this condition.
-     * @param path - path of the page selected in Sites
-     * @returns {Promise<boolean>}
+     * Checks if the pages have live relationships eligible for synchronization and thus can be rolled out.
+     * @param paths - paths of the pages in Sites
+     * @returns {*} the map of page paths to the check results
      */
-    function isAvailableForRollout(path) {
-        let result = false;
-        $.ajax({
+    function checkAvailabilityForRollout(paths) {
+        return $.ajax({
             url: BLUEPRINT_CHECK_COMMAND,
             type: 'POST',
-            async: false,
+            traditional: true,
             data: {
                 _charset_: 'UTF-8',
-                path
+                paths
             }
-        }).done((data) => {
-            result = data && data.isAvailableForRollout;
         });
-        return result;
+    }
+
+    function getCollectionItemPaths() {
+        return $(COLLECTION_ITEM_SELECTOR).map(function () {
+            return this.dataset.foundationCollectionItemId;
+        }).get();
+    }
+
+    /**
+     * Checks the rollout availability of the given paths in the background. The active conditions of the action bar
+     * are re-evaluated once the results are received
+     * @param paths - paths of the pages in Sites
+     */
+    function refreshRolloutAvailability(paths) {
+        const uncheckedPaths = paths.filter((path) => !(path in rolloutAvailability) && !pendingPaths.has(path));
+        if (uncheckedPaths.length === 0) {
+            return;
+        }
+        for (let i = 0; i < uncheckedPaths.length; i += BULK_CHECK_BATCH_SIZE) {
+            checkAvailabilityForRolloutBatch(uncheckedPaths.slice(i, i + BULK_CHECK_BATCH_SIZE));
+        }
+    }
+
+    function checkAvailabilityForRolloutBatch(paths) {
+        const availability = rolloutAvailability;
+        paths.forEach((path) => pendingPaths.add(path));
+        checkAvailabilityForRollout(paths)
+            .done((result) => {
+                // Paths left out of the response are not available for rollout
+                paths.forEach((path) => {
+                    availability[path] = !!result[path];
+                });
+            })
+            .fail(() => {
+                // Failed paths are not available for rollout, otherwise the check would be repeated endlessly
+                paths.forEach((path) => {
+                    availability[path] = false;
+                });
+            })
+            .always(() => {
+                paths.forEach((path) => pendingPaths.delete(path));
+                $(COLLECTION_SELECTOR).trigger('foundation-selections-change');
+            });
+    }
+
+    /**
+     * Checks if selected page has live relationships eligible for synchronization and thus can be rolled out.
+     * The 'Rollout' button is displayed in the Sites toolbar based on this condition. If the page is not checked yet,
+     * the check is started in the background for all pages of the collection, and the button is hidden until
+     * the result is received.
+     * @param path - path of the page selected in Sites
+     * @returns {boolean}
+     */
+    function isAvailableForRollout(path) {
+        if (path in rolloutAvailability) {
+            return !!rolloutAvailability[path];
+        }
+        refreshRolloutAvailability([path].concat(getCollectionItemPaths()));
+        return false;
     }
 
     const PROCESSING_LABEL = Granite.I18n.get('Processing');
     const ROLLOUT_IN_PROGRESS_LABEL = Granite.I18n.get('Rollout in progress ...');
+    const NESTED_TRUNCATED_MSG =
+        Granite.I18n.get('Some nested live copies are not rolled out: the live copies tree is too large');
 
     /**
      * Performs rollout based on data collected in the Rollout dialog.
      *
      * @param data - selected live copies data and isDeepRollout param retrieved from the Rollout dialog
-     * @param rolloutRequest - {@link #buildRolloutRequest}
+     * @param rolloutRequest - {@link #getRolloutRequestBuilder}
      * @returns {*}
      */
     function doItemsRollout(data, rolloutRequest) {
         const logger = ns.createLoggerDialog(PROCESSING_LABEL, ROLLOUT_IN_PROGRESS_LABEL, data.path);
+        if (data.truncated) {
+            logger.log(NESTED_TRUNCATED_MSG, true);
+        }
         return $.Deferred()
             .resolve()
             .then(rolloutRequest(data, logger))
@@ -88,35 +184,350 @@
     const SUCCESS_MSG = Granite.I18n.get('Completed');
     const SUCCESS_REPLICATION_MSG = Granite.I18n.get('Rollout is completed. Publishing is in progress.');
 
+    const PROCESSED_TARGETS_LABEL = Granite.I18n.get('Processed targets:');
+    const TOO_MANY_ROLLOUTS_MSG = Granite.I18n.get('Too many rollouts are in progress. Position in the queue:');
+    const RETRY_AFTER_MSG = Granite.I18n.get('Please try again in seconds:');
+
+    function getFailedTargetsMsg(failedTargets) {
+        return `${PROCESSING_ERROR_FAILED_PATHS_MSG}<br/><br/>${failedTargets.join('<br/>')}`;
+    }
+
+    function getTooManyRolloutsMsg(xhr) {
+        // The streamed rollout is requested as text, so the json response is not parsed by jQuery
+        const admission = xhr.responseJSON || JSON.parse(xhr.responseText || '{}');
+        return `${TOO_MANY_ROLLOUTS_MSG} ${admission.queuePosition}<br/>${RETRY_AFTER_MSG} ${admission.retryAfter}`;
+    }
+
     function getProcessingErrorMsg(xhr) {
-        if (xhr.status === 400 && xhr.responseJSON && xhr.responseJSON.failedTargets) {
-            return `${PROCESSING_ERROR_FAILED_PATHS_MSG}<br/><br/>${xhr.responseJSON.failedTargets.join('<br/>')}`;
+        if (xhr.status === 429) {
+            return getTooManyRolloutsMsg(xhr);
+        }
+        if ((xhr.status === 400 || xhr.status === 403) && xhr.responseJSON && xhr.responseJSON.failedTargets) {
+            return getFailedTargetsMsg(xhr.responseJSON.failedTargets);
         }
         return PROCESSING_ERROR_MSG;
     }
 
+    const ROLLOUT_STATUS_COMMAND = '/content/etoolbox/rollout-manager/servlet/rollout-status';
+    const STATUS_POLLING_INTERVAL = 2000;
+    const FINISHED_JOB_STATES = ['SUCCEEDED', 'FAILED'];
+
+    /**
+     * Retrieves the progress of the rollout job
+     * @param jobId - id of the rollout job
+     * @returns {*}
+     */
+    function getRolloutJobStatus(jobId) {
+        return $.ajax({
+            url: ROLLOUT_STATUS_COMMAND,
+            type: 'POST',
+            data: {
+                _charset_: 'UTF-8',
+                jobId
+            }
+        });
+    }
+
+    /**
+     * Polls the progress of the rollout job until the job is finished. The number of processed targets is
+     * displayed in the logger dialog.
+     * @param jobId - id of the rollout job
+     * @param logger - the logger dialog displaying progress of the rollout process
+     * @returns {Promise} resolved with the final job status
+     */
+    function pollRolloutJob(jobId, logger) {
+        const deferred = $.Deferred();
+        function poll() {
+            getRolloutJobStatus(jobId)
+                .done((status) => {
+                    logger.progress(`${PROCESSED_TARGETS_LABEL} ${status.processedTargets}`);
+                    if (FINISHED_JOB_STATES.includes(status.state)) {
+                        deferred.resolve(status);
+                    } else {
+                        setTimeout(poll, STATUS_POLLING_INTERVAL);
+                    }
+                })
+                .fail(deferred.reject);
+        }
+        poll();
+        return deferred.promise();
+    }
+
+    const STREAM_PROGRESS = true;
+    // Larger selections are rolled out as a resumable job
+    const STREAM_MAX_TARGETS = 50;
+    const COMPLETED_PHASE = 'completed';
+    const ACTIVATION_PHASE = 'activation';
+    const ROLLED_OUT_LABEL = Granite.I18n.get('Rolled out');
+    const ROLLOUT_FAILED_LABEL = Granite.I18n.get('Rollout failed');
+    const UP_TO_DATE_LABEL = Granite.I18n.get('Up to date');
+    const ACTIVATED_LABEL = Granite.I18n.get('Published');
+    const ACTIVATION_FAILED_LABEL = Granite.I18n.get('Publishing failed');
+    const PUBLISHED_PAGES_LABEL = Granite.I18n.get('pages published:');
+    const SKIPPED_PAGES_LABEL = Granite.I18n.get('skipped:');
+    const FAILED_PAGES_LABEL = Granite.I18n.get('failed:');
+    const THROTTLED_LABEL = Granite.I18n.get('throttled:');
+    const QUEUE_WAIT_EXCEEDED_LABEL = Granite.I18n.get('published without waiting for the replication queues');
+
+    function getStatusLineMsg(statusLine) {
+        if (statusLine.phase === ACTIVATION_PHASE) {
+            const label = statusLine.success ? ACTIVATED_LABEL : ACTIVATION_FAILED_LABEL;
+            let pages = `${PUBLISHED_PAGES_LABEL} ${statusLine.activatedPages}, `
+                + `${SKIPPED_PAGES_LABEL} ${statusLine.skippedPages}, ${FAILED_PAGES_LABEL} ${statusLine.failedPages}`;
+            if (statusLine.throttleDelay > 0) {
+                pages += `, ${THROTTLED_LABEL} ${statusLine.throttleDelay} ms`;
+            }
+            if (statusLine.queueWaitExceeded) {
+                pages += `, ${QUEUE_WAIT_EXCEEDED_LABEL}`;
+            }
+            return `${label}: ${statusLine.target} (${pages}, ${statusLine.duration} ms)`;
+        }
+        if (statusLine.skipped) {
+            return `${UP_TO_DATE_LABEL}: ${statusLine.target}`;
+        }
+        const label = statusLine.success ? ROLLED_OUT_LABEL : ROLLOUT_FAILED_LABEL;
+        return `${label}: ${statusLine.target} (${statusLine.duration} ms)`;
+    }
+
+    /**
+     * Reads the json lines received so far and passes the complete ones to the callback
+     * @param text - the response text received so far
+     * @param offset - the length of the already processed part of the text
+     * @param onLine - the callback accepting a parsed json line
+     * @returns {number} the length of the processed part of the text
+     */
+    function readJsonLines(text, offset, onLine) {
+        let lineEnd = text.indexOf('\n', offset);
+        while (lineEnd !== -1) {
+            const line = text.substring(offset, lineEnd);
+            if (line) {
+                onLine(JSON.parse(line));
+            }
+            offset = lineEnd + 1;
+            lineEnd = text.indexOf('\n', offset);
+        }
+        return offset;
+    }
+
     /**
      * Builds a request to the servlet for rolling out items based on data collected in the Rollout dialog.
+     * The status of each target is streamed by the servlet and logged as soon as the target is processed.
      * @param data - selected live copies data and isDeepRollout param retrieved from the Rollout dialog
      * @param logger - the logger dialog displaying progress of the rollout process
      * @returns {function(): *}
      */
-    function buildRolloutRequest(data, logger) {
+    function buildStreamingRolloutRequest(data, logger) {
         return function () {
+            let offset = 0;
+            let processedTargets = 0;
+            let completedLine;
+            const onLine = (statusLine) => {
+                if (statusLine.phase === COMPLETED_PHASE) {
+                    completedLine = statusLine;
+                    return;
+                }
+                processedTargets++;
+                logger.progress(`${PROCESSED_TARGETS_LABEL} ${processedTargets}`);
+                logger.log(getStatusLineMsg(statusLine), true);
+            };
             return $.ajax({
                 url: ROLLOUT_COMMAND,
                 type: 'POST',
+                dataType: 'text',
                 data: {
                     _charset_: 'UTF-8',
                     selectionJsonArray: JSON.stringify(data.selectionJsonArray),
                     isDeepRollout: data.isDeepRollout,
-                    shouldActivate: data.shouldActivate
+                    shouldActivate: data.shouldActivate,
+                    stream: true
+                },
+                xhr: function () {
+                    const xhr = $.ajaxSettings.xhr();
+                    xhr.addEventListener('progress', () => {
+                        offset = readJsonLines(xhr.responseText, offset, onLine);
+                    });
+                    return xhr;
+                }
+            }).done((responseText) => {
+                readJsonLines(responseText, offset, onLine);
+                if (!completedLine) {
+                    logger.log(PROCESSING_ERROR_MSG, false);
+                    return;
                 }
+                if (completedLine.failedTargets.length > 0) {
+                    logger.log(getFailedTargetsMsg(completedLine.failedTargets), false);
+                    return;
+                }
+                logger.log(SUCCESS_MSG, false);
             }).fail((xhr) => {
                 logger.log(getProcessingErrorMsg(xhr), false);
-            }).done(() => {
+            });
+        };
+    }
+
+    const ROLLOUT_RESUME_COMMAND = '/content/etoolbox/rollout-manager/servlet/rollout-resume';
+    const RESUME_LABEL = Granite.I18n.get('Resume');
+
+    /**
+     * Polls the rollout job added by the given request and logs the result. If some targets are failed, the job
+     * can be resumed, so that only the targets which are not completed yet are processed again.
+     * @param jobRequest - the request adding or resuming the rollout job
+     * @param data - selected live copies data and isDeepRollout param retrieved from the Rollout dialog
+     * @param logger - the logger dialog displaying progress of the rollout process
+     * @returns {*}
+     */
+    function trackRolloutJob(jobRequest, data, logger) {
+        let jobId;
+        return jobRequest
+            .then((job) => {
+                jobId = job.jobId;
+                return pollRolloutJob(jobId, logger);
+            })
+            .done((status) => {
+                if (status.failedTargets && status.failedTargets.length > 0) {
+                    logger.log(getFailedTargetsMsg(status.failedTargets), false);
+                    logger.action(RESUME_LABEL, () => doItemsRollout(data, buildResumeRolloutRequest(jobId)));
+                    return;
+                }
                 data.shouldActivate ? logger.log(SUCCESS_REPLICATION_MSG, false) : logger.log(SUCCESS_MSG, false);
+            })
+            .fail((xhr) => {
+                logger.log(getProcessingErrorMsg(xhr), false);
             });
+    }
+
+    /**
+     * Builds a request to the servlet for rolling out items based on data collected in the Rollout dialog.
+     * The rollout is performed as a job, the progress of the job is polled until it is finished.
+     * @param data - selected live copies data and isDeepRollout param retrieved from the Rollout dialog
+     * @param logger - the logger dialog displaying progress of the rollout process
+     * @returns {function(): *}
+     */
+    function buildJobRolloutRequest(data, logger) {
+        return function () {
+            return trackRolloutJob($.ajax({
+                url: ROLLOUT_COMMAND,
+                type: 'POST',
+                data: {
+                    _charset_: 'UTF-8',
+                    selectionJsonArray: JSON.stringify(data.selectionJsonArray),
+                    isDeepRollout: data.isDeepRollout,
+                    shouldActivate: data.shouldActivate,
+                    runAsJob: true
+                }
+            }), data, logger);
+        };
+    }
+
+    /**
+     * Builds a builder of a request resuming the finished rollout job
+     * @param jobId - id of the rollout job to resume
+     * @returns {function(*, *): function(): *}
+     */
+    function buildResumeRolloutRequest(jobId) {
+        return function (data, logger) {
+            return function () {
+                return trackRolloutJob($.ajax({
+                    url: ROLLOUT_RESUME_COMMAND,
+                    type: 'POST',
+                    data: {
+                        _charset_: 'UTF-8',
+                        jobId
+                    }
+                }), data, logger);
+            };
+        };
+    }
+
+    const SCHEDULED_AT_MSG = Granite.I18n.get('Rollout is scheduled at');
+    const NO_EXECUTION_WINDOW_MSG =
+        Granite.I18n.get('The targets have different or no execution windows, please schedule them separately');
+
+    /**
+     * Builds a request to the servlet for scheduling the rollout of items based on data collected in the Rollout
+     * dialog. The rollout is performed as a job within the execution window configured for the targets' site root.
+     * @param data - selected live copies data and isDeepRollout param retrieved from the Rollout dialog
+     * @param logger - the logger dialog displaying progress of the rollout process
+     * @returns {function(): *}
+     */
+    function buildScheduledRolloutRequest(data, logger) {
+        return function () {
+            return $.ajax({
+                url: ROLLOUT_COMMAND,
+                type: 'POST',
+                data: {
+                    _charset_: 'UTF-8',
+                    selectionJsonArray: JSON.stringify(data.selectionJsonArray),
+                    isDeepRollout: data.isDeepRollout,
+                    shouldActivate: data.shouldActivate,
+                    schedule: true
+                }
+            })
+                .done((job) => {
+                    logger.log(`${SCHEDULED_AT_MSG} ${new Date(job.scheduledAt).toLocaleString()}`, false);
+                })
+                .fail((xhr) => {
+                    const isNoWindow = xhr.status === 400 && !(xhr.responseJSON && xhr.responseJSON.failedTargets);
+                    logger.log(isNoWindow ? NO_EXECUTION_WINDOW_MSG : getProcessingErrorMsg(xhr), false);
+                });
+        };
+    }
+
+    const ROLLOUT_PLAN_COMMAND = '/content/etoolbox/rollout-manager/servlet/rollout-plan';
+    // Deep rollouts writing more pages are rolled out as a resumable job
+    const PLAN_MAX_PAGE_WRITES = 500;
+    const PLAN_PAGES_LABEL = Granite.I18n.get('Pages to roll out:');
+    const PLAN_DURATION_LABEL = Granite.I18n.get('estimated duration (seconds):');
+    const PLAN_UPPER_BOUND_LABEL = Granite.I18n.get('excluded pages and up-to-date targets are included');
+
+    /**
+     * Estimates the rollout of the items selected in the Rollout dialog without performing it
+     * @param data - selected live copies data and isDeepRollout param retrieved from the Rollout dialog
+     * @returns {*}
+     */
+    function getRolloutPlan(data) {
+        return $.ajax({
+            url: ROLLOUT_PLAN_COMMAND,
+            type: 'POST',
+            data: {
+                _charset_: 'UTF-8',
+                selectionJsonArray: JSON.stringify(data.selectionJsonArray),
+                isDeepRollout: data.isDeepRollout,
+                shouldActivate: data.shouldActivate
+            }
+        });
+    }
+
+    function getPlanMsg(plan) {
+        // The count of a truncated plan is a lower bound
+        let msg = `${PLAN_PAGES_LABEL} ${plan.truncated ? '\u2265 ' : ''}${plan.totalPageWrites}`;
+        if (plan.estimatedDuration >= 0) {
+            msg += `, ${PLAN_DURATION_LABEL} ${Math.ceil(plan.estimatedDuration / 1000)}`;
+        }
+        if (!plan.excludedPagesSubtracted || !plan.upToDateTargetsSubtracted) {
+            msg += ` (${PLAN_UPPER_BOUND_LABEL})`;
+        }
+        return msg;
+    }
+
+    /**
+     * Chooses the rollout request based on the selection size: large selections are rolled out as a job, which
+     * progress is checkpointed, so that the job can be resumed if some targets fail. If the rollout plan is given,
+     * the rollouts writing too many pages are rolled out as a job as well, and the plan is logged beforehand.
+     * @param data - selected live copies data and isDeepRollout param retrieved from the Rollout dialog
+     * @param plan - the optional response of the rollout plan servlet
+     * @returns {function(*, *): function(): *}
+     */
+    function getRolloutRequestBuilder(data, plan) {
+        const isLarge = data.selectionJsonArray.length > STREAM_MAX_TARGETS
+            || (plan && plan.totalPageWrites > PLAN_MAX_PAGE_WRITES);
+        const requestBuilder = STREAM_PROGRESS && !isLarge ? buildStreamingRolloutRequest : buildJobRolloutRequest;
+        if (!plan) {
+            return requestBuilder;
+        }
+        return function (data, logger) {
+            logger.log(getPlanMsg(plan), true);
+            return requestBuilder(data, logger);
         };
     }
 
@@ -132,7 +543,18 @@
                 foundationUi.clearWait();
                 ns.showRolloutDialog(liveCopiesJsonArray, selectedPath)
                     .then((data) => {
-                        doItemsRollout(data, buildRolloutRequest);
+                        if (data.schedule) {
+                            doItemsRollout(data, buildScheduledRolloutRequest);
+                            return;
+                        }
+                        if (!data.isDeepRollout) {
+                            doItemsRollout(data, getRolloutRequestBuilder(data));
+                            return;
+                        }
+                        // The rollout is performed anyway if it can't be estimated
+                        getRolloutPlan(data)
+                            .done((plan) => doItemsRollout(data, getRolloutRequestBuilder(data, plan)))
+                            .fail(() => doItemsRollout(data, getRolloutRequestBuilder(data)));
                     });
             });
     }
@@ -143,6 +565,16 @@
         return isAvailableForRollout(selectedPath);
     }
 
+    // Check the collection items in the background once they are loaded or refreshed, the previous results may be stale
+    $(document).on('foundation-contentloaded', function () {
+        rolloutAvailability = {};
+        refreshRolloutAvailability(getCollectionItemPaths());
+    });
+    // The items of another collection page are checked anew
+    $(document).on('foundation-collection-navigate', function () {
+        rolloutAvailability = {};
+    });
+
     // Init action handler for the 'Rollout' button
     $(window).adaptTo('foundation-registry')
         .register('foundation.collection.action.action', {
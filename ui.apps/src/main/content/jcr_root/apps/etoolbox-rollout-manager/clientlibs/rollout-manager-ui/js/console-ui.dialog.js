@@ -73,6 +73,8 @@
      * @typedef ProcessLogger
      * @method finished
      * @method log
+     * @method progress
+     * @method action
      */
     function createLoggerDialog(title, processingMsg, selectedPath) {
         const dialog = getBaseDialog();
@@ -98,6 +100,15 @@
             },
             log: function (message, safe) {
                 insertLogItem(dialog, message, safe);
+            },
+            progress: function (message) {
+                processingLabel.textContent = message;
+            },
+            action: function (label, handler) {
+                const actionBtn = new Coral.Button();
+                actionBtn.label.textContent = label;
+                actionBtn.on('click', handler);
+                dialog.footer.appendChild(actionBtn);
             }
         };
     }
@@ -112,10 +123,14 @@
     const TARGET_PATHS_LABEL = Granite.I18n.get('Target paths');
     const ROLLOUT_SCOPE_LABEL = Granite.I18n.get('Rollout scope');
     const INCLUDE_SUBPAGES_LABEL = Granite.I18n.get('Include subpages');
+    const SCHEDULE_LABEL = Granite.I18n.get('Schedule within the execution window');
     const CORAL_CHECKBOX_ITEM = 'coral-checkbox[name="liveCopyProperties[]"]';
     const MASTER_DATA_ATTR = 'master';
     const DEPTH_DATA_ATTR = 'depth';
     const AUTO_ROLLOUT_DATA_ATTR = 'auto-rollout';
+    // The data of a live copy which nested live copies are not loaded yet
+    const NOT_LOADED_DATA_ATTR = 'notLoadedLiveCopy';
+    const INTERMEDIATE_ATTR = 'intermediate';
 
     function initRolloutDialog(path) {
         const dialog = getBaseDialog();
@@ -149,11 +164,62 @@
             .text(ROLLOUT_SCOPE_LABEL);
         const isDeepCheckbox = $('<coral-checkbox name="isDeepRollout">')
             .text(INCLUDE_SUBPAGES_LABEL);
+        const scheduleCheckbox = $('<coral-checkbox name="schedule">')
+            .text(SCHEDULE_LABEL);
         label.appendTo(sourceElement);
         isDeepCheckbox.appendTo(sourceElement);
+        scheduleCheckbox.appendTo(sourceElement);
+    }
+
+    const LOADING_LABEL = Granite.I18n.get('Loading ...');
+    const LOADING_ERROR_LABEL = Granite.I18n.get('Failed to load live copies');
+    const TRUNCATED_LABEL = Granite.I18n.get('Some live copies are not shown: the live copies tree is too large');
+    const NOT_LOADED_SELECTION_ERROR_LABEL =
+        Granite.I18n.get('Failed to load the nested live copies of the selection, the rollout is not started');
+
+    /** Checks the loaded child checkboxes if the parent checkbox was checked along with its children */
+    function inheritParentSelection(currentCheckbox, accordionItemContent) {
+        if (isSelectedWithChildren(currentCheckbox)) {
+            accordionItemContent.find(CORAL_CHECKBOX_ITEM)
+                .filter(':not([disabled])')
+                .attr(INTERMEDIATE_ATTR, true)
+                .prop('checked', true);
+        }
+    }
+
+    function isSelectedWithChildren(checkbox) {
+        return checkbox.prop('checked') && !!checkbox.attr(INTERMEDIATE_ATTR);
+    }
+
+    function loadNestedLiveCopiesOnExpand(accordion, accordionItemContent, currentCheckbox, liveCopyJson) {
+        currentCheckbox.data(NOT_LOADED_DATA_ATTR, liveCopyJson);
+        accordion.on('coral-accordion:change', function onExpand(e) {
+            // The event bubbles from the nested accordions
+            if (e.target !== accordion[0]) {
+                return;
+            }
+            accordion.off('coral-accordion:change', onExpand);
+            const loadingLabel = $('<p class="rollout-manager-loading-label">').text(LOADING_LABEL);
+            loadingLabel.appendTo(accordionItemContent);
+            ns.collectNestedLiveCopies(liveCopyJson)
+                .done((liveCopiesJsonArray) => {
+                    currentCheckbox.removeData(NOT_LOADED_DATA_ATTR);
+                    loadingLabel.remove();
+                    appendNestedCheckboxList(liveCopiesJsonArray, accordionItemContent);
+                    inheritParentSelection(currentCheckbox, accordionItemContent);
+                })
+                .fail(() => {
+                    loadingLabel.text(LOADING_ERROR_LABEL);
+                });
+        });
     }
 
-    function initNestedAccordion(currentCheckbox, liveCopiesJsonArray) {
+    /**
+     * Wraps the checkbox into an accordion containing nested live copies. If the nested live copies are not loaded
+     * yet, they are collected when the accordion is expanded for the first time. If the live copies tree exceeds
+     * the server limits, the partially collected live copies are shown with a warning
+     */
+    function initNestedAccordion(currentCheckbox, liveCopyJson) {
         const accordion = $('<coral-accordion variant="quiet">');
         const accordionItem = $('<coral-accordion-item>');
         const accordionItemLabel = $('<coral-accordion-item-label>');
@@ -162,7 +228,14 @@
         accordionItemLabel.appendTo(accordionItem);
 
         const accordionItemContent = $('<coral-accordion-item-content class="rollout-manager-coral-accordion-item-content">');
-        appendNestedCheckboxList(liveCopiesJsonArray, accordionItemContent);
+        if (liveCopyJson.truncated) {
+            appendNestedCheckboxList(liveCopyJson.liveCopies, accordionItemContent);
+            $('<p class="rollout-manager-truncated-label">').text(TRUNCATED_LABEL).appendTo(accordionItemContent);
+        } else if (liveCopyJson.liveCopies && liveCopyJson.liveCopies.length > 0) {
+            appendNestedCheckboxList(liveCopyJson.liveCopies, accordionItemContent);
+        } else {
+            loadNestedLiveCopiesOnExpand(accordion, accordionItemContent, currentCheckbox, liveCopyJson);
+        }
         accordionItemContent.appendTo(accordionItem);
 
         accordionItem.appendTo(accordion);
@@ -187,8 +260,8 @@
                 class="rollout-manager-last-rollout-date">`
             ).text(ns.TimeUtil.timeSince(liveCopyJson.lastRolledOut));
         liveCopyCheckbox.append(lastRolledOutTimeAgo);
-        if (liveCopyJson.liveCopies && liveCopyJson.liveCopies.length > 0) {
-            const accordion = initNestedAccordion(liveCopyCheckbox, liveCopyJson.liveCopies);
+        if ((liveCopyJson.liveCopies && liveCopyJson.liveCopies.length > 0) || liveCopyJson.hasChildren) {
+            const accordion = initNestedAccordion(liveCopyCheckbox, liveCopyJson);
             accordion.appendTo(liItem);
         } else {
             liveCopyCheckbox.addClass('inner-checkbox-option');
@@ -227,7 +300,15 @@
     }
 
     function selectUnselectAll() {
-        $(CORAL_CHECKBOX_ITEM).filter(':not([disabled])').prop('checked', !hasSelection());
+        const isChecked = !hasSelection();
+        const checkboxes = $(CORAL_CHECKBOX_ITEM).filter(':not([disabled])');
+        // The live copies are selected along with their children, including the ones not loaded yet
+        if (isChecked) {
+            checkboxes.attr(INTERMEDIATE_ATTR, true);
+        } else {
+            checkboxes.removeAttr(INTERMEDIATE_ATTR);
+        }
+        checkboxes.prop('checked', isChecked);
     }
 
     function validateSelection(hasSelection, submitBtn) {
@@ -245,9 +326,51 @@
         onCheckboxChange(submitBtn);
     }
 
+    /**
+     * Adds the live copies of the tree to the selection, along with their nested live copies
+     * @param liveCopiesJsonArray - the json array of live copies
+     * @param selection - the object collecting the selected items and the truncation flag
+     */
+    function addLiveCopiesTree(liveCopiesJsonArray, selection) {
+        liveCopiesJsonArray.forEach((liveCopyJson) => {
+            if (!liveCopyJson.disabled) {
+                selection.items.push({
+                    master: liveCopyJson.master,
+                    target: liveCopyJson.path,
+                    depth: liveCopyJson.depth,
+                    autoRolloutTrigger: liveCopyJson.autoRolloutTrigger
+                });
+            }
+            selection.truncated = selection.truncated || !!liveCopyJson.truncated;
+            addLiveCopiesTree(liveCopyJson.liveCopies || [], selection);
+        });
+    }
+
+    /**
+     * Collects the nested live copies of the live copies selected along with their children, which were not expanded
+     * and so are not loaded to the dialog yet
+     * @returns {Promise<{items: Array, truncated: boolean}>}
+     */
+    function collectNotLoadedSelection() {
+        const requests = [];
+        $(CORAL_CHECKBOX_ITEM).each(function () {
+            const checkbox = $(this);
+            const liveCopyJson = checkbox.data(NOT_LOADED_DATA_ATTR);
+            if (liveCopyJson && isSelectedWithChildren(checkbox)) {
+                requests.push(ns.collectNestedLiveCopies(liveCopyJson, true));
+            }
+        });
+        return Promise.all(requests).then((responses) => {
+            const selection = {items: [], truncated: false};
+            responses.forEach((liveCopiesJsonArray) => addLiveCopiesTree(liveCopiesJsonArray, selection));
+            return selection;
+        });
+    }
+
     function onResolve($btn, path, deferred) {
         const shouldActivate = $btn.closest('[data-dialog-action]').data('dialogAction') === 'rolloutPublish';
         const isDeepRollout = $('coral-checkbox[name="isDeepRollout"]').filter(':not([disabled])').prop('checked');
+        const schedule = $('coral-checkbox[name="schedule"]').prop('checked');
         const selectionJsonArray = [];
         $(CORAL_CHECKBOX_ITEM).each(function () {
             const checkbox = $(this);
@@ -255,24 +378,44 @@
                 selectionJsonArray.push(checkBoxToJsonData(checkbox));
             }
         });
-        const data = {
-            path,
-            isDeepRollout,
-            selectionJsonArray,
-            shouldActivate
-        };
-        deferred.resolve(data);
+        const foundationUi = $(window).adaptTo('foundation-ui');
+        foundationUi.wait();
+        collectNotLoadedSelection()
+            .then((notLoadedSelection) => {
+                foundationUi.clearWait();
+                deferred.resolve({
+                    path,
+                    isDeepRollout,
+                    selectionJsonArray: selectionJsonArray.concat(notLoadedSelection.items),
+                    shouldActivate,
+                    schedule,
+                    truncated: notLoadedSelection.truncated
+                });
+            }, () => {
+                // The rollout is not started with a part of the selection
+                foundationUi.clearWait();
+                foundationUi.alert(LOADING_ERROR_LABEL, NOT_LOADED_SELECTION_ERROR_LABEL, 'error');
+                deferred.reject();
+            });
     }
 
     function initEventHandlers(dialog, deferred, onCheckboxChange, onSelectAllClick, onResolve) {
         dialog.on('change', 'coral-checkbox', onCheckboxChange);
         dialog.on('click', '.rollout-manager-select-all', onSelectAllClick);
-        dialog.on('click', '[data-dialog-action]', onResolve);
+        // The selection is resolved asynchronously, after the dialog is closed by the action button
+        let isResolving = false;
+        const onAction = (e) => {
+            isResolving = true;
+            onResolve(e);
+        };
+        dialog.on('click', '[data-dialog-action]', onAction);
         dialog.on('coral-overlay:close', function () {
             dialog.off('change', 'coral-checkbox', onCheckboxChange);
             dialog.off('click', '.rollout-manager-select-all', onSelectAllClick);
-            dialog.off('click', '[data-dialog-action]', onResolve);
-            deferred.reject();
+            dialog.off('click', '[data-dialog-action]', onAction);
+            if (!isResolving) {
+                deferred.reject();
+            }
         });
     }
 